@@ -0,0 +1,72 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static jp.kobe_u.sugar.expression.Expression.create;
+
+
+import jp.kobe_u.sugar.expression.Expression;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Sugar4j#addAssumptionで追加された1つの仮定を表現するクラス.
+ * 変数と比較演算子と値の組で与えた仮定では, その組をgetVariable, getOp, getValueで参照できる.
+ * 論理変数に対する仮定では, opはnullであり, valueは真のとき1, 偽のとき0である.
+ * 制約式で与えた仮定では, variable, opはnullであり, valueは0である.
+ */
+@ToString(of = {"expression"})
+@EqualsAndHashCode(of = {"expression"})
+public final class Assumption {
+  @Getter
+  private final Expression variable;
+  @Getter
+  private final Expression op;
+  @Getter
+  private final int value;
+  private final Expression expression;
+
+  /* この仮定を表すSATリテラル */
+  private final int[] literals;
+
+  private Assumption(Expression variable, Expression op, int value, Expression expression,
+                     int[] literals) {
+    this.variable = variable;
+    this.op = op;
+    this.value = value;
+    this.expression = expression;
+    this.literals = literals;
+  }
+
+  static Assumption ofBool(Expression variable, boolean isPositive, int[] literals) {
+    return new Assumption(variable, null, isPositive ? 1 : 0,
+        isPositive ? variable : variable.not(), literals);
+  }
+
+  static Assumption ofInt(Expression variable, Expression op, int value, int[] literals) {
+    return new Assumption(variable, op, value, create(op, variable, create(value)), literals);
+  }
+
+  static Assumption ofExpression(Expression expression, int[] literals) {
+    return new Assumption(null, null, 0, expression, literals);
+  }
+
+  /**
+   * 論理変数に対する仮定かを返す.
+   */
+  public boolean isBool() {
+    return variable != null && op == null;
+  }
+
+  /**
+   * この仮定を制約式として返す.
+   * 例えば, addAssumption(x, Expression.LE, 3)による仮定に対しては (le x 3) を返す.
+   * 制約式で与えた仮定に対しては, その式をそのまま返す.
+   */
+  public Expression toExpression() {
+    return expression;
+  }
+
+  int[] getLiterals() {
+    return literals;
+  }
+}
@@ -0,0 +1,1041 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+import lombok.NonNull;
+
+/**
+ * Javaのみで実装されたCDCLソルバを利用するSatSolverインタフェースの実装クラス.
+ * ネイティブライブラリを必要とせず, JVM上であればどこでも動作する.
+ *
+ * <p>2-watched literal による単位伝播, VSIDSによる変数選択と極性保存,
+ * Luby列によるリスタート, LBDに基づく学習節の削減を行う.
+ * IPASIRと同様に, 仮定 (assume) を与えた上での逐次的な求解ができる.
+ * 節はプリミティブな int 配列 (アリーナ) 上に格納される.
+ */
+public final class CdclSolver implements SatSolver {
+  private static final String NAME = "sugar4j-cdcl";
+
+  private static final int NONE = -1;
+  private static final byte L_TRUE = 1;
+  private static final byte L_FALSE = -1;
+  private static final byte L_UNDEF = 0;
+  private static final int UNKNOWN = -1;
+
+  /*
+   * Clause Arena
+   * [size, flags, activity, lit_0, lit_1, ...]
+   */
+  private static final int HEADER = 3;
+  private static final int FLAG_LEARNT = 1;
+  private static final int FLAG_DELETED = 2;
+  private static final int LBD_SHIFT = 2;
+
+  private static final double VAR_DECAY = 0.95;
+  private static final double CLAUSE_DECAY = 0.999;
+  private static final int RESTART_FIRST = 100;
+  private static final int FIRST_REDUCE = 2000;
+  private static final int REDUCE_INCREMENT = 300;
+  private static final int TERMINATE_CHECK_MASK = 0xff;
+
+  private int[] arena = new int[1024];
+  private int arenaSize = 0;
+  private int arenaWasted = 0;
+  private IntVec originals = new IntVec();
+  private IntVec learnts = new IntVec();
+
+  private int numVars = 0;
+  private int capacity = 0;
+  private byte[] assigns = new byte[0];
+  private int[] level = new int[0];
+  private int[] reason = new int[0];
+  private byte[] polarity = new byte[0];
+  private byte[] seen = new byte[0];
+  private double[] activity = new double[0];
+  private int[][] watches = new int[0][];
+  private int[] watchSizes = new int[0];
+
+  private int[] heap = new int[0];
+  private int heapSize = 0;
+  private int[] heapIndex = new int[0];
+
+  private int[] trail = new int[0];
+  private int trailSize = 0;
+  private int qhead = 0;
+  private IntVec trailLim = new IntVec();
+
+  private IntVec assumptions = new IntVec();
+  private boolean[] failed = new boolean[0];
+  private byte[] model = new byte[0];
+  private int modelSize = 0;
+
+  private boolean ok = true;
+  private double varInc = 1.0;
+  private double claInc = 1.0;
+  private long conflicts = 0;
+  private long decisions = 0;
+  private long propagations = 0;
+  private long nextReduce = FIRST_REDUCE;
+  private long reduceCount = 0;
+
+  private long deadline = 0;
+  private volatile boolean interrupted = false;
+  private BooleanSupplier terminate = null;
+
+  private final IntVec learnt = new IntVec();
+  private final IntVec analyzeStack = new IntVec();
+  private final IntVec analyzeToClear = new IntVec();
+  private int[] levelStamp = new int[0];
+  private int stamp = 0;
+  private int[] addBuffer = new int[16];
+  private final Random random;
+
+  private CdclSolver(Random random) {
+    this.random = random;
+  }
+
+  public static CdclSolver newInstance() {
+    return new CdclSolver(null);
+  }
+
+  /**
+   * 乱数の種seedを与えてソルバを生成する.
+   * 変数の初期の活性度と極性が種に応じて揺らぐため, 種が異なるソルバは異なる順序で探索を行う.
+   * ポートフォリオ (PortfolioSolver) の構成要素として用いることを想定している.
+   */
+  public static CdclSolver newInstance(long seed) {
+    return new CdclSolver(new Random(seed));
+  }
+
+  /*
+   * Literal Representation
+   * DIMACS literal x (x > 0) is 2x, and -x is 2x+1.
+   */
+  private static int toLit(int literal) {
+    return literal > 0 ? literal << 1 : ((-literal) << 1) | 1;
+  }
+
+  private byte value(int lit) {
+    byte val = assigns[lit >> 1];
+    return (lit & 1) == 0 ? val : (byte) -val;
+  }
+
+  private int decisionLevel() {
+    return trailLim.size;
+  }
+
+  /*
+   * Variables
+   */
+  private void ensureVariables(int variable) {
+    if (variable <= numVars) {
+      return;
+    }
+    if (variable >= capacity) {
+      int newCapacity = Math.max(variable + 1, capacity * 2);
+      assigns = Arrays.copyOf(assigns, newCapacity);
+      level = Arrays.copyOf(level, newCapacity);
+      reason = Arrays.copyOf(reason, newCapacity);
+      polarity = Arrays.copyOf(polarity, newCapacity);
+      seen = Arrays.copyOf(seen, newCapacity);
+      activity = Arrays.copyOf(activity, newCapacity);
+      heap = Arrays.copyOf(heap, newCapacity);
+      heapIndex = Arrays.copyOf(heapIndex, newCapacity);
+      trail = Arrays.copyOf(trail, newCapacity);
+      levelStamp = Arrays.copyOf(levelStamp, newCapacity + 1);
+      watches = Arrays.copyOf(watches, 2 * newCapacity);
+      watchSizes = Arrays.copyOf(watchSizes, 2 * newCapacity);
+      failed = Arrays.copyOf(failed, 2 * newCapacity);
+      capacity = newCapacity;
+    }
+    for (int v = numVars + 1; v <= variable; v++) {
+      assigns[v] = L_UNDEF;
+      reason[v] = NONE;
+      polarity[v] = L_FALSE;
+      if (random != null) {
+        activity[v] = random.nextDouble() * 1e-5;
+        polarity[v] = random.nextBoolean() ? L_TRUE : L_FALSE;
+      }
+      heapIndex[v] = NONE;
+      watches[2 * v] = new int[4];
+      watches[2 * v + 1] = new int[4];
+      heapInsert(v);
+    }
+    numVars = variable;
+  }
+
+  /*
+   * Variable Order Heap (max-heap on activity)
+   */
+  private void heapInsert(int v) {
+    heapIndex[v] = heapSize;
+    heap[heapSize++] = v;
+    heapUp(heapIndex[v]);
+  }
+
+  private void heapUp(int i) {
+    int v = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      if (activity[heap[parent]] >= activity[v]) {
+        break;
+      }
+      heap[i] = heap[parent];
+      heapIndex[heap[i]] = i;
+      i = parent;
+    }
+    heap[i] = v;
+    heapIndex[v] = i;
+  }
+
+  private void heapDown(int i) {
+    int v = heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) {
+        child++;
+      }
+      if (activity[heap[child]] <= activity[v]) {
+        break;
+      }
+      heap[i] = heap[child];
+      heapIndex[heap[i]] = i;
+      i = child;
+    }
+    heap[i] = v;
+    heapIndex[v] = i;
+  }
+
+  private int heapRemoveMax() {
+    int v = heap[0];
+    heapIndex[v] = NONE;
+    heapSize--;
+    if (heapSize > 0) {
+      heap[0] = heap[heapSize];
+      heapIndex[heap[0]] = 0;
+      heapDown(0);
+    }
+    return v;
+  }
+
+  private void varBump(int v) {
+    activity[v] += varInc;
+    if (activity[v] > 1e100) {
+      for (int i = 1; i <= numVars; i++) {
+        activity[i] *= 1e-100;
+      }
+      varInc *= 1e-100;
+    }
+    if (heapIndex[v] != NONE) {
+      heapUp(heapIndex[v]);
+    }
+  }
+
+  /*
+   * Clauses
+   */
+  private int allocClause(int[] lits, int size, boolean isLearnt, int lbd) {
+    int required = arenaSize + HEADER + size;
+    if (required > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(required, arena.length * 2));
+    }
+    int cref = arenaSize;
+    arena[cref] = size;
+    arena[cref + 1] = (isLearnt ? FLAG_LEARNT : 0) | (lbd << LBD_SHIFT);
+    arena[cref + 2] = Float.floatToRawIntBits(0.0f);
+    System.arraycopy(lits, 0, arena, cref + HEADER, size);
+    arenaSize = required;
+    return cref;
+  }
+
+  private void watch(int lit, int cref, int blocker) {
+    int size = watchSizes[lit];
+    int[] ws = watches[lit];
+    if (size + 2 > ws.length) {
+      ws = Arrays.copyOf(ws, ws.length * 2);
+      watches[lit] = ws;
+    }
+    ws[size] = cref;
+    ws[size + 1] = blocker;
+    watchSizes[lit] = size + 2;
+  }
+
+  private void attachClause(int cref) {
+    int lit0 = arena[cref + HEADER];
+    int lit1 = arena[cref + HEADER + 1];
+    watch(lit0 ^ 1, cref, lit1);
+    watch(lit1 ^ 1, cref, lit0);
+  }
+
+  private boolean isLocked(int cref) {
+    int lit0 = arena[cref + HEADER];
+    return reason[lit0 >> 1] == cref && value(lit0) == L_TRUE;
+  }
+
+  private void claBump(int cref) {
+    float act = Float.intBitsToFloat(arena[cref + 2]) + (float) claInc;
+    arena[cref + 2] = Float.floatToRawIntBits(act);
+    if (act > 1e20f) {
+      for (int i = 0; i < learnts.size; i++) {
+        int c = learnts.data[i];
+        arena[c + 2] = Float.floatToRawIntBits(Float.intBitsToFloat(arena[c + 2]) * 1e-20f);
+      }
+      claInc *= 1e-20;
+    }
+  }
+
+  private int computeLbd(int[] lits, int size) {
+    stamp++;
+    int lbd = 0;
+    for (int i = 0; i < size; i++) {
+      int lv = level[lits[i] >> 1];
+      if (levelStamp[lv] != stamp) {
+        levelStamp[lv] = stamp;
+        lbd++;
+      }
+    }
+    return lbd;
+  }
+
+  /*
+   * Assignment
+   */
+  private void uncheckedEnqueue(int lit, int from) {
+    int v = lit >> 1;
+    assigns[v] = (lit & 1) == 0 ? L_TRUE : L_FALSE;
+    level[v] = decisionLevel();
+    reason[v] = from;
+    trail[trailSize++] = lit;
+  }
+
+  private void newDecisionLevel() {
+    trailLim.push(trailSize);
+  }
+
+  private void cancelUntil(int targetLevel) {
+    if (decisionLevel() <= targetLevel) {
+      return;
+    }
+    int limit = trailLim.data[targetLevel];
+    for (int i = trailSize - 1; i >= limit; i--) {
+      int v = trail[i] >> 1;
+      polarity[v] = assigns[v];
+      assigns[v] = L_UNDEF;
+      reason[v] = NONE;
+      if (heapIndex[v] == NONE) {
+        heapInsert(v);
+      }
+    }
+    trailSize = limit;
+    qhead = limit;
+    trailLim.size = targetLevel;
+  }
+
+  private int propagate() {
+    int confl = NONE;
+    while (qhead < trailSize) {
+      int p = trail[qhead++];
+      int falseLit = p ^ 1;
+      int[] ws = watches[p];
+      int n = watchSizes[p];
+      int i = 0;
+      int j = 0;
+      propagations++;
+      while (i < n) {
+        int cref = ws[i];
+        int blocker = ws[i + 1];
+        i += 2;
+        if (value(blocker) == L_TRUE) {
+          ws[j++] = cref;
+          ws[j++] = blocker;
+          continue;
+        }
+        int base = cref + HEADER;
+        if (arena[base] == falseLit) {
+          arena[base] = arena[base + 1];
+          arena[base + 1] = falseLit;
+        }
+        int first = arena[base];
+        if (first != blocker && value(first) == L_TRUE) {
+          ws[j++] = cref;
+          ws[j++] = first;
+          continue;
+        }
+        int size = arena[cref];
+        boolean moved = false;
+        for (int k = 2; k < size; k++) {
+          int lit = arena[base + k];
+          if (value(lit) != L_FALSE) {
+            arena[base + 1] = lit;
+            arena[base + k] = falseLit;
+            watch(lit ^ 1, cref, first);
+            moved = true;
+            break;
+          }
+        }
+        if (moved) {
+          continue;
+        }
+        ws[j++] = cref;
+        ws[j++] = first;
+        if (value(first) == L_FALSE) {
+          confl = cref;
+          qhead = trailSize;
+          while (i < n) {
+            ws[j++] = ws[i++];
+          }
+        } else {
+          uncheckedEnqueue(first, cref);
+        }
+      }
+      watchSizes[p] = j;
+      if (confl != NONE) {
+        break;
+      }
+    }
+    return confl;
+  }
+
+  /*
+   * Conflict Analysis
+   */
+  private int abstractLevel(int v) {
+    return 1 << (level[v] & 31);
+  }
+
+  private int analyze(int confl) {
+    learnt.clear();
+    learnt.push(0);
+    int pathC = 0;
+    int p = NONE;
+    int index = trailSize - 1;
+    do {
+      if ((arena[confl + 1] & FLAG_LEARNT) != 0) {
+        claBump(confl);
+      }
+      int base = confl + HEADER;
+      int size = arena[confl];
+      for (int k = (p == NONE) ? 0 : 1; k < size; k++) {
+        int q = arena[base + k];
+        int v = q >> 1;
+        if (seen[v] == 0 && level[v] > 0) {
+          varBump(v);
+          seen[v] = 1;
+          if (level[v] >= decisionLevel()) {
+            pathC++;
+          } else {
+            learnt.push(q);
+          }
+        }
+      }
+      while (seen[trail[index--] >> 1] == 0) {
+        // skip literals not involved in the conflict
+      }
+      p = trail[index + 1];
+      confl = reason[p >> 1];
+      seen[p >> 1] = 0;
+      pathC--;
+    } while (pathC > 0);
+    learnt.data[0] = p ^ 1;
+
+    // recursive minimization
+    analyzeToClear.clear();
+    for (int i = 0; i < learnt.size; i++) {
+      analyzeToClear.push(learnt.data[i]);
+    }
+    int abstractLevels = 0;
+    for (int i = 1; i < learnt.size; i++) {
+      abstractLevels |= abstractLevel(learnt.data[i] >> 1);
+    }
+    int j = 1;
+    for (int i = 1; i < learnt.size; i++) {
+      int lit = learnt.data[i];
+      if (reason[lit >> 1] == NONE || !isRedundant(lit, abstractLevels)) {
+        learnt.data[j++] = lit;
+      }
+    }
+    learnt.size = j;
+    for (int i = 0; i < analyzeToClear.size; i++) {
+      seen[analyzeToClear.data[i] >> 1] = 0;
+    }
+
+    int btLevel = 0;
+    if (learnt.size > 1) {
+      int maxIndex = 1;
+      for (int i = 2; i < learnt.size; i++) {
+        if (level[learnt.data[i] >> 1] > level[learnt.data[maxIndex] >> 1]) {
+          maxIndex = i;
+        }
+      }
+      int tmp = learnt.data[maxIndex];
+      learnt.data[maxIndex] = learnt.data[1];
+      learnt.data[1] = tmp;
+      btLevel = level[tmp >> 1];
+    }
+    return btLevel;
+  }
+
+  private boolean isRedundant(int lit, int abstractLevels) {
+    analyzeStack.clear();
+    analyzeStack.push(lit);
+    int top = analyzeToClear.size;
+    while (analyzeStack.size > 0) {
+      int q = analyzeStack.data[--analyzeStack.size];
+      int cref = reason[q >> 1];
+      int base = cref + HEADER;
+      int size = arena[cref];
+      for (int k = 1; k < size; k++) {
+        int r = arena[base + k];
+        int v = r >> 1;
+        if (seen[v] == 0 && level[v] > 0) {
+          if (reason[v] != NONE && (abstractLevel(v) & abstractLevels) != 0) {
+            seen[v] = 1;
+            analyzeStack.push(r);
+            analyzeToClear.push(r);
+          } else {
+            for (int i = top; i < analyzeToClear.size; i++) {
+              seen[analyzeToClear.data[i] >> 1] = 0;
+            }
+            analyzeToClear.size = top;
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  // computes the set of assumptions responsible for the falsified literal p
+  private void analyzeFinal(int p) {
+    failed[p ^ 1] = true;
+    if (decisionLevel() == 0) {
+      return;
+    }
+    seen[p >> 1] = 1;
+    for (int i = trailSize - 1; i >= trailLim.data[0]; i--) {
+      int v = trail[i] >> 1;
+      if (seen[v] != 0) {
+        if (reason[v] == NONE) {
+          failed[trail[i]] = true;
+        } else {
+          int cref = reason[v];
+          for (int k = 1; k < arena[cref]; k++) {
+            int q = arena[cref + HEADER + k];
+            if (level[q >> 1] > 0) {
+              seen[q >> 1] = 1;
+            }
+          }
+        }
+        seen[v] = 0;
+      }
+    }
+    seen[p >> 1] = 0;
+  }
+
+  /*
+   * Learnt Clause Reduction
+   */
+  private int lbdOf(int cref) {
+    return arena[cref + 1] >>> LBD_SHIFT;
+  }
+
+  private float activityOf(int cref) {
+    return Float.intBitsToFloat(arena[cref + 2]);
+  }
+
+  // true when clause c1 is less useful than c2
+  private boolean isWorse(int c1, int c2) {
+    int lbd1 = lbdOf(c1);
+    int lbd2 = lbdOf(c2);
+    if (lbd1 != lbd2) {
+      return lbd1 > lbd2;
+    }
+    return activityOf(c1) < activityOf(c2);
+  }
+
+  private void sortLearnts(int[] data, int lo, int hi) {
+    while (hi - lo > 16) {
+      int pivot = data[(lo + hi) >>> 1];
+      int i = lo;
+      int j = hi - 1;
+      while (i <= j) {
+        while (isWorse(data[i], pivot)) {
+          i++;
+        }
+        while (isWorse(pivot, data[j])) {
+          j--;
+        }
+        if (i <= j) {
+          int tmp = data[i];
+          data[i] = data[j];
+          data[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (j - lo < hi - i) {
+        sortLearnts(data, lo, j + 1);
+        lo = i;
+      } else {
+        sortLearnts(data, i, hi);
+        hi = j + 1;
+      }
+    }
+    for (int i = lo + 1; i < hi; i++) {
+      int x = data[i];
+      int j = i - 1;
+      while (j >= lo && isWorse(x, data[j])) {
+        data[j + 1] = data[j];
+        j--;
+      }
+      data[j + 1] = x;
+    }
+  }
+
+  private void reduceDb() {
+    reduceCount++;
+    sortLearnts(learnts.data, 0, learnts.size);
+    int limit = learnts.size / 2;
+    int j = 0;
+    for (int i = 0; i < learnts.size; i++) {
+      int cref = learnts.data[i];
+      if (i < limit && lbdOf(cref) > 2 && arena[cref] > 2 && !isLocked(cref)) {
+        arena[cref + 1] |= FLAG_DELETED;
+        arenaWasted += HEADER + arena[cref];
+      } else {
+        learnts.data[j++] = cref;
+      }
+    }
+    learnts.size = j;
+    if (arenaWasted * 4 > arenaSize) {
+      garbageCollect();
+    } else {
+      purgeWatches();
+    }
+  }
+
+  private void purgeWatches() {
+    for (int lit = 2; lit < 2 * (numVars + 1); lit++) {
+      int[] ws = watches[lit];
+      int n = watchSizes[lit];
+      int j = 0;
+      for (int i = 0; i < n; i += 2) {
+        if ((arena[ws[i] + 1] & FLAG_DELETED) == 0) {
+          ws[j++] = ws[i];
+          ws[j++] = ws[i + 1];
+        }
+      }
+      watchSizes[lit] = j;
+    }
+  }
+
+  private void garbageCollect() {
+    int[] newArena = new int[Math.max(1024, arenaSize - arenaWasted)];
+    int newSize = 0;
+    int cref = 0;
+    while (cref < arenaSize) {
+      int size = arena[cref];
+      int total = HEADER + size;
+      if ((arena[cref + 1] & FLAG_DELETED) == 0) {
+        System.arraycopy(arena, cref, newArena, newSize, total);
+        // forwarding address
+        arena[cref + 2] = newSize;
+        newSize += total;
+      }
+      cref += total;
+    }
+    for (int i = 1; i <= numVars; i++) {
+      if (reason[i] != NONE) {
+        reason[i] = arena[reason[i] + 2];
+      }
+    }
+    for (int i = 0; i < originals.size; i++) {
+      originals.data[i] = arena[originals.data[i] + 2];
+    }
+    for (int i = 0; i < learnts.size; i++) {
+      learnts.data[i] = arena[learnts.data[i] + 2];
+    }
+    arena = newArena;
+    arenaSize = newSize;
+    arenaWasted = 0;
+    for (int lit = 2; lit < 2 * (numVars + 1); lit++) {
+      watchSizes[lit] = 0;
+    }
+    for (int i = 0; i < originals.size; i++) {
+      attachClause(originals.data[i]);
+    }
+    for (int i = 0; i < learnts.size; i++) {
+      attachClause(learnts.data[i]);
+    }
+  }
+
+  /*
+   * Search
+   */
+  private static double luby(double y, int x) {
+    int size = 1;
+    int seq = 0;
+    while (size < x + 1) {
+      seq++;
+      size = 2 * size + 1;
+    }
+    while (size - 1 != x) {
+      size = (size - 1) >> 1;
+      seq--;
+      x = x % size;
+    }
+    return Math.pow(y, seq);
+  }
+
+  private boolean shouldTerminate() {
+    return interrupted || (terminate != null && terminate.getAsBoolean())
+        || (deadline > 0 && System.currentTimeMillis() >= deadline);
+  }
+
+  private int pickBranchLit() {
+    while (heapSize > 0) {
+      int v = heapRemoveMax();
+      if (assigns[v] == L_UNDEF) {
+        return (v << 1) | (polarity[v] == L_TRUE ? 0 : 1);
+      }
+    }
+    return NONE;
+  }
+
+  private int search(long nofConflicts) {
+    long conflictsCount = 0;
+    while (true) {
+      int confl = propagate();
+      if (confl != NONE) {
+        conflicts++;
+        conflictsCount++;
+        if (decisionLevel() == 0) {
+          return UNSAT;
+        }
+        int btLevel = analyze(confl);
+        cancelUntil(btLevel);
+        if (learnt.size == 1) {
+          uncheckedEnqueue(learnt.data[0], NONE);
+        } else {
+          int lbd = computeLbd(learnt.data, learnt.size);
+          int cref = allocClause(learnt.data, learnt.size, true, lbd);
+          learnts.push(cref);
+          attachClause(cref);
+          claBump(cref);
+          uncheckedEnqueue(learnt.data[0], cref);
+        }
+        varInc /= VAR_DECAY;
+        claInc /= CLAUSE_DECAY;
+        if ((conflicts & TERMINATE_CHECK_MASK) == 0 && shouldTerminate()) {
+          return INTERRUPTED;
+        }
+      } else {
+        if (nofConflicts >= 0 && conflictsCount >= nofConflicts) {
+          cancelUntil(0);
+          return UNKNOWN;
+        }
+        if (conflicts >= nextReduce) {
+          nextReduce = conflicts + FIRST_REDUCE + REDUCE_INCREMENT * reduceCount;
+          reduceDb();
+        }
+        int next = NONE;
+        while (decisionLevel() < assumptions.size) {
+          int p = assumptions.data[decisionLevel()];
+          if (value(p) == L_TRUE) {
+            newDecisionLevel();
+          } else if (value(p) == L_FALSE) {
+            analyzeFinal(p ^ 1);
+            return UNSAT;
+          } else {
+            next = p;
+            break;
+          }
+        }
+        if (next == NONE) {
+          decisions++;
+          if ((decisions & TERMINATE_CHECK_MASK) == 0 && shouldTerminate()) {
+            return INTERRUPTED;
+          }
+          next = pickBranchLit();
+          if (next == NONE) {
+            return SAT;
+          }
+        }
+        newDecisionLevel();
+        uncheckedEnqueue(next, NONE);
+      }
+    }
+  }
+
+  private int solveInternal(long timeoutMillis, BooleanSupplier terminate) {
+    interrupted = false;
+    deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+    this.terminate = terminate;
+    Arrays.fill(failed, false);
+    modelSize = 0;
+    if (!ok) {
+      assumptions.clear();
+      return UNSAT;
+    }
+    int status = UNKNOWN;
+    int restarts = 0;
+    while (status == UNKNOWN) {
+      if (shouldTerminate()) {
+        status = INTERRUPTED;
+        break;
+      }
+      long nofConflicts = (long) (luby(2, restarts++) * RESTART_FIRST);
+      status = search(nofConflicts);
+    }
+    if (status == SAT) {
+      if (model.length < numVars + 1) {
+        model = new byte[numVars + 1];
+      }
+      System.arraycopy(assigns, 0, model, 0, numVars + 1);
+      modelSize = numVars;
+    } else if (status == UNSAT && decisionLevel() == 0) {
+      boolean anyFailed = false;
+      for (int i = 0; i < assumptions.size && !anyFailed; i++) {
+        anyFailed = failed[assumptions.data[i]];
+      }
+      if (!anyFailed) {
+        ok = false;
+      }
+    }
+    cancelUntil(0);
+    assumptions.clear();
+    deadline = 0;
+    this.terminate = null;
+    return status;
+  }
+
+  @Override
+  public boolean failed(int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    int lit = toLit(literal);
+    return lit < failed.length && failed[lit];
+  }
+
+  /**
+   * 実行中の探索を中断させる.
+   * 他のスレッドから呼び出してもよい.
+   * 中断されたsolveはINTERRUPTEDを返す.
+   */
+  @Override
+  public void interrupt() {
+    interrupted = true;
+  }
+
+  /**
+   * これまでの探索で発生した衝突の回数を返す.
+   */
+  public long getConflictsCount() {
+    return conflicts;
+  }
+
+  /**
+   * これまでの探索で行った決定の回数を返す.
+   */
+  public long getDecisionsCount() {
+    return decisions;
+  }
+
+  /**
+   * これまでの探索で行った単位伝播の回数を返す.
+   */
+  public long getPropagationsCount() {
+    return propagations;
+  }
+
+  /*
+   * Implementation Of SatSolver Interface
+   */
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  private void addBuffered(int size) {
+    if (!ok) {
+      return;
+    }
+    int[] lits = addBuffer;
+    Arrays.sort(lits, 0, size);
+    int j = 0;
+    int prev = NONE;
+    for (int i = 0; i < size; i++) {
+      int lit = lits[i];
+      byte val = value(lit);
+      if (val == L_TRUE || lit == (prev ^ 1)) {
+        // satisfied or tautology
+        return;
+      }
+      if (val != L_FALSE && lit != prev) {
+        lits[j++] = lit;
+        prev = lit;
+      }
+    }
+    if (j == 0) {
+      ok = false;
+    } else if (j == 1) {
+      uncheckedEnqueue(lits[0], NONE);
+      ok = propagate() == NONE;
+    } else {
+      int cref = allocClause(lits, j, false, 0);
+      originals.push(cref);
+      attachClause(cref);
+    }
+  }
+
+  private int bufferLiteral(int index, int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    if (index >= addBuffer.length) {
+      addBuffer = Arrays.copyOf(addBuffer, addBuffer.length * 2);
+    }
+    ensureVariables(Math.abs(literal));
+    addBuffer[index] = toLit(literal);
+    return index + 1;
+  }
+
+  @Override
+  public void add(@NonNull int... clause) {
+    int size = 0;
+    for (int literal : clause) {
+      size = bufferLiteral(size, literal);
+    }
+    addBuffered(size);
+  }
+
+  @Override
+  public void add(@NonNull Collection<Integer> clause) {
+    int size = 0;
+    for (int literal : clause) {
+      size = bufferLiteral(size, literal);
+    }
+    addBuffered(size);
+  }
+
+  @Override
+  public void addClauses(@NonNull int[] literals, int from, int to) {
+    int size = 0;
+    for (int i = from; i < to; i++) {
+      if (literals[i] == 0) {
+        addBuffered(size);
+        size = 0;
+      } else {
+        size = bufferLiteral(size, literals[i]);
+      }
+    }
+    if (size != 0) {
+      throw new IllegalArgumentException("Clause Must Be Terminated By Zero");
+    }
+  }
+
+  @Override
+  public void assume(int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    ensureVariables(Math.abs(literal));
+    assumptions.push(toLit(literal));
+  }
+
+  @Override
+  public List<Integer> solve() {
+    return solve(-1);
+  }
+
+  @Override
+  public List<Integer> solve(long timeout) {
+    int status = solveInternal(toMillis(timeout), null);
+
+    List<Integer> res = new ArrayList<>();
+    res.add(status);
+    if (status == SAT) {
+      for (int v = 1; v <= modelSize; v++) {
+        res.add(model[v] == L_TRUE ? v : -v);
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public int solve(@NonNull SatModel model) {
+    return solve(-1, model);
+  }
+
+  @Override
+  public int solve(long timeout, @NonNull SatModel model) {
+    return solveMillis(toMillis(timeout), null, model);
+  }
+
+  @Override
+  public int solve(Duration timeout, BooleanSupplier terminate, @NonNull SatModel model) {
+    return solveMillis(timeout == null ? -1 : timeout.toMillis(), terminate, model);
+  }
+
+  private static long toMillis(long timeout) {
+    return timeout > 0 ? timeout * 1000L : -1;
+  }
+
+  private int solveMillis(long timeoutMillis, BooleanSupplier terminate, SatModel model) {
+    int status = solveInternal(timeoutMillis, terminate);
+
+    if (status == SAT) {
+      model.reset(modelSize);
+      for (int v = 1; v <= modelSize; v++) {
+        if (this.model[v] == L_TRUE) {
+          model.set(v, true);
+        }
+      }
+    }
+    return status;
+  }
+
+  @Override
+  public void close() {
+    arena = new int[0];
+    arenaSize = 0;
+    watches = new int[0][];
+    watchSizes = new int[0];
+    originals = new IntVec();
+    learnts = new IntVec();
+    numVars = 0;
+    capacity = 0;
+    ok = false;
+  }
+
+  @Override
+  public String toString() {
+    return "CdclSolver(variables=" + numVars + ", clauses=" + originals.size
+        + ", learnts=" + learnts.size + ", conflicts=" + conflicts + ")";
+  }
+
+  private static final class IntVec {
+    int[] data = new int[16];
+    int size = 0;
+
+    void push(int value) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, size * 2);
+      }
+      data[size++] = value;
+    }
+
+    void clear() {
+      size = 0;
+    }
+  }
+}
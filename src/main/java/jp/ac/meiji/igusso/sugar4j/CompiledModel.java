@@ -0,0 +1,511 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.csp.BooleanVariable;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.expression.Expression;
+import jp.kobe_u.sugar.expression.Sequence;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * 符号化済みのモデルを保持し, 新しいSATソルバの上に何度でも安価に複製するためのクラス.
+ *
+ * <p>newTemplateで生成したSugar4jオブジェクトにモデルを追加し, compileで凍結する.
+ * 凍結したモデルは, 変数と符号 (SAT変数の番号) の対応と, 符号化された節を0区切りで並べたint配列を保持する.
+ * instantiateはその配列をSatSolver#addClausesで一括して追加し, CSPの変換や符号化をやり直さずに
+ * 同じモデルから逐次的に制約を追加できるSugar4jオブジェクトを返す.
+ *
+ * <p>このオブジェクトは不変であり, 複数のスレッドから同時にinstantiateしてよい.
+ * CompiledModelCacheを用いると, 凍結したモデルをファイルに保存して別のプロセスから再利用できる.
+ *
+ * @see CompiledModelCache
+ */
+@ToString(of = {"variablesCount", "clausesCount"})
+public final class CompiledModel {
+  private static final int MAGIC = 0x53344a43;
+  private static final int VERSION = 2;
+
+  private static final byte TAG_INTEGER = 0;
+  private static final byte TAG_STRING = 1;
+  private static final byte TAG_SEQUENCE = 2;
+
+  private final SugarConfig config;
+  private final int[] clauses;
+  private final int variablesCount;
+  private final int clausesCount;
+  private final List<IntegerVariableEntry> integerVariables;
+  private final List<BooleanVariableEntry> booleanVariables;
+  private final List<Expression> definitions;
+  private final int falseLiteral;
+  private final int reificationsCount;
+  private final Map<Expression, String> reifications;
+
+  /*
+   * 符号化済みの変数と節から, 凍結したモデルを生成する.
+   */
+  static CompiledModel freeze(SugarConfig config, int[] clauses, int variablesCount,
+                              int clausesCount, List<IntegerVariable> integerVariables,
+                              List<BooleanVariable> booleanVariables, List<Expression> definitions,
+                              int falseLiteral, int reificationsCount,
+                              Map<Expression, String> reifications) {
+    List<IntegerVariableEntry> integerEntries = new ArrayList<>();
+    for (IntegerVariable v : integerVariables) {
+      integerEntries.add(new IntegerVariableEntry(v));
+    }
+    List<BooleanVariableEntry> booleanEntries = new ArrayList<>();
+    for (BooleanVariable v : booleanVariables) {
+      booleanEntries.add(new BooleanVariableEntry(v));
+    }
+    return new CompiledModel(config, clauses, variablesCount, clausesCount, integerEntries,
+        booleanEntries, new ArrayList<>(definitions), falseLiteral, reificationsCount,
+        new HashMap<>(reifications));
+  }
+
+  private CompiledModel(SugarConfig config, int[] clauses, int variablesCount, int clausesCount,
+                        List<IntegerVariableEntry> integerVariables,
+                        List<BooleanVariableEntry> booleanVariables, List<Expression> definitions,
+                        int falseLiteral, int reificationsCount,
+                        Map<Expression, String> reifications) {
+    this.config = config;
+    this.clauses = clauses;
+    this.variablesCount = variablesCount;
+    this.clausesCount = clausesCount;
+    this.integerVariables = Collections.unmodifiableList(integerVariables);
+    this.booleanVariables = Collections.unmodifiableList(booleanVariables);
+    this.definitions = Collections.unmodifiableList(definitions);
+    this.falseLiteral = falseLiteral;
+    this.reificationsCount = reificationsCount;
+    this.reifications = Collections.unmodifiableMap(reifications);
+  }
+
+  /**
+   * モデルを記述するためのSugar4jオブジェクトを生成する.
+   * このオブジェクトはSATソルバを持たず, 符号化された節を記録するだけである.
+   */
+  public static Sugar4j newTemplate() {
+    return newTemplate(new SugarConfig());
+  }
+
+  /**
+   * 変換の設定configを与えて, モデルを記述するためのSugar4jオブジェクトを生成する.
+   * configはこのテンプレートと, そこから複製された全てのオブジェクトで共有される.
+   */
+  public static Sugar4j newTemplate(@NonNull SugarConfig config) {
+    Sugar4jImpl template = new Sugar4jImpl(DummySolver.getInstance(), config);
+    template.startRecording();
+    return template;
+  }
+
+  /**
+   * newTemplateで生成したtemplateに追加されたモデルを符号化し, 凍結する.
+   * templateはその後も使用できるが, 以降の変更は返されたモデルに影響しない.
+   * pushによるスコープの内側では凍結できない.
+   */
+  public static CompiledModel compile(@NonNull Sugar4j template) {
+    if (!(template instanceof Sugar4jImpl)) {
+      throw new IllegalArgumentException("not a template : " + template);
+    }
+    return ((Sugar4jImpl) template).compile();
+  }
+
+  /**
+   * 新しいSATソルバsolverにモデルを一括して読み込み, それをバックエンドとするSugar4jオブジェクトを返す.
+   * solverには節がまだ追加されていないこと.
+   */
+  public Sugar4j instantiate(@NonNull SatSolver solver) {
+    Sugar4jImpl sugar4j = new Sugar4jImpl(solver, config);
+    sugar4j.load(this);
+    return sugar4j;
+  }
+
+  /**
+   * 符号化に用いたSAT変数の数を返す.
+   */
+  public int getSatVariablesCount() {
+    return variablesCount;
+  }
+
+  /**
+   * 符号化された節の数を返す.
+   */
+  public int getSatClausesCount() {
+    return clausesCount;
+  }
+
+  int[] getClauses() {
+    return clauses;
+  }
+
+  List<Expression> getDefinitions() {
+    return definitions;
+  }
+
+  int getFalseLiteral() {
+    return falseLiteral;
+  }
+
+  int getReificationsCount() {
+    return reificationsCount;
+  }
+
+  Map<Expression, String> getReifications() {
+    return reifications;
+  }
+
+  /*
+   * 凍結した整数変数と同じ定義域と符号を持つ変数を新しく生成する.
+   */
+  List<IntegerVariable> newIntegerVariables() throws SugarException {
+    List<IntegerVariable> res = new ArrayList<>();
+    Map<String, IntegerVariable> map = new HashMap<>();
+    for (IntegerVariableEntry entry : integerVariables) {
+      IntegerVariable v = entry.newIntegerVariable();
+      res.add(v);
+      map.put(v.getName(), v);
+    }
+    for (int i = 0; i < res.size(); i++) {
+      IntegerVariableEntry entry = integerVariables.get(i);
+      if (entry.digits == null) {
+        continue;
+      }
+      // 解放された桁は, CSPに登録せずに復号のためだけに生成する
+      IntegerVariable[] digits = new IntegerVariable[entry.digits.size()];
+      for (int j = 0; j < digits.length; j++) {
+        IntegerVariableEntry digit = entry.digits.get(j);
+        digits[j] = map.get(digit.name);
+        if (digits[j] == null) {
+          digits[j] = digit.newIntegerVariable();
+          digits[j].freeze();
+        }
+      }
+      res.get(i).setDigits(entry.base, entry.offset, digits);
+    }
+    return res;
+  }
+
+  /*
+   * 凍結した論理変数と同じ符号を持つ変数を新しく生成する.
+   */
+  List<BooleanVariable> newBooleanVariables() throws SugarException {
+    List<BooleanVariable> res = new ArrayList<>();
+    for (BooleanVariableEntry entry : booleanVariables) {
+      BooleanVariable v = new BooleanVariable(entry.name);
+      v.setComment(entry.comment);
+      v.setCode(entry.code);
+      v.setDominant(entry.dominant);
+      res.add(v);
+    }
+    return res;
+  }
+
+  /*
+   * このモデルをバイナリ形式でoutに書き出す. 設定は書き出さない.
+   * 節の列は, readで一括して読み込めるよう要素数に続けて連続して書き出す.
+   */
+  void write(DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(variablesCount);
+    out.writeInt(clausesCount);
+    out.writeInt(falseLiteral);
+    out.writeInt(reificationsCount);
+
+    out.writeInt(integerVariables.size());
+    for (IntegerVariableEntry entry : integerVariables) {
+      writeString(out, entry.name);
+      writeString(out, entry.comment);
+      out.writeInt(entry.code);
+      out.writeBoolean(entry.dominant);
+      writeString(out, entry.encoding.name());
+      writeDomain(out, entry.domain);
+      if (entry.digits == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(entry.digits.size());
+        out.writeInt(entry.base);
+        out.writeInt(entry.offset);
+        for (IntegerVariableEntry digit : entry.digits) {
+          writeString(out, digit.name);
+          out.writeInt(digit.code);
+          writeDomain(out, digit.domain);
+        }
+      }
+    }
+
+    out.writeInt(booleanVariables.size());
+    for (BooleanVariableEntry entry : booleanVariables) {
+      writeString(out, entry.name);
+      writeString(out, entry.comment);
+      out.writeInt(entry.code);
+      out.writeBoolean(entry.dominant);
+    }
+
+    out.writeInt(definitions.size());
+    for (Expression definition : definitions) {
+      writeExpression(out, definition);
+    }
+    out.writeInt(reifications.size());
+    for (Map.Entry<Expression, String> entry : reifications.entrySet()) {
+      writeExpression(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+
+    out.writeInt(clauses.length);
+    for (int literal : clauses) {
+      out.writeInt(literal);
+    }
+  }
+
+  /*
+   * writeで書き出したモデルをbufferから読み込む. 設定にはconfigを用いる.
+   * 形式が正しくないときはIOExceptionを投げる.
+   */
+  static CompiledModel read(ByteBuffer buffer, SugarConfig config) throws IOException {
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("not a compiled model");
+      }
+      int variablesCount = buffer.getInt();
+      int clausesCount = buffer.getInt();
+      int falseLiteral = buffer.getInt();
+      int reificationsCount = buffer.getInt();
+
+      int integerVariablesSize = buffer.getInt();
+      List<IntegerVariableEntry> integerVariables = new ArrayList<>(integerVariablesSize);
+      for (int i = 0; i < integerVariablesSize; i++) {
+        String name = readString(buffer);
+        String comment = readString(buffer);
+        int code = buffer.getInt();
+        boolean dominant = buffer.get() != 0;
+        Encoding encoding = Encoding.valueOf(readString(buffer));
+        IntegerDomain domain = readDomain(buffer);
+        IntegerVariableEntry entry =
+            new IntegerVariableEntry(name, domain, comment, code, dominant, encoding);
+        int digitsSize = buffer.getInt();
+        if (digitsSize >= 0) {
+          entry.base = buffer.getInt();
+          entry.offset = buffer.getInt();
+          entry.digits = new ArrayList<>(digitsSize);
+          for (int j = 0; j < digitsSize; j++) {
+            String digitName = readString(buffer);
+            int digitCode = buffer.getInt();
+            IntegerDomain digitDomain = readDomain(buffer);
+            entry.digits.add(new IntegerVariableEntry(digitName, digitDomain, null, digitCode,
+                false, Encoding.ORDER));
+          }
+        }
+        integerVariables.add(entry);
+      }
+
+      int booleanVariablesSize = buffer.getInt();
+      List<BooleanVariableEntry> booleanVariables = new ArrayList<>(booleanVariablesSize);
+      for (int i = 0; i < booleanVariablesSize; i++) {
+        String name = readString(buffer);
+        String comment = readString(buffer);
+        int code = buffer.getInt();
+        boolean dominant = buffer.get() != 0;
+        booleanVariables.add(new BooleanVariableEntry(name, comment, code, dominant));
+      }
+
+      int definitionsSize = buffer.getInt();
+      List<Expression> definitions = new ArrayList<>(definitionsSize);
+      for (int i = 0; i < definitionsSize; i++) {
+        definitions.add(readExpression(buffer));
+      }
+      int reificationsSize = buffer.getInt();
+      Map<Expression, String> reifications = new HashMap<>();
+      for (int i = 0; i < reificationsSize; i++) {
+        Expression key = readExpression(buffer);
+        reifications.put(key, readString(buffer));
+      }
+
+      int[] clauses = new int[buffer.getInt()];
+      buffer.asIntBuffer().get(clauses);
+      buffer.position(buffer.position() + clauses.length * 4);
+
+      return new CompiledModel(config, clauses, variablesCount, clausesCount, integerVariables,
+          booleanVariables, definitions, falseLiteral, reificationsCount, reifications);
+    } catch (BufferUnderflowException | IllegalArgumentException | SugarException ex) {
+      throw new IOException("broken compiled model", ex);
+    }
+  }
+
+  /*
+   * 式xを, 整数, 文字列, 列のタグを付けた前置形式で書き出す.
+   */
+  static void writeExpression(DataOutput out, Expression x) throws IOException {
+    if (x.isInteger()) {
+      out.writeByte(TAG_INTEGER);
+      out.writeInt(x.integerValue());
+    } else if (x.isString()) {
+      out.writeByte(TAG_STRING);
+      writeString(out, x.stringValue());
+    } else {
+      Sequence seq = (Sequence) x;
+      out.writeByte(TAG_SEQUENCE);
+      out.writeInt(seq.length());
+      for (int i = 0; i < seq.length(); i++) {
+        writeExpression(out, seq.get(i));
+      }
+    }
+  }
+
+  private static Expression readExpression(ByteBuffer buffer) throws IOException {
+    byte tag = buffer.get();
+    if (tag == TAG_INTEGER) {
+      return Expression.create(buffer.getInt());
+    } else if (tag == TAG_STRING) {
+      return Expression.create(readString(buffer));
+    } else if (tag == TAG_SEQUENCE) {
+      int length = buffer.getInt();
+      List<Expression> xs = new ArrayList<>(length);
+      for (int i = 0; i < length; i++) {
+        xs.add(readExpression(buffer));
+      }
+      return Expression.create(xs);
+    }
+    throw new IOException("unknown expression tag : " + tag);
+  }
+
+  /*
+   * 文字列をUTF-8のバイト数に続けて書き出す. nullはバイト数-1で表す.
+   */
+  static void writeString(DataOutput out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeDomain(DataOutput out, IntegerDomain domain) throws IOException {
+    List<int[]> intervals = new ArrayList<>();
+    for (Iterator<int[]> it = domain.intervals(); it.hasNext(); ) {
+      intervals.add(it.next());
+    }
+    out.writeInt(intervals.size());
+    for (int[] interval : intervals) {
+      out.writeInt(interval[0]);
+      out.writeInt(interval[1]);
+    }
+  }
+
+  private static IntegerDomain readDomain(ByteBuffer buffer) throws SugarException {
+    int intervalsSize = buffer.getInt();
+    if (intervalsSize == 1) {
+      return IntegerDomain.create(buffer.getInt(), buffer.getInt());
+    }
+    if (IntegerDomain.USE_DIET_DOMAIN && intervalsSize > 0) {
+      // 区間のまま合わせる
+      IntegerDomain domain = null;
+      for (int j = 0; j < intervalsSize; j++) {
+        IntegerDomain d = IntegerDomain.create(buffer.getInt(), buffer.getInt());
+        domain = domain == null ? d : domain.cup(d);
+      }
+      return domain;
+    }
+    // IntegerDomainIntervalsのcupは区間の和を包含する区間で近似するため使えない.
+    // 複数の区間からなる定義域はもともと値の集合で表されているので, 集合に戻す
+    SortedSet<Integer> values = new TreeSet<>();
+    for (int j = 0; j < intervalsSize; j++) {
+      int lb = buffer.getInt();
+      int ub = buffer.getInt();
+      for (int value = lb; value <= ub; value++) {
+        values.add(value);
+      }
+    }
+    return IntegerDomain.create(values);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static final class IntegerVariableEntry {
+    private final String name;
+    private final IntegerDomain domain;
+    private final String comment;
+    private final int code;
+    private final boolean dominant;
+    private final Encoding encoding;
+    private int base;
+    private int offset;
+    private List<IntegerVariableEntry> digits;
+
+    IntegerVariableEntry(IntegerVariable v) {
+      this(v.getName(), v.getDomain(), v.getComment(), v.getCode(), v.isDominant(),
+          v.getEncoding());
+      if (v.isCompact()) {
+        base = v.getBase();
+        offset = v.getOffset();
+        digits = new ArrayList<>();
+        for (IntegerVariable digit : v.getDigits()) {
+          digits.add(new IntegerVariableEntry(digit));
+        }
+      }
+    }
+
+    IntegerVariableEntry(String name, IntegerDomain domain, String comment, int code,
+                         boolean dominant, Encoding encoding) {
+      this.name = name;
+      this.domain = domain;
+      this.comment = comment;
+      this.code = code;
+      this.dominant = dominant;
+      this.encoding = encoding;
+    }
+
+    IntegerVariable newIntegerVariable() throws SugarException {
+      IntegerVariable v = new IntegerVariable(name, domain);
+      v.setComment(comment);
+      v.setCode(code);
+      v.setDominant(dominant);
+      v.setEncoding(encoding);
+      v.setModified(false);
+      return v;
+    }
+  }
+
+  private static final class BooleanVariableEntry {
+    private final String name;
+    private final String comment;
+    private final int code;
+    private final boolean dominant;
+
+    BooleanVariableEntry(BooleanVariable v) {
+      this(v.getName(), v.getComment(), v.getCode(), v.isDominant());
+    }
+
+    BooleanVariableEntry(String name, String comment, int code, boolean dominant) {
+      this.name = name;
+      this.comment = comment;
+      this.code = code;
+      this.dominant = dominant;
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.expression.Expression;
+import jp.kobe_u.sugar.expression.Parser;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * 凍結したモデル (CompiledModel) をディレクトリ内のファイルに保存し, プロセスをまたいで再利用するキャッシュ.
+ *
+ * <p>キーは, 式のリスト (またはCSPファイルの内容) と変換の設定SugarConfigのSHA-256ハッシュ値である.
+ * キャッシュにあるモデルはファイルをメモリマップして読み込み, 構文解析, CSPへの変換, 符号化を全て省略する.
+ * キャッシュにないモデルは変換, 符号化した上でファイルに保存する.
+ *
+ * <p>ファイルの合計の大きさが上限を超えると, 最後に使用した時刻 (ファイルの更新時刻) が古いものから削除する.
+ * ファイルは一時ファイルに書き出してから置き換えるので, 複数のプロセスが同じディレクトリを共有してもよい.
+ */
+@ToString
+public final class CompiledModelCache {
+  private static final String SUFFIX = ".s4jc";
+  private static final String KEY_PREFIX = "sugar4j-compiled-model/1\n";
+
+  private final Path directory;
+  private final long maxSize;
+
+  private CompiledModelCache(Path directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * directoryにファイルを保存するキャッシュを生成する.
+   * maxSizeはファイルの合計の大きさの上限 (バイト) であり, 0以下の値は制限なしを表す.
+   */
+  public static CompiledModelCache newInstance(@NonNull Path directory, long maxSize) {
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException ex) {
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+    return new CompiledModelCache(directory, maxSize);
+  }
+
+  /**
+   * 式のリストexpressionsを設定configで符号化したモデルを返す.
+   * Sugar4jオブジェクトと同じく, configのincrementalPropagationはfalseに設定される.
+   */
+  public synchronized CompiledModel get(@NonNull List<Expression> expressions,
+                                        @NonNull SugarConfig config) {
+    config.incrementalPropagation = false;
+    MessageDigest digest = newDigest(config);
+    try (DataOutputStream out = new DataOutputStream(
+        new DigestOutputStream(NullOutputStream.INSTANCE, digest))) {
+      for (Expression expression : expressions) {
+        CompiledModel.writeExpression(out, expression);
+      }
+    } catch (IOException ex) {
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+
+    Path path = pathOf(digest);
+    CompiledModel model = load(path, config);
+    if (model == null) {
+      model = compile(expressions, config);
+      store(path, model);
+    }
+    return model;
+  }
+
+  /**
+   * CSPファイルcspFileを設定configで符号化したモデルを返す.
+   * キーはファイルの内容から求めるので, キャッシュにあればファイルを構文解析しない.
+   * 名前が.gzで終わるファイルはgzipで圧縮されているものとして扱う.
+   */
+  public synchronized CompiledModel get(@NonNull Path cspFile, @NonNull SugarConfig config) {
+    config.incrementalPropagation = false;
+    MessageDigest digest = newDigest(config);
+    // 大きなファイルも読めるよう, 少しずつ読みながら求める
+    try (InputStream in = new DigestInputStream(Files.newInputStream(cspFile), digest)) {
+      byte[] buffer = new byte[1 << 16];
+      while (in.read(buffer) >= 0) {
+        continue;
+      }
+    } catch (IOException ex) {
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+
+    Path path = pathOf(digest);
+    CompiledModel model = load(path, config);
+    if (model == null) {
+      model = compile(parse(cspFile), config);
+      store(path, model);
+    }
+    return model;
+  }
+
+  /**
+   * 保存されているファイルの合計の大きさ (バイト) を返す.
+   */
+  public synchronized long size() {
+    long size = 0;
+    for (Path path : listFiles()) {
+      size += sizeOf(path);
+    }
+    return size;
+  }
+
+  /**
+   * 保存されている全てのファイルを削除する.
+   */
+  public synchronized void clear() {
+    for (Path path : listFiles()) {
+      delete(path);
+    }
+  }
+
+  private static MessageDigest newDigest(SugarConfig config) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new Sugar4jException(ex);
+    }
+    digest.update(KEY_PREFIX.getBytes(StandardCharsets.UTF_8));
+    digest.update(config.toString().getBytes(StandardCharsets.UTF_8));
+    return digest;
+  }
+
+  private Path pathOf(MessageDigest digest) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    return directory.resolve(sb.append(SUFFIX).toString());
+  }
+
+  private static CompiledModel compile(List<Expression> expressions, SugarConfig config) {
+    // テンプレートはSATソルバもスレッドも持たないので, 閉じる必要はない
+    Sugar4j template = CompiledModel.newTemplate(config);
+    template.addExpressions(expressions);
+    return CompiledModel.compile(template);
+  }
+
+  private static List<Expression> parse(Path cspFile) {
+    try (InputStream in = cspFile.toString().endsWith(".gz")
+        ? new GZIPInputStream(Files.newInputStream(cspFile)) : Files.newInputStream(cspFile);
+         BufferedReader reader =
+             new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      return new Parser(reader, false).parse();
+    } catch (IOException ex) {
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+  }
+
+  /*
+   * pathに保存されたモデルを読み込む. ファイルがないか壊れているときはnullを返す.
+   * 読み込んだファイルの更新時刻を現在時刻にして, 最近使用したことを記録する.
+   */
+  private static CompiledModel load(Path path, SugarConfig config) {
+    CompiledModel model;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      model = CompiledModel.read(buffer, config);
+    } catch (NoSuchFileException ex) {
+      return null;
+    } catch (IOException ex) {
+      delete(path);
+      return null;
+    }
+
+    try {
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException ex) {
+      // 他のプロセスに削除された
+    }
+    return model;
+  }
+
+  /*
+   * modelを一時ファイルに書き出してからpathに移動し, 上限を超えた分のファイルを削除する.
+   */
+  private void store(Path path, CompiledModel model) {
+    try {
+      Path temporary = Files.createTempFile(directory, "sugar4j", ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+          model.write(out);
+        }
+        try {
+          Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE,
+              StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+          Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException ex) {
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+    evict(path);
+  }
+
+  /*
+   * 合計の大きさが上限以下になるまで, 更新時刻の古いファイルから削除する.
+   * ただし, 保存したばかりのkeepは削除しない.
+   */
+  private void evict(Path keep) {
+    if (maxSize <= 0) {
+      return;
+    }
+
+    List<Path> paths = listFiles();
+    final List<FileTime> times = new ArrayList<>();
+    long size = 0;
+    for (Path path : paths) {
+      size += sizeOf(path);
+    }
+    if (size <= maxSize) {
+      return;
+    }
+
+    for (Path path : paths) {
+      times.add(lastModifiedTimeOf(path));
+    }
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < paths.size(); i++) {
+      order.add(i);
+    }
+    Collections.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        return times.get(i1).compareTo(times.get(i2));
+      }
+    });
+
+    for (int i : order) {
+      if (size <= maxSize) {
+        break;
+      }
+      Path path = paths.get(i);
+      if (path.equals(keep)) {
+        continue;
+      }
+      size -= sizeOf(path);
+      delete(path);
+    }
+  }
+
+  private List<Path> listFiles() {
+    List<Path> res = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path path : stream) {
+        res.add(path);
+      }
+    } catch (IOException ex) {
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+    return res;
+  }
+
+  private static long sizeOf(Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException ex) {
+      return 0;
+    }
+  }
+
+  private static FileTime lastModifiedTimeOf(Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    } catch (IOException ex) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException ex) {
+      // 他のプロセスが使用中であれば, 次の機会に削除する
+    }
+  }
+
+  /*
+   * 書き込まれたバイト列を捨てる出力ストリーム. キーのハッシュ値の計算に用いる.
+   */
+  private static final class NullOutputStream extends OutputStream {
+    private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
@@ -49,6 +49,16 @@ public final class DummySolver implements SatSolver {
     return solve();
   }
 
+  @Override
+  public int solve(@NonNull SatModel model) {
+    return INTERRUPTED;
+  }
+
+  @Override
+  public int solve(long timeout, @NonNull SatModel model) {
+    return solve(model);
+  }
+
   @Override
   public void close() {
   }
@@ -2,9 +2,12 @@ package jp.ac.meiji.igusso.sugar4j;
 
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 import lombok.NonNull;
 
 public final class Ipasir4jSolver implements SatSolver {
@@ -15,10 +18,13 @@ public final class Ipasir4jSolver implements SatSolver {
   private Ipasir4jLibrary ipasir4j;
   private Pointer solver;
   private int maxLiteral = 0;
+  private volatile boolean interrupted = false;
+  private TerminateCallback terminate;
   private int[] bufferToAdd = new int[BUFFER_SIZE];
   private int bufferToAddPointer = 0;
   private int[] bufferToAssume = new int[BUFFER_SIZE];
   private int bufferToAssumePointer = 0;
+  private int[] assignBuffer = new int[0];
 
   private Ipasir4jSolver(@NonNull String solverName) {
     this.ipasir4j = Native.loadLibrary("ipasir4j", Ipasir4jLibrary.class);
@@ -89,6 +95,19 @@ public final class Ipasir4jSolver implements SatSolver {
     addBuffer(0);
   }
 
+  @Override
+  public void addClauses(@NonNull int[] literals, int from, int to) {
+    if (from != to && literals[to - 1] != 0) {
+      throw new IllegalArgumentException("Clause Must Be Terminated By Zero");
+    }
+    for (int i = from; i < to; i++) {
+      maxLiteral = Math.max(maxLiteral, Math.abs(literals[i]));
+    }
+    flushBuffer();
+    int[] array = from == 0 ? literals : Arrays.copyOfRange(literals, from, to);
+    ipasir4j.ipasir4j_add_all(solver, to - from, array);
+  }
+
   @Override
   public void assume(int literal) {
     if (literal == 0) {
@@ -99,6 +118,10 @@ public final class Ipasir4jSolver implements SatSolver {
 
   @Override
   public List<Integer> solve() {
+    return solve(-1);
+  }
+
+  private List<Integer> solveInternal() {
     flushBuffer();
 
     List<Integer> res = new ArrayList<>();
@@ -117,16 +140,86 @@ public final class Ipasir4jSolver implements SatSolver {
 
   @Override
   public List<Integer> solve(long timeout) {
-    if (timeout <= 0) {
-      return solve();
+    beginSolve(timeout > 0 ? timeout * 1000L : -1, null);
+    try {
+      return solveInternal();
+    } finally {
+      endSolve();
+    }
+  }
+
+  @Override
+  public int solve(@NonNull SatModel model) {
+    return solve(-1, model);
+  }
+
+  private int solveInternal(SatModel model) {
+    flushBuffer();
+
+    int res = ipasir4j.ipasir4j_solve(solver);
+
+    if (res == IpasirLibrary.SAT) {
+      if (assignBuffer.length < maxLiteral) {
+        assignBuffer = new int[maxLiteral];
+      }
+      ipasir4j.ipasir4j_val_all(solver, maxLiteral, assignBuffer);
+      model.reset(maxLiteral);
+      for (int literal = 1; literal <= maxLiteral; literal++) {
+        model.set(literal, assignBuffer[literal - 1] > 0);
+      }
     }
 
-    ipasir4j.ipasir4j_set_terminate(solver, null, new TimeoutCallback(timeout));
-    List<Integer> res = solve();
-    ipasir4j.ipasir4j_set_terminate(solver, null, null);
     return res;
   }
 
+  @Override
+  public int solve(long timeout, @NonNull SatModel model) {
+    beginSolve(timeout > 0 ? timeout * 1000L : -1, null);
+    try {
+      return solveInternal(model);
+    } finally {
+      endSolve();
+    }
+  }
+
+  @Override
+  public int solve(Duration timeout, BooleanSupplier terminate, @NonNull SatModel model) {
+    beginSolve(timeout == null ? -1 : timeout.toMillis(), terminate);
+    try {
+      return solveInternal(model);
+    } finally {
+      endSolve();
+    }
+  }
+
+  @Override
+  public boolean failed(int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    return ipasir4j.ipasir4j_failed(solver, literal) != 0;
+  }
+
+  /*
+   * 中断と制限時間を監視するコールバックを登録する.
+   * コールバックはネイティブ側から参照されるため, 求解が終わるまでフィールドで保持する.
+   */
+  private void beginSolve(long timeoutMillis, BooleanSupplier condition) {
+    interrupted = false;
+    terminate = new TerminateCallback(timeoutMillis, condition);
+    ipasir4j.ipasir4j_set_terminate(solver, null, terminate);
+  }
+
+  private void endSolve() {
+    ipasir4j.ipasir4j_set_terminate(solver, null, null);
+    terminate = null;
+  }
+
+  @Override
+  public void interrupt() {
+    interrupted = true;
+  }
+
   @Override
   public void close() {
     if (ipasir4j != null) {
@@ -137,19 +230,21 @@ public final class Ipasir4jSolver implements SatSolver {
     solver = null;
   }
 
-  private static class TimeoutCallback implements IpasirLibrary.IpasirCallback {
-    private final long period;
-    private final long beginTime;
+  private class TerminateCallback implements IpasirLibrary.IpasirCallback {
+    private final long deadline;
+    private final BooleanSupplier condition;
 
-    TimeoutCallback(long period) {
-      this.period = period;
-      this.beginTime = System.currentTimeMillis();
+    TerminateCallback(long periodMillis, BooleanSupplier condition) {
+      this.deadline = periodMillis > 0 ? System.currentTimeMillis() + periodMillis : 0;
+      this.condition = condition;
     }
 
     @Override
     public int callback(Pointer state) {
-      long currTime = System.currentTimeMillis();
-      return (currTime - beginTime) >= period * 1000L ? 1 : 0;
+      if (interrupted || (condition != null && condition.getAsBoolean())) {
+        return 1;
+      }
+      return deadline > 0 && System.currentTimeMillis() >= deadline ? 1 : 0;
     }
   }
 }
@@ -2,9 +2,11 @@ package jp.ac.meiji.igusso.sugar4j;
 
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.ToString;
@@ -19,6 +21,8 @@ public final class IpasirSolver implements SatSolver {
   private IpasirLibrary ipasir;
   private Pointer solver;
   private int maxLiteral = 0;
+  private volatile boolean interrupted = false;
+  private TerminateCallback terminate;
 
   private IpasirSolver(@NonNull String solverName) {
     this.ipasir = Native.loadLibrary(solverName, IpasirLibrary.class);
@@ -71,6 +75,10 @@ public final class IpasirSolver implements SatSolver {
 
   @Override
   public List<Integer> solve() {
+    return solve(-1);
+  }
+
+  private List<Integer> solveInternal() {
     List<Integer> res = new ArrayList<>();
     res.add(ipasir.ipasir_solve(solver));
 
@@ -85,16 +93,80 @@ public final class IpasirSolver implements SatSolver {
 
   @Override
   public List<Integer> solve(long timeout) {
-    if (timeout <= 0) {
-      return solve();
+    beginSolve(timeout > 0 ? timeout * 1000L : -1, null);
+    try {
+      return solveInternal();
+    } finally {
+      endSolve();
+    }
+  }
+
+  @Override
+  public int solve(@NonNull SatModel model) {
+    return solve(-1, model);
+  }
+
+  private int solveInternal(SatModel model) {
+    int res = ipasir.ipasir_solve(solver);
+
+    if (res == IpasirLibrary.SAT) {
+      model.reset(maxLiteral);
+      for (int literal = 1; literal <= maxLiteral; literal++) {
+        model.set(literal, ipasir.ipasir_val(solver, literal) > 0);
+      }
     }
 
-    ipasir.ipasir_set_terminate(solver, null, new TimeoutCallback(timeout));
-    List<Integer> res = solve();
-    ipasir.ipasir_set_terminate(solver, null, null);
     return res;
   }
 
+  @Override
+  public int solve(long timeout, @NonNull SatModel model) {
+    beginSolve(timeout > 0 ? timeout * 1000L : -1, null);
+    try {
+      return solveInternal(model);
+    } finally {
+      endSolve();
+    }
+  }
+
+  @Override
+  public int solve(Duration timeout, BooleanSupplier terminate, @NonNull SatModel model) {
+    beginSolve(timeout == null ? -1 : timeout.toMillis(), terminate);
+    try {
+      return solveInternal(model);
+    } finally {
+      endSolve();
+    }
+  }
+
+  @Override
+  public boolean failed(int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    return ipasir.ipasir_failed(solver, literal) != 0;
+  }
+
+  /*
+   * 中断と制限時間を監視するコールバックを登録する.
+   * コールバックはネイティブ側から参照されるため, 求解が終わるまでフィールドで保持する.
+   */
+  private void beginSolve(long timeoutMillis, BooleanSupplier condition) {
+    interrupted = false;
+    terminate = new TerminateCallback(timeoutMillis, condition);
+    ipasir.ipasir_set_terminate(solver, null, terminate);
+  }
+
+  private void endSolve() {
+    ipasir.ipasir_set_terminate(solver, null, null);
+    terminate = null;
+  }
+
+  @Override
+  public void interrupt() {
+    interrupted = true;
+  }
+
   @Override
   public void close() {
     if (ipasir != null) {
@@ -105,19 +177,21 @@ public final class IpasirSolver implements SatSolver {
     solver = null;
   }
 
-  private static class TimeoutCallback implements IpasirLibrary.IpasirCallback {
-    private final long period;
-    private final long beginTime;
+  private class TerminateCallback implements IpasirLibrary.IpasirCallback {
+    private final long deadline;
+    private final BooleanSupplier condition;
 
-    TimeoutCallback(long period) {
-      this.period = period;
-      this.beginTime = System.currentTimeMillis();
+    TerminateCallback(long periodMillis, BooleanSupplier condition) {
+      this.deadline = periodMillis > 0 ? System.currentTimeMillis() + periodMillis : 0;
+      this.condition = condition;
     }
 
     @Override
     public int callback(Pointer state) {
-      long currTime = System.currentTimeMillis();
-      return (currTime - beginTime) >= period * 1000L ? 1 : 0;
+      if (interrupted || (condition != null && condition.getAsBoolean())) {
+        return 1;
+      }
+      return deadline > 0 && System.currentTimeMillis() >= deadline ? 1 : 0;
     }
   }
 }
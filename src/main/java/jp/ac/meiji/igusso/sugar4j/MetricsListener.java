@@ -0,0 +1,61 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+/**
+ * Sugar4jの処理の各段階にかかった時間と確保したメモリの量を受け取るリスナ.
+ * Sugar4j#setMetricsListenerで登録する.
+ *
+ * <p>メソッドは処理を行ったスレッドから呼び出される.
+ * solveAsyncを用いる場合など, 複数のスレッドから呼び出されうるので, 実装はスレッド安全であること.
+ *
+ * @see Sugar4jMetrics
+ */
+public interface MetricsListener {
+  /**
+   * 計測する処理の段階.
+   */
+  enum Phase {
+    /**
+     * 式からCSPへの変換 (addExpressionなど).
+     */
+    CONVERSION,
+    /**
+     * CSPの定義域の伝播.
+     */
+    PROPAGATION,
+    /**
+     * CSPの節の単純化.
+     */
+    SIMPLIFICATION,
+    /**
+     * CSPからSATへの符号化. SATソルバへの節の受け渡しは含まない.
+     */
+    ENCODING,
+    /**
+     * 符号化した節のSATソルバへの受け渡し.
+     */
+    CLAUSE_TRANSFER,
+    /**
+     * SATソルバによる求解.
+     */
+    SOLVE,
+    /**
+     * SATソルバの解からSolutionを構築する処理.
+     * 変数の値は参照されるまで復号されないので, その時間は含まない.
+     */
+    DECODE
+  }
+
+  /**
+   * 段階phaseの処理が1回終わるたびに呼び出される.
+   * elapsedNanosは経過時間 (ナノ秒), allocatedBytesは処理中にスレッドが確保したメモリの量 (バイト) である.
+   * JVMがスレッドごとの確保量の計測に対応していないときは, allocatedBytesは-1である.
+   */
+  default void phaseFinished(Phase phase, long elapsedNanos, long allocatedBytes) {
+  }
+
+  /**
+   * Sugar4j#updateによる符号化が1回終わるたびに呼び出される.
+   */
+  default void updateFinished(UpdateMetrics metrics) {
+  }
+}
@@ -0,0 +1,67 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Sugar4j#minimize, Sugar4j#maximizeの結果を表現するクラス.
+ */
+@ToString
+public final class OptimizationResult {
+  /**
+   * 得られた最良の解を返す.
+   * 解が得られなかったときは, 充足不能またはタイムアウトを表す解を返す.
+   */
+  @Getter
+  private final Solution solution;
+
+  /**
+   * 得られた解が最適であることが証明されたかを返す.
+   */
+  @Getter
+  private final boolean optimal;
+
+  /**
+   * 最適性が証明される前にタイムアウトしたかを返す.
+   */
+  @Getter
+  private final boolean timeout;
+
+  private final int objectiveValue;
+
+  /**
+   * 証明された目的関数の値の限界を返す.
+   * 最小化では下界を, 最大化では上界を表す.
+   * 最適であるときは, 最適値に等しい.
+   * 問題が充足不能のときの値は意味を持たない.
+   */
+  @Getter
+  private final int bound;
+
+  OptimizationResult(Solution solution, boolean optimal, boolean timeout, int objectiveValue,
+                     int bound) {
+    this.solution = solution;
+    this.optimal = optimal;
+    this.timeout = timeout;
+    this.objectiveValue = objectiveValue;
+    this.bound = bound;
+  }
+
+  /**
+   * 解が得られたかを返す.
+   */
+  public boolean isSat() {
+    return solution.isSat();
+  }
+
+  /**
+   * 得られた最良の解における目的関数の値を返す.
+   * 解が得られなかったときはIllegalStateExceptionを送出する.
+   */
+  public int getObjectiveValue() {
+    if (!isSat()) {
+      throw new IllegalStateException("no solution found");
+    }
+    return objectiveValue;
+  }
+}
@@ -0,0 +1,32 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+/**
+ * Sugar4j#minimize, Sugar4j#maximizeで用いる探索戦略を表す列挙型.
+ * いずれの戦略も目的変数の境界を順序符号化のリテラル (x <= k) の仮定として与えるため,
+ * 問題を再符号化せず, SATソルバが学習した節を反復の間で再利用する.
+ */
+public enum OptimizationStrategy {
+  /**
+   * 解を1つ求めた後, その解より真に良い解を要求して解き直すことを, 充足不能となるまで繰り返す.
+   * 途中で打ち切っても, それまでに得られた最良の解が得られる.
+   */
+  LINEAR_SAT_UNSAT,
+
+  /**
+   * 目的関数の最良の値から順に, その値以下 (最大化では以上) の解が存在するかを調べる.
+   * 最初に得られた解が最適解である.
+   */
+  LINEAR_UNSAT_SAT,
+
+  /**
+   * 証明された下界と得られた解の値の間を二分探索する.
+   */
+  BINARY,
+
+  /**
+   * 下界側から幅を倍々に広げながら探索し, 解が得られた後は二分探索を行う.
+   * 充足不能となったとき, SATソルバが返す充足不能の原因 (SatSolver#failed) に境界の仮定が
+   * 含まれなければ, 問題自体が充足不能であると判断して直ちに探索を終える.
+   */
+  CORE_GUIDED
+}
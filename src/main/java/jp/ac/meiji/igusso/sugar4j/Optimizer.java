@@ -0,0 +1,201 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static jp.kobe_u.sugar.expression.Expression.create;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.expression.Expression;
+
+/**
+ * 1つの整数変数を目的変数として最適化を行うクラス.
+ *
+ * <p>目的変数の定義域の値を良い順に並べたときの添字を「順位」と呼ぶ.
+ * 最小化では順位rの値は定義域のr番目に小さい値であり, 最大化ではr番目に大きい値である.
+ * 「順位がr以下」という境界は順序符号化のリテラル1つで表せるので,
+ * それを仮定としてSATソルバに与えて探索を行う.
+ */
+final class Optimizer {
+  private final Sugar4jImpl sugar4j;
+  private final SatSolver solver;
+  private final IntegerVariable variable;
+  private final Expression handle;
+  private final IntegerDomain domain;
+  private final boolean maximize;
+  private final List<Integer> assumptions;
+  private final long deadline;
+
+  private final int size;
+  private Solution best;
+  private int bestRank;
+  private int lowerRank;
+  private boolean timeout;
+
+  /**
+   * assumptionsは各反復で境界とともに仮定するリテラルである.
+   * timeoutは全体の制限時間 (秒) であり, 0以下の値は制限なしを表す.
+   */
+  Optimizer(Sugar4jImpl sugar4j, SatSolver solver, IntegerVariable variable, boolean maximize,
+            List<Integer> assumptions, long timeout) {
+    this.sugar4j = sugar4j;
+    this.solver = solver;
+    this.variable = variable;
+    this.handle = create(variable.getName());
+    this.domain = variable.getDomain();
+    this.maximize = maximize;
+    this.assumptions = new ArrayList<>(assumptions);
+    this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout * 1000 : 0;
+
+    this.size = domain.size();
+    this.best = null;
+    this.bestRank = size;
+    this.lowerRank = 0;
+    this.timeout = false;
+  }
+
+  OptimizationResult optimize(OptimizationStrategy strategy) {
+    switch (strategy) {
+      case LINEAR_SAT_UNSAT:
+        optimizeLinearSatUnsat();
+        break;
+      case LINEAR_UNSAT_SAT:
+        optimizeLinearUnsatSat();
+        break;
+      case BINARY:
+        optimizeBinary();
+        break;
+      case CORE_GUIDED:
+        optimizeCoreGuided();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown strategy : " + strategy);
+    }
+
+    boolean optimal = best != null && lowerRank >= bestRank;
+    Solution solution = best;
+    if (solution == null) {
+      solution = timeout ? SolutionImpl.timeout() : SolutionImpl.unsat();
+    }
+    int objectiveValue = best != null ? valueOf(bestRank) : 0;
+    int bound = valueOf(Math.min(lowerRank, size - 1));
+    return new OptimizationResult(solution, optimal, timeout && !optimal, objectiveValue, bound);
+  }
+
+  private void optimizeLinearSatUnsat() {
+    while (lowerRank < bestRank) {
+      int rank = best == null ? size - 1 : bestRank - 1;
+      if (solveWithin(rank) == SatSolver.INTERRUPTED) {
+        break;
+      }
+    }
+  }
+
+  private void optimizeLinearUnsatSat() {
+    while (lowerRank < bestRank) {
+      if (solveWithin(lowerRank) == SatSolver.INTERRUPTED) {
+        break;
+      }
+    }
+  }
+
+  private void optimizeBinary() {
+    while (lowerRank < bestRank) {
+      int rank = best == null ? size - 1 : (lowerRank + bestRank - 1) >>> 1;
+      if (solveWithin(rank) == SatSolver.INTERRUPTED) {
+        break;
+      }
+    }
+  }
+
+  private void optimizeCoreGuided() {
+    int step = 1;
+    while (lowerRank < bestRank) {
+      int rank;
+      if (best == null) {
+        rank = (int) Math.min((long) lowerRank + step - 1, size - 1);
+      } else {
+        rank = (lowerRank + bestRank - 1) >>> 1;
+      }
+
+      int result = solveWithin(rank);
+      if (result == SatSolver.INTERRUPTED) {
+        break;
+      }
+      if (result == SatSolver.UNSAT) {
+        step = (int) Math.min(2L * step, size);
+      }
+    }
+  }
+
+  /*
+   * 順位がrank以下であることを仮定して解き, 最良解と下界を更新する.
+   */
+  private int solveWithin(int rank) {
+    long remaining = 0;
+    if (deadline != 0) {
+      remaining = (deadline - System.currentTimeMillis() + 999) / 1000;
+      if (remaining <= 0) {
+        timeout = true;
+        return SatSolver.INTERRUPTED;
+      }
+    }
+
+    int bound = boundLiteral(rank);
+    List<Integer> literals = new ArrayList<>(assumptions);
+    if (bound != 0) {
+      literals.add(bound);
+    }
+
+    Solution solution = sugar4j.solve(literals, remaining);
+    if (solution.isSat()) {
+      int solutionRank = rankOf(solution.getInt(handle));
+      if (solutionRank < bestRank) {
+        best = solution;
+        bestRank = solutionRank;
+      }
+      return SatSolver.SAT;
+    }
+    if (solution.isTimeout()) {
+      timeout = true;
+      return SatSolver.INTERRUPTED;
+    }
+
+    if (bound != 0 && solver.failed(bound)) {
+      lowerRank = Math.max(lowerRank, rank + 1);
+    } else {
+      // 境界に関係なく充足不能
+      lowerRank = size;
+    }
+    return SatSolver.UNSAT;
+  }
+
+  /*
+   * 「順位がrank以下」を表すリテラルを返す. 常に成り立つときは0を返す.
+   * 最小化では x <= (rank番目の値), 最大化では ~(x <= (size - 2 - rank番目の値)) である.
+   * 各桁で表された目的変数では, x <= (rank番目の値) などの制約を表す論理変数を用いる.
+   */
+  private int boundLiteral(int rank) {
+    if (rank >= size - 1) {
+      return 0;
+    }
+    if (variable.isCompact()) {
+      Expression op = maximize ? Expression.GE : Expression.LE;
+      return sugar4j.reify(create(op, handle, create(valueOf(rank))));
+    }
+    if (maximize) {
+      return -(variable.getCode() + size - 2 - rank);
+    }
+    return variable.getCode() + rank;
+  }
+
+  private int rankOf(int value) {
+    int index = domain.sizeLE(value) - 1;
+    return maximize ? size - 1 - index : index;
+  }
+
+  private int valueOf(int rank) {
+    return domain.valueAt(maximize ? size - 1 - rank : rank);
+  }
+}
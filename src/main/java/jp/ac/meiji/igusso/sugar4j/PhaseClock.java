@@ -0,0 +1,110 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/*
+ * 処理の段階ごとの経過時間と, 現在のスレッドが確保したメモリの量を計測する.
+ * メモリの量はcom.sun.management.ThreadMXBeanが使えるときだけ計測し, それ以外は-1とする.
+ */
+final class PhaseClock {
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final boolean SUN_THREADS = hasSunThreads();
+
+  private final MetricsListener listener;
+  private long beginNanos;
+  private long beginBytes;
+
+  /*
+   * listenerがnullのときは何も計測しない.
+   */
+  PhaseClock(MetricsListener listener) {
+    this.listener = listener;
+    begin();
+  }
+
+  boolean isEnabled() {
+    return listener != null;
+  }
+
+  /*
+   * 計測を開始し直す.
+   */
+  void begin() {
+    if (listener == null) {
+      return;
+    }
+    beginNanos = System.nanoTime();
+    beginBytes = allocatedBytes();
+  }
+
+  /*
+   * 計測を開始してからの経過時間と確保量をphaseとしてリスナに通知し, 計測を開始し直す.
+   */
+  void end(MetricsListener.Phase phase) {
+    end(phase, 0, 0);
+  }
+
+  /*
+   * endと同様だが, 内側で別の段階として通知した時間excludedNanosと確保量excludedBytesを除く.
+   */
+  void end(MetricsListener.Phase phase, long excludedNanos, long excludedBytes) {
+    if (listener == null) {
+      return;
+    }
+    long nanos = System.nanoTime();
+    long bytes = allocatedBytes();
+    listener.phaseFinished(phase, nanos - beginNanos - excludedNanos,
+        bytes < 0 ? -1 : bytes - beginBytes - excludedBytes);
+    beginNanos = nanos;
+    beginBytes = bytes;
+  }
+
+  /*
+   * 別に計測した値をphaseとしてリスナに通知する.
+   */
+  void report(MetricsListener.Phase phase, long nanos, long bytes) {
+    if (listener != null) {
+      listener.phaseFinished(phase, nanos, bytes);
+    }
+  }
+
+  void updateFinished(UpdateMetrics metrics) {
+    if (listener != null) {
+      listener.updateFinished(metrics);
+    }
+  }
+
+  /*
+   * 現在のスレッドがこれまでに確保したメモリの量を返す. 計測できないときは-1を返す.
+   */
+  static long allocatedBytes() {
+    return SUN_THREADS ? SunThreads.allocatedBytes() : -1;
+  }
+
+  /*
+   * com.sun.management.ThreadMXBeanが使えるか一度だけ調べる.
+   */
+  private static boolean hasSunThreads() {
+    try {
+      Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+      return c.isInstance(THREADS);
+    } catch (ClassNotFoundException | LinkageError ex) {
+      return false;
+    }
+  }
+
+  /*
+   * com.sun.management.ThreadMXBeanを参照するクラス.
+   * そのクラスがないJVMでも読み込まれないよう, hasSunThreadsで確かめてから使う.
+   */
+  private static final class SunThreads {
+    static long allocatedBytes() {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+      if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return -1;
+    }
+  }
+}
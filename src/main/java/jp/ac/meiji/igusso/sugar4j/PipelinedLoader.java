@@ -0,0 +1,183 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.expression.Expression;
+import jp.kobe_u.sugar.expression.Parser;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * CSPファイルを構文解析, 変換と符号化, SATソルバへの読み込みの3段のパイプラインで読み込むクラス.
+ *
+ * <p>各段は別々のスレッドで並行に動き, 段の間は容量に上限のあるキューで結ばれる.
+ * 後段が追いつかないときは前段が待たされるので, キューに溜まる式と節の量は一定以下に保たれる.
+ * <ol>
+ * <li>構文解析のスレッドは, 式をbatchSize個ずつまとめてキューに入れる.
+ * <li>loadを呼び出したスレッドは, まとめられた式を順に変換し,
+ * 入力を読み終えてからCSP全体を伝播, 簡単化, 符号化する.
+ * <li>読み込み用のスレッドは, 符号化された節をまとめてSATソルバに渡す.
+ * </ol>
+ * 符号化された変数の定義域は凍結されるため, まとめた式ごとに符号化すると,
+ * 先に宣言された変数が後の制約で狭まる前の定義域のまま符号化されてしまう.
+ * そのため符号化は最後に一度だけ行い, 一度に読み込む場合と同じ節を得る.
+ * 代わりに, 変換されたCSPは入力を読み終えるまでメモリ上に保持され,
+ * 符号化とSATソルバへの読み込みは構文解析や変換と重ならない.
+ */
+@ToString
+public final class PipelinedLoader {
+  private static final List<Expression> END = new ArrayList<>();
+
+  private final int batchSize;
+  private final int queueCapacity;
+  private final int chunkSize;
+
+  private PipelinedLoader(int batchSize, int queueCapacity, int chunkSize) {
+    if (batchSize <= 0 || queueCapacity <= 0 || chunkSize <= 0) {
+      throw new IllegalArgumentException("Sizes Must Be Positive");
+    }
+    this.batchSize = batchSize;
+    this.queueCapacity = queueCapacity;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * 既定の大きさのキューを用いるローダーを生成する.
+   */
+  public static PipelinedLoader newInstance() {
+    return new PipelinedLoader(1000, 16, 1 << 16);
+  }
+
+  /**
+   * キューの大きさを与えてローダーを生成する.
+   * batchSizeはまとめて変換する式の個数, queueCapacityは各段の間のキューに入るまとまりの個数の上限,
+   * chunkSizeはまとめてSATソルバに渡す節のリテラルの個数の目安である.
+   */
+  public static PipelinedLoader newInstance(int batchSize, int queueCapacity, int chunkSize) {
+    return new PipelinedLoader(batchSize, queueCapacity, chunkSize);
+  }
+
+  /**
+   * CSPファイルcspFileを読み込み, solverをバックエンドとするSugar4jオブジェクトを返す.
+   * 名前が.gzで終わるファイルはgzipで圧縮されているものとして扱う.
+   * 返されるオブジェクトの節の追加は, 以後も読み込み用のスレッドを経由してsolverに渡される.
+   * 読み込みに失敗したときはsolverを閉じ, Sugar4jExceptionを投げる.
+   */
+  public Sugar4j load(@NonNull Path cspFile, @NonNull SatSolver solver,
+                      @NonNull SugarConfig config) {
+    BufferedReader reader;
+    try {
+      InputStream in = Files.newInputStream(cspFile);
+      if (cspFile.toString().endsWith(".gz")) {
+        in = new GZIPInputStream(in);
+      }
+      reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      solver.close();
+      throw new Sugar4jException("IOException occurred", ex);
+    }
+    return load(reader, solver, config);
+  }
+
+  /**
+   * readerからCSPを読み込み, solverをバックエンドとするSugar4jオブジェクトを返す.
+   * readerは読み終えると閉じられる.
+   */
+  public Sugar4j load(@NonNull BufferedReader reader, @NonNull SatSolver solver,
+                      @NonNull SugarConfig config) {
+    BlockingQueue<List<Expression>> queue = new ArrayBlockingQueue<>(queueCapacity);
+    ParserTask parserTask = new ParserTask(new Parser(reader, false), reader, queue);
+    Thread parser = new Thread(parserTask, "sugar4j-parser");
+    parser.setDaemon(true);
+
+    Sugar4jImpl sugar4j = new Sugar4jImpl(
+        PipelinedSatSolver.newInstance(solver, chunkSize, queueCapacity), config);
+    parser.start();
+    boolean succeeded = false;
+    try {
+      while (true) {
+        List<Expression> batch = queue.take();
+        if (batch == END) {
+          break;
+        }
+        sugar4j.addExpressions(batch);
+      }
+      if (parserTask.failure != null) {
+        throw new Sugar4jException("failed to parse", parserTask.failure);
+      }
+      sugar4j.update();
+      succeeded = true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new Sugar4jException("interrupted while loading", ex);
+    } finally {
+      if (!succeeded) {
+        parser.interrupt();
+        sugar4j.close();
+      }
+    }
+    return sugar4j;
+  }
+
+  /*
+   * 式を構文解析し, batchSize個ずつまとめてキューに入れる.
+   * 最後に (失敗したときも) ENDを入れる.
+   */
+  private final class ParserTask implements Runnable {
+    private final Parser parser;
+    private final BufferedReader reader;
+    private final BlockingQueue<List<Expression>> queue;
+    private volatile Throwable failure;
+
+    ParserTask(Parser parser, BufferedReader reader, BlockingQueue<List<Expression>> queue) {
+      this.parser = parser;
+      this.reader = reader;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<Expression> batch = new ArrayList<>(batchSize);
+        Expression expression;
+        while ((expression = parser.next()) != null) {
+          batch.add(expression);
+          if (batch.size() == batchSize) {
+            queue.put(batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        if (!batch.isEmpty()) {
+          queue.put(batch);
+        }
+      } catch (InterruptedException ex) {
+        // 読み込みが中止された
+        return;
+      } catch (Throwable ex) {
+        failure = ex;
+      } finally {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          // 読み終えているので無視する
+        }
+      }
+      try {
+        queue.put(END);
+      } catch (InterruptedException ex) {
+        // 読み込みが中止された
+      }
+    }
+  }
+}
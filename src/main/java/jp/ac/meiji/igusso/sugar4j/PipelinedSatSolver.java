@@ -0,0 +1,247 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import lombok.NonNull;
+
+/**
+ * 節の追加を専用のスレッドで行うSatSolverインタフェースの実装クラス.
+ * 符号化と, バックエンドのソルバへの節の読み込みを並行に進めるために用いる.
+ *
+ * <p>追加された節は0で区切ってチャンクにまとめられ, 専用のスレッドが追加された順にsolverへ渡す.
+ * 渡し終えていないチャンクがcapacity個に達すると, 節を追加するスレッドは待たされる.
+ * 節の追加以外の操作は, それまでに追加された節を全て渡し終えてから行う.
+ * solverはこのオブジェクトが所有し, closeで閉じられる.
+ */
+final class PipelinedSatSolver implements SatSolver {
+  private final SatSolver solver;
+  private final int capacity;
+  private final Semaphore permits;
+  private final ExecutorService executor;
+
+  private int[] chunk;
+  private int chunkLength = 0;
+  private volatile Throwable failure;
+  private volatile boolean closed = false;
+
+  private PipelinedSatSolver(SatSolver solver, int chunkSize, int capacity) {
+    if (chunkSize <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Chunk Size And Capacity Must Be Positive");
+    }
+    this.solver = solver;
+    this.capacity = capacity;
+    this.permits = new Semaphore(capacity);
+    this.chunk = new int[chunkSize];
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "sugar4j-loader");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * solverへの節の読み込みを専用のスレッドで行うソルバを生成する.
+   * chunkSizeは一度に渡すリテラルと区切りの0の個数の目安, capacityは渡し終えていないチャンクの個数の上限である.
+   */
+  static PipelinedSatSolver newInstance(@NonNull SatSolver solver, int chunkSize, int capacity) {
+    return new PipelinedSatSolver(solver, chunkSize, capacity);
+  }
+
+  @Override
+  public String getName() {
+    return solver.getName();
+  }
+
+  @Override
+  public void add(@NonNull int... clause) {
+    for (int literal : clause) {
+      if (literal == 0) {
+        throw new IllegalArgumentException("Literal Must Not Be Zero");
+      }
+    }
+    reserve(clause.length + 1);
+    System.arraycopy(clause, 0, chunk, chunkLength, clause.length);
+    chunkLength += clause.length;
+    chunk[chunkLength++] = 0;
+  }
+
+  @Override
+  public void add(@NonNull Collection<Integer> clause) {
+    for (int literal : clause) {
+      if (literal == 0) {
+        throw new IllegalArgumentException("Literal Must Not Be Zero");
+      }
+    }
+    reserve(clause.size() + 1);
+    for (int literal : clause) {
+      chunk[chunkLength++] = literal;
+    }
+    chunk[chunkLength++] = 0;
+  }
+
+  @Override
+  public void addClauses(@NonNull int[] literals, int from, int to) {
+    if (from < to && literals[to - 1] != 0) {
+      throw new IllegalArgumentException("Clause Must Be Terminated By Zero");
+    }
+    if (to - from > chunk.length) {
+      // チャンクに収まらない節の列はそのまま渡す
+      send();
+      submit(Arrays.copyOfRange(literals, from, to), to - from);
+      return;
+    }
+    reserve(to - from);
+    System.arraycopy(literals, from, chunk, chunkLength, to - from);
+    chunkLength += to - from;
+  }
+
+  /*
+   * チャンクにlength個の空きを作る. 1つの節がチャンクより長いときはチャンクを拡げる.
+   */
+  private void reserve(int length) {
+    if (chunkLength + length <= chunk.length) {
+      return;
+    }
+    send();
+    if (length > chunk.length) {
+      chunk = new int[length];
+    }
+  }
+
+  /*
+   * 現在のチャンクを読み込み用のスレッドに渡す.
+   */
+  private void send() {
+    if (chunkLength == 0) {
+      return;
+    }
+    int[] literals = chunk;
+    int length = chunkLength;
+    chunk = new int[chunk.length];
+    chunkLength = 0;
+    submit(literals, length);
+  }
+
+  private void submit(final int[] literals, final int length) {
+    check();
+    try {
+      permits.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new Sugar4jException("interrupted while loading clauses", ex);
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (failure == null && !closed) {
+            solver.addClauses(literals, 0, length);
+          }
+        } catch (Throwable ex) {
+          failure = ex;
+        } finally {
+          permits.release();
+        }
+      }
+    });
+  }
+
+  /*
+   * 追加された節を全てsolverに渡し終えるまで待つ.
+   */
+  private void sync() {
+    send();
+    permits.acquireUninterruptibly(capacity);
+    permits.release(capacity);
+    check();
+  }
+
+  private void check() {
+    if (failure != null) {
+      throw new Sugar4jException("failed to load clauses into " + solver.getName(), failure);
+    }
+  }
+
+  @Override
+  public void assume(int literal) {
+    sync();
+    solver.assume(literal);
+  }
+
+  @Override
+  public List<Integer> solve() {
+    sync();
+    return solver.solve();
+  }
+
+  @Override
+  public List<Integer> solve(long timeout) {
+    sync();
+    return solver.solve(timeout);
+  }
+
+  @Override
+  public int solve(@NonNull SatModel model) {
+    sync();
+    return solver.solve(model);
+  }
+
+  @Override
+  public int solve(long timeout, @NonNull SatModel model) {
+    sync();
+    return solver.solve(timeout, model);
+  }
+
+  @Override
+  public int solve(Duration timeout, BooleanSupplier terminate, @NonNull SatModel model) {
+    sync();
+    return solver.solve(timeout, terminate, model);
+  }
+
+  @Override
+  public boolean failed(int literal) {
+    return solver.failed(literal);
+  }
+
+  @Override
+  public void interrupt() {
+    solver.interrupt();
+  }
+
+  @Override
+  public void close() {
+    // 読み込み中の節は捨て, solverを使い終えてから閉じる
+    closed = true;
+    executor.shutdown();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+          break;
+        }
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    solver.close();
+  }
+
+  @Override
+  public String toString() {
+    return "PipelinedSatSolver(solver=" + solver + ", capacity=" + capacity + ")";
+  }
+}
@@ -0,0 +1,312 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import lombok.NonNull;
+
+/**
+ * 複数のSatSolverを並列に走らせ, 最初に得られた結果を採用するSatSolverインタフェースの実装クラス.
+ * 異なるIPASIRライブラリや, 異なる乱数の種を与えたCdclSolverを組み合わせて用いる.
+ *
+ * <p>追加された節と仮定は一度だけバッファに保持され, solveの呼び出し時に各ソルバへ並列に配られる.
+ * solveは全てのソルバを同時に走らせ, 最初に充足可能性が確定したソルバの結果を返す.
+ * 各ソルバに渡す停止判定は, 結果が確定した時点で真を返すので, 残りのソルバはそれとSatSolver#interruptで中断される.
+ * solveは残りのソルバの停止を待たずに返り, 停止は次のsolveまたはcloseの呼び出し時に待つ.
+ * 構成要素のソルバはこのオブジェクトが所有し, closeで全て閉じられる.
+ */
+public final class PortfolioSolver implements SatSolver {
+  private static final long INTERRUPT_RETRY_MILLIS = 10;
+
+  private final List<SatSolver> solvers;
+  private final List<SatModel> models;
+  private final ExecutorService executor;
+
+  private final List<int[]> pendingClauses = new ArrayList<>();
+  private final List<Integer> pendingAssumptions = new ArrayList<>();
+  private List<Future<Integer>> running = new ArrayList<>();
+  private volatile boolean decided;
+  private SatSolver winner;
+
+  private PortfolioSolver(List<SatSolver> solvers) {
+    if (solvers.isEmpty()) {
+      throw new IllegalArgumentException("No Solvers Are Given");
+    }
+    this.solvers = Collections.unmodifiableList(new ArrayList<>(solvers));
+    this.models = new ArrayList<>();
+    for (int i = 0; i < solvers.size(); i++) {
+      models.add(new SatModel());
+    }
+    this.executor = Executors.newFixedThreadPool(solvers.size(), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "sugar4j-portfolio");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public static PortfolioSolver newInstance(@NonNull List<SatSolver> solvers) {
+    return new PortfolioSolver(solvers);
+  }
+
+  public static PortfolioSolver newInstance(@NonNull SatSolver... solvers) {
+    return new PortfolioSolver(Arrays.asList(solvers));
+  }
+
+  /**
+   * 構成要素のソルバのリストを返す.
+   */
+  public List<SatSolver> getSolvers() {
+    return solvers;
+  }
+
+  /**
+   * 直前のsolveで結果を返したソルバを返す.
+   * まだsolveを呼び出していないとき, または全てのソルバが中断されたときはnullを返す.
+   */
+  public SatSolver getWinner() {
+    return winner;
+  }
+
+  @Override
+  public String getName() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("portfolio(");
+    for (int i = 0; i < solvers.size(); i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(solvers.get(i).getName());
+    }
+    sb.append(')');
+    return sb.toString();
+  }
+
+  @Override
+  public void add(@NonNull int... clause) {
+    for (int literal : clause) {
+      if (literal == 0) {
+        throw new IllegalArgumentException("Literal Must Not Be Zero");
+      }
+    }
+    pendingClauses.add(clause.clone());
+  }
+
+  @Override
+  public void add(@NonNull Collection<Integer> clause) {
+    int[] array = new int[clause.size()];
+    int index = 0;
+    for (int literal : clause) {
+      if (literal == 0) {
+        throw new IllegalArgumentException("Literal Must Not Be Zero");
+      }
+      array[index++] = literal;
+    }
+    pendingClauses.add(array);
+  }
+
+  @Override
+  public void assume(int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    pendingAssumptions.add(literal);
+  }
+
+  @Override
+  public List<Integer> solve() {
+    return solve(-1);
+  }
+
+  @Override
+  public List<Integer> solve(long timeout) {
+    SatModel model = new SatModel();
+    int status = solve(timeout, model);
+
+    List<Integer> res = new ArrayList<>();
+    res.add(status);
+    if (status == SAT) {
+      for (int v = 1; v <= model.size(); v++) {
+        res.add(model.value(v));
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public int solve(@NonNull SatModel model) {
+    return solve(-1, model);
+  }
+
+  @Override
+  public int solve(long timeout, @NonNull SatModel model) {
+    return solve(timeout > 0 ? Duration.ofSeconds(timeout) : null, null, model);
+  }
+
+  @Override
+  public int solve(final Duration timeout, final BooleanSupplier terminate,
+                   @NonNull SatModel model) {
+    awaitAll();
+    final int[][] clauses = pendingClauses.toArray(new int[pendingClauses.size()][]);
+    final int[] assumptions = new int[pendingAssumptions.size()];
+    for (int i = 0; i < assumptions.length; i++) {
+      assumptions[i] = pendingAssumptions.get(i);
+    }
+    pendingClauses.clear();
+    pendingAssumptions.clear();
+    winner = null;
+    decided = false;
+    final BooleanSupplier stop = new BooleanSupplier() {
+      @Override
+      public boolean getAsBoolean() {
+        return decided || (terminate != null && terminate.getAsBoolean());
+      }
+    };
+
+    CompletionService<Integer> service = new ExecutorCompletionService<>(executor);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < solvers.size(); i++) {
+      final SatSolver solver = solvers.get(i);
+      final SatModel solverModel = models.get(i);
+      futures.add(service.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          for (int[] clause : clauses) {
+            solver.add(clause);
+          }
+          for (int literal : assumptions) {
+            solver.assume(literal);
+          }
+          return solver.solve(timeout, stop, solverModel);
+        }
+      }));
+    }
+
+    int status = INTERRUPTED;
+    RuntimeException error = null;
+    try {
+      for (int i = 0; i < solvers.size() && winner == null; i++) {
+        Future<Integer> future = service.take();
+        int index = futures.indexOf(future);
+        try {
+          int res = future.get();
+          if (res == SAT || res == UNSAT) {
+            status = res;
+            winner = solvers.get(index);
+            if (res == SAT) {
+              copy(models.get(index), model);
+            }
+          }
+        } catch (ExecutionException ex) {
+          error = new Sugar4jException(
+              "Solver Failed : " + solvers.get(index).getName(), ex.getCause());
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      stopAll();
+      running = futures;
+    }
+
+    if (winner == null && error != null) {
+      throw error;
+    }
+    return status;
+  }
+
+  /*
+   * 残りのソルバに停止を要求する. 停止は待たない.
+   */
+  private void stopAll() {
+    decided = true;
+    for (SatSolver solver : solvers) {
+      solver.interrupt();
+    }
+  }
+
+  /*
+   * 前回のsolveで走らせた全てのソルバの停止を待つ.
+   * 中断の要求がsolveの開始前に届くと無視されうるため, 停止するまで要求を繰り返す.
+   * 構成要素のソルバはスレッド安全ではないので, 停止を待たずに次の操作を行ってはならない.
+   */
+  private void awaitAll() {
+    List<Future<Integer>> futures = running;
+    running = new ArrayList<>();
+    boolean interrupted = false;
+    for (int i = 0; i < futures.size(); i++) {
+      Future<Integer> future = futures.get(i);
+      while (true) {
+        solvers.get(i).interrupt();
+        try {
+          future.get(INTERRUPT_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+          break;
+        } catch (TimeoutException ex) {
+          continue;
+        } catch (ExecutionException ex) {
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void copy(SatModel from, SatModel to) {
+    to.reset(from.size());
+    for (int v = 1; v <= from.size(); v++) {
+      if (from.get(v)) {
+        to.set(v, true);
+      }
+    }
+  }
+
+  @Override
+  public boolean failed(int literal) {
+    if (literal == 0) {
+      throw new IllegalArgumentException("Literal Must Not Be Zero");
+    }
+    return winner == null || winner.failed(literal);
+  }
+
+  @Override
+  public void interrupt() {
+    for (SatSolver solver : solvers) {
+      solver.interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    stopAll();
+    awaitAll();
+    executor.shutdownNow();
+    for (SatSolver solver : solvers) {
+      solver.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PortfolioSolver(solvers=" + solvers + ")";
+  }
+}
@@ -0,0 +1,96 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.util.Arrays;
+
+/**
+ * SATソルバが求めた充足割り当てを表現するクラス.
+ * 変数x_iへの割り当てをビット列として保持する.
+ * 同じオブジェクトを繰り返しSatSolver#solveに渡すことで, 内部の配列が再利用される.
+ */
+public final class SatModel {
+  private long[] bits = new long[1];
+  private int size = 0;
+
+  public SatModel() {
+  }
+
+  /**
+   * 割り当てを保持している変数の個数を返す.
+   * 変数x_1からx_sizeまでの値が有効である.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * 変数x_variableに1が割り当てられているかを返す.
+   * 範囲外の変数に対してはfalseを返す.
+   */
+  public boolean get(int variable) {
+    if (variable <= 0 || variable > size) {
+      return false;
+    }
+    return (bits[variable >>> 6] & (1L << variable)) != 0;
+  }
+
+  /**
+   * リテラルliteralが真であるかを返す.
+   * 例えば, isTrue(-3)はx_3に0が割り当てられているときに真となる.
+   */
+  public boolean isTrue(int literal) {
+    return literal > 0 ? get(literal) : !get(-literal);
+  }
+
+  /**
+   * IPASIRのipasir_valと同様に, x_variableに1が割り当てられているときはvariableを,
+   * そうでないときは-variableを返す.
+   */
+  public int value(int variable) {
+    return get(variable) ? variable : -variable;
+  }
+
+  /**
+   * 変数の個数をsizeとし, 全ての変数の割り当てを0にする.
+   */
+  void reset(int size) {
+    int words = (size >>> 6) + 1;
+    if (bits.length < words) {
+      bits = new long[Math.max(words, bits.length * 2)];
+    } else {
+      Arrays.fill(bits, 0, words, 0L);
+    }
+    this.size = size;
+  }
+
+  void set(int variable, boolean value) {
+    if (value) {
+      bits[variable >>> 6] |= 1L << variable;
+    } else {
+      bits[variable >>> 6] &= ~(1L << variable);
+    }
+  }
+
+  /**
+   * この割り当ての複製を返す.
+   */
+  public SatModel copy() {
+    SatModel model = new SatModel();
+    model.bits = Arrays.copyOf(bits, (size >>> 6) + 1);
+    model.size = size;
+    return model;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("SatModel(");
+    for (int v = 1; v <= size; v++) {
+      if (v > 1) {
+        sb.append(' ');
+      }
+      sb.append(value(v));
+    }
+    sb.append(')');
+    return sb.toString();
+  }
+}
@@ -1,7 +1,10 @@
 package jp.ac.meiji.igusso.sugar4j;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 /**
  * SATソルバを表現するインタフェース.
@@ -30,6 +33,24 @@ public interface SatSolver extends AutoCloseable {
    */
   void add(Collection<Integer> clause);
 
+  /**
+   * SATソルバに節の列を一括して追加する.
+   * literalsのfromからtoの手前までには, 各節のリテラルが0で区切られて並んでいる.
+   * 例えば, { 1, 2, 0, -1, 0 } は節 x_1 or x_2 と節 ~x_1 を表す.
+   */
+  default void addClauses(int[] literals, int from, int to) {
+    int begin = from;
+    for (int i = from; i < to; i++) {
+      if (literals[i] == 0) {
+        add(Arrays.copyOfRange(literals, begin, i));
+        begin = i + 1;
+      }
+    }
+    if (begin != to) {
+      throw new IllegalArgumentException("Clause Must Be Terminated By Zero");
+    }
+  }
+
   /**
    * SATソルバに変数への割り当てを仮定させる.
    * リテラルは非ゼロの整数で表現する.
@@ -58,6 +79,72 @@ public interface SatSolver extends AutoCloseable {
    */
   List<Integer> solve(long timeout);
 
+  /**
+   * SATソルバに現在の問題を解かせる.
+   * 戻り値は問題が充足可能かを表す. (定数SAT, UNSAT, INTERRUPTEDを参照せよ)
+   * 充足可能のとき, 充足割り当てをmodelに書き込む.
+   * solve()と異なり, 変数の個数に比例する個数のオブジェクトを生成しない.
+   */
+  default int solve(SatModel model) {
+    return solve(-1, model);
+  }
+
+  /**
+   * SATソルバにタイムアウト付きで現在の問題を解かせる.
+   * 戻り値は問題が充足可能かを表す. (定数SAT, UNSAT, INTERRUPTEDを参照せよ)
+   * 充足可能のとき, 充足割り当てをmodelに書き込む.
+   * タイムアウトの時間の単位は秒である.
+   * 0以下の値はタイムアウトなしを意味する.
+   */
+  default int solve(long timeout, SatModel model) {
+    List<Integer> res = solve(timeout);
+    if (res.isEmpty()) {
+      return INTERRUPTED;
+    }
+    if (res.get(0) == SAT) {
+      model.reset(res.size() - 1);
+      for (int variable = 1; variable < res.size(); variable++) {
+        model.set(variable, res.get(variable) > 0);
+      }
+    }
+    return res.get(0);
+  }
+
+  /**
+   * SATソルバに制限時間と中断条件を与えて現在の問題を解かせる.
+   * 戻り値は問題が充足可能かを表す. (定数SAT, UNSAT, INTERRUPTEDを参照せよ)
+   * 充足可能のとき, 充足割り当てをmodelに書き込む.
+   * 制限時間timeoutはミリ秒の精度で扱われ, nullまたは0以下の値は制限なしを意味する.
+   * terminateは探索中に繰り返し呼び出され, trueを返すと探索は中断される.
+   * terminateは他のスレッドが書き換えるvolatileな変数を読む程度の軽い処理でなければならない.
+   * nullのときは中断条件を設けない.
+   * 既定の実装は制限時間を秒単位に切り上げてsolve(long, SatModel)を呼び出し, terminateを監視しない.
+   */
+  default int solve(Duration timeout, BooleanSupplier terminate, SatModel model) {
+    long seconds = -1;
+    if (timeout != null && !timeout.isNegative() && !timeout.isZero()) {
+      seconds = (timeout.toMillis() + 999) / 1000;
+    }
+    return solve(seconds, model);
+  }
+
+  /**
+   * 直前のsolveで充足不能となったとき, 仮定したリテラルliteralが充足不能の原因に含まれるかを返す.
+   * IPASIRのipasir_failedに相当する.
+   * 原因を特定できないソルバは, 全ての仮定が原因に含まれるものとしてtrueを返す.
+   */
+  default boolean failed(int literal) {
+    return true;
+  }
+
+  /**
+   * 実行中の探索を中断させる.
+   * 他のスレッドから呼び出してもよい. 中断されたsolveはINTERRUPTEDを返す.
+   * 中断に対応しないソルバは何もしない.
+   */
+  default void interrupt() {
+  }
+
   /**
    * このソルバの資源を開放する.
    */
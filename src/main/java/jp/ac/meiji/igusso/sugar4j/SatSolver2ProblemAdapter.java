@@ -1,5 +1,6 @@
 package jp.ac.meiji.igusso.sugar4j;
 
+import java.util.Arrays;
 import jp.kobe_u.sugar.encoder.Problem;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -7,7 +8,17 @@ import lombok.ToString;
 @ToString
 @EqualsAndHashCode
 final class SatSolver2ProblemAdapter extends Problem {
+  private static final int BUFFER_SIZE = 1 << 20;
+
   private SatSolver solver;
+  private int selector = 0;
+  private int[] record = null;
+  private int recordSize = 0;
+  private boolean measuring = false;
+  private int[] buffer = null;
+  private int bufferSize = 0;
+  private long transferNanos = 0;
+  private long transferBytes = 0;
 
   SatSolver2ProblemAdapter(SatSolver solver) {
     this.solver = solver;
@@ -30,8 +41,120 @@ final class SatSolver2ProblemAdapter extends Problem {
   public void done() {
   }
 
+  /*
+   * selectorが0でないとき, 以降に追加される節に~selectorを加える.
+   * selectorを仮定している間だけ節が有効になり, ~selectorを単位節として追加すると節は無効になる.
+   */
+  void setSelector(int selector) {
+    this.selector = selector;
+  }
+
+  /*
+   * 以降にSATソルバへ追加される節を記録する.
+   * 記録は節のリテラルを0で区切って並べたint配列として保持する.
+   */
+  void startRecording() {
+    if (record == null) {
+      record = new int[1024];
+    }
+  }
+
+  /*
+   * これまでに記録した節の列の複製を返す.
+   */
+  int[] getRecord() {
+    if (record == null) {
+      throw new IllegalStateException("clauses are not recorded");
+    }
+    return Arrays.copyOf(record, recordSize);
+  }
+
+  /*
+   * measuringがtrueのとき, 計測値を0に戻し, 以降の節をバッファに溜めてまとめてSATソルバへ渡す.
+   * 受け渡しの時間と確保量は, まとめて渡すごとに計測する.
+   * falseのときは溜めた節を渡して計測を終える.
+   */
+  void setMeasuring(boolean measuring) {
+    if (measuring) {
+      transferNanos = 0;
+      transferBytes = 0;
+      if (buffer == null) {
+        buffer = new int[BUFFER_SIZE];
+      }
+    } else {
+      flush();
+    }
+    this.measuring = measuring;
+  }
+
+  long getTransferNanos() {
+    return transferNanos;
+  }
+
+  long getTransferBytes() {
+    return transferBytes;
+  }
+
+  /*
+   * selectorによらず, 節をそのままSATソルバに追加する.
+   */
+  void addDirectClause(int... clause) {
+    record(clause);
+    transfer(clause);
+  }
+
+  private void transfer(int[] clause) {
+    if (!measuring) {
+      solver.add(clause);
+      return;
+    }
+    if (bufferSize + clause.length + 1 > buffer.length) {
+      flush();
+      if (clause.length + 1 > buffer.length) {
+        buffer = new int[clause.length + 1];
+      }
+    }
+    System.arraycopy(clause, 0, buffer, bufferSize, clause.length);
+    bufferSize += clause.length;
+    buffer[bufferSize++] = 0;
+  }
+
+  private void flush() {
+    if (bufferSize == 0) {
+      return;
+    }
+    long nanos = System.nanoTime();
+    long bytes = PhaseClock.allocatedBytes();
+    solver.addClauses(buffer, 0, bufferSize);
+    transferNanos += System.nanoTime() - nanos;
+    if (bytes >= 0) {
+      transferBytes += PhaseClock.allocatedBytes() - bytes;
+    }
+    bufferSize = 0;
+  }
+
+  private void record(int[] clause) {
+    if (record == null) {
+      return;
+    }
+    if (recordSize + clause.length + 1 > record.length) {
+      record = Arrays.copyOf(record, Math.max(record.length * 2, recordSize + clause.length + 1));
+    }
+    System.arraycopy(clause, 0, record, recordSize, clause.length);
+    recordSize += clause.length;
+    record[recordSize++] = 0;
+  }
+
   @Override
   public void addNormalizedClause(int[] clause) {
-    solver.add(clause);
+    if (selector == 0) {
+      record(clause);
+      transfer(clause);
+      return;
+    }
+    int[] guarded = Arrays.copyOf(clause, clause.length + 1);
+    guarded[clause.length] = -selector;
+    record(guarded);
+    transfer(guarded);
   }
 }
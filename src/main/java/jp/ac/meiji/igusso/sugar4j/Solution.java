@@ -1,5 +1,6 @@
 package jp.ac.meiji.igusso.sugar4j;
 
+import java.time.Duration;
 import java.util.Map;
 import jp.kobe_u.sugar.expression.Expression;
 
@@ -26,4 +27,24 @@ public interface Solution {
    * 充足可能のとき, 論理変数に対する値割り当てを表すマップを返す.
    */
   Map<Expression, Boolean> getBoolMap();
+
+  /**
+   * 充足可能のとき, 整数変数intVariableに割り当てられた値を返す.
+   * getIntMap().get(intVariable)と同じ値を返すが, マップを経由せず, 値の箱詰めも行わない.
+   * 充足可能でないときはIllegalStateExceptionを, 未知の変数に対してはIllegalArgumentExceptionを送出する.
+   */
+  int getInt(Expression intVariable);
+
+  /**
+   * 充足可能のとき, 論理変数boolVariableに割り当てられた値を返す.
+   * getBoolMap().get(boolVariable)と同じ値を返すが, マップを経由しない.
+   * 充足可能でないときはIllegalStateExceptionを, 未知の変数に対してはIllegalArgumentExceptionを送出する.
+   */
+  boolean getBool(Expression boolVariable);
+
+  /**
+   * この解を求めるのにSATソルバが要した時間を返す.
+   * SAT符号化に要した時間は含まない.
+   */
+  Duration getElapsedTime();
 }
@@ -0,0 +1,304 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static jp.kobe_u.sugar.expression.Expression.create;
+
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import jp.kobe_u.sugar.csp.BooleanVariable;
+import jp.kobe_u.sugar.csp.CSP;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.expression.Expression;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * SATソルバの充足割り当てを保持し, 変数の値を必要になった時点で復号するSolutionの実装.
+ * 整数変数の値は順序符号化のリテラルの単調性を利用して二分探索で求める.
+ * 変数の値は参照されるまで復号されず, getIntMap, getBoolMapが返すマップも復号を遅延するビューである.
+ */
+@ToString(of = {"sat", "timeout"})
+final class SolutionImpl implements Solution {
+  private static final SolutionImpl UNSAT =
+      new SolutionImpl(false, false, null, null, 0, Duration.ZERO);
+  private static final SolutionImpl TIMEOUT =
+      new SolutionImpl(false, true, null, null, 0, Duration.ZERO);
+
+  @Getter
+  private final boolean sat;
+  @Getter
+  private final boolean timeout;
+  @Getter
+  private final Duration elapsedTime;
+
+  private final CSP csp;
+  private final SatModel model;
+  private final int integerVariablesCount;
+  private final int booleanVariablesCount;
+  private final int satVariablesCount;
+
+  private Map<Expression, Integer> intMap;
+  private Map<Expression, Boolean> boolMap;
+
+  private SolutionImpl(boolean sat, boolean timeout, CSP csp, SatModel model,
+                       int satVariablesCount, Duration elapsedTime) {
+    this.sat = sat;
+    this.timeout = timeout;
+    this.elapsedTime = elapsedTime;
+    this.csp = csp;
+    this.model = model;
+    this.integerVariablesCount = csp == null ? 0 : csp.getIntegerVariables().size();
+    this.booleanVariablesCount = csp == null ? 0 : csp.getBooleanVariables().size();
+    this.satVariablesCount = satVariablesCount;
+  }
+
+  /**
+   * 充足不能を表す解を返す.
+   */
+  static SolutionImpl unsat() {
+    return UNSAT;
+  }
+
+  /**
+   * タイムアウトを表す解を返す.
+   */
+  static SolutionImpl timeout() {
+    return TIMEOUT;
+  }
+
+  /**
+   * 求解に要した時間elapsedTimeを伴って充足不能を表す解を返す.
+   */
+  static SolutionImpl unsat(Duration elapsedTime) {
+    return new SolutionImpl(false, false, null, null, 0, elapsedTime);
+  }
+
+  /**
+   * 求解に要した時間elapsedTimeを伴ってタイムアウトを表す解を返す.
+   */
+  static SolutionImpl timeout(Duration elapsedTime) {
+    return new SolutionImpl(false, true, null, null, 0, elapsedTime);
+  }
+
+  /**
+   * 充足可能な解を返す.
+   * modelの所有権は返される解に移る. 呼び出し側はmodelを再利用してはならない.
+   * satVariablesCountは求解時点でのSAT変数の個数であり, これ以降に符号化された変数は解に含まれない.
+   */
+  static SolutionImpl sat(CSP csp, SatModel model, int satVariablesCount, Duration elapsedTime) {
+    return new SolutionImpl(true, false, csp, model, satVariablesCount, elapsedTime);
+  }
+
+  @Override
+  public int getInt(Expression intVariable) {
+    if (!sat) {
+      throw new IllegalStateException("solution is not sat");
+    }
+    IntegerVariable variable = findIntegerVariable(intVariable);
+    if (variable == null) {
+      throw new IllegalArgumentException("unknown integer variable : " + intVariable);
+    }
+    return decode(variable);
+  }
+
+  @Override
+  public boolean getBool(Expression boolVariable) {
+    if (!sat) {
+      throw new IllegalStateException("solution is not sat");
+    }
+    BooleanVariable variable = findBooleanVariable(boolVariable);
+    if (variable == null) {
+      throw new IllegalArgumentException("unknown bool variable : " + boolVariable);
+    }
+    return decode(variable);
+  }
+
+  @Override
+  public Map<Expression, Integer> getIntMap() {
+    if (!sat) {
+      return Collections.emptyMap();
+    }
+    if (intMap == null) {
+      intMap = new IntMap();
+    }
+    return intMap;
+  }
+
+  @Override
+  public Map<Expression, Boolean> getBoolMap() {
+    if (!sat) {
+      return Collections.emptyMap();
+    }
+    if (boolMap == null) {
+      boolMap = new BoolMap();
+    }
+    return boolMap;
+  }
+
+  private IntegerVariable findIntegerVariable(Object key) {
+    if (!(key instanceof Expression)) {
+      return null;
+    }
+    IntegerVariable variable = csp.getIntegerVariable(((Expression) key).stringValue());
+    if (variable == null || !isEncoded(variable.getCode())) {
+      return null;
+    }
+    return variable;
+  }
+
+  private BooleanVariable findBooleanVariable(Object key) {
+    if (!(key instanceof Expression)) {
+      return null;
+    }
+    BooleanVariable variable = csp.getBooleanVariable(((Expression) key).stringValue());
+    if (variable == null || !isEncoded(variable.getCode())) {
+      return null;
+    }
+    return variable;
+  }
+
+  /*
+   * 定義域の大きさが1の整数変数はSAT変数を持たないため, codeはsatVariablesCount + 1になりうる.
+   */
+  private boolean isEncoded(int code) {
+    return 0 < code && code <= satVariablesCount + 1;
+  }
+
+  /*
+   * 順序符号化ではリテラル(code + i)は x <= (定義域のi番目の値) を表す.
+   * これらはiについて単調 (偽...偽真...真) なので, 最初に真となる位置を二分探索で求める.
+   */
+  private int decode(IntegerVariable variable) {
+    if (variable.isCompact()) {
+      // offset + sum(base^j * digits[j])
+      IntegerVariable[] digits = variable.getDigits();
+      long value = 0;
+      for (int j = digits.length - 1; j >= 0; j--) {
+        value = value * variable.getBase() + decode(digits[j]);
+      }
+      return (int) (variable.getOffset() + value);
+    }
+    IntegerDomain domain = variable.getDomain();
+    int code = variable.getCode();
+    if (code > model.size()) {
+      return domain.getLowerBound();
+    }
+
+    int lo = 0;
+    int hi = domain.size() - 1;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (model.get(code + mid)) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return domain.valueAt(lo);
+  }
+
+  private boolean decode(BooleanVariable variable) {
+    if (variable.getCode() > model.size()) {
+      return true;
+    }
+    return model.get(variable.getCode());
+  }
+
+  private final class IntMap extends AbstractMap<Expression, Integer> {
+    @Override
+    public Integer get(Object key) {
+      IntegerVariable variable = findIntegerVariable(key);
+      return variable == null ? null : decode(variable);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return findIntegerVariable(key) != null;
+    }
+
+    @Override
+    public int size() {
+      return integerVariablesCount;
+    }
+
+    @Override
+    public Set<Entry<Expression, Integer>> entrySet() {
+      return new AbstractSet<Entry<Expression, Integer>>() {
+        @Override
+        public int size() {
+          return integerVariablesCount;
+        }
+
+        @Override
+        public Iterator<Entry<Expression, Integer>> iterator() {
+          final Iterator<IntegerVariable> it =
+              csp.getIntegerVariables().subList(0, integerVariablesCount).iterator();
+          return new Iterator<Entry<Expression, Integer>>() {
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Entry<Expression, Integer> next() {
+              IntegerVariable variable = it.next();
+              return new SimpleImmutableEntry<>(create(variable.getName()), decode(variable));
+            }
+          };
+        }
+      };
+    }
+  }
+
+  private final class BoolMap extends AbstractMap<Expression, Boolean> {
+    @Override
+    public Boolean get(Object key) {
+      BooleanVariable variable = findBooleanVariable(key);
+      return variable == null ? null : decode(variable);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return findBooleanVariable(key) != null;
+    }
+
+    @Override
+    public int size() {
+      return booleanVariablesCount;
+    }
+
+    @Override
+    public Set<Entry<Expression, Boolean>> entrySet() {
+      return new AbstractSet<Entry<Expression, Boolean>>() {
+        @Override
+        public int size() {
+          return booleanVariablesCount;
+        }
+
+        @Override
+        public Iterator<Entry<Expression, Boolean>> iterator() {
+          final Iterator<BooleanVariable> it =
+              csp.getBooleanVariables().subList(0, booleanVariablesCount).iterator();
+          return new Iterator<Entry<Expression, Boolean>>() {
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Entry<Expression, Boolean> next() {
+              BooleanVariable variable = it.next();
+              return new SimpleImmutableEntry<>(create(variable.getName()), decode(variable));
+            }
+          };
+        }
+      };
+    }
+  }
+}
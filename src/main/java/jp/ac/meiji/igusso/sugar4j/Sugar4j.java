@@ -1,6 +1,13 @@
 package jp.ac.meiji.igusso.sugar4j;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.encoder.EncodingProfile;
 import jp.kobe_u.sugar.expression.Expression;
 
 /**
@@ -11,7 +18,21 @@ public interface Sugar4j extends AutoCloseable {
    * バックエンドに使用するSATソルバを与えて, Sugar4jオブジェクトを生成する.
    */
   static Sugar4j newInstance(SatSolver solver) {
-    return new Sugar4jImpl(solver);
+    return new Sugar4jImpl(solver, new SugarConfig());
+  }
+
+  /**
+   * バックエンドに使用するSATソルバと変換の設定configを与えて, Sugar4jオブジェクトを生成する.
+   * 設定はオブジェクトごとに独立しており, 別々のスレッドで複数のオブジェクトを同時に扱える.
+   * configは生成されたオブジェクトが所有する. 逐次的な求解のためincrementalPropagationはfalseに設定される.
+   *
+   * <p>configのreleaseEncodedをtrueにすると, SATソルバに渡し終えた制約と補助変数をヒープから解放する.
+   * 保持するのは仮定と解の復号に必要な変数の符号と定義域だけになり,
+   * メモリ使用量は制約の個数ではなく変数の個数に比例する.
+   * ただし, スコープ内で追加した制約はpopするまで解放されない.
+   */
+  static Sugar4j newInstance(SatSolver solver, SugarConfig config) {
+    return new Sugar4jImpl(solver, config);
   }
 
   /**
@@ -36,6 +57,18 @@ public interface Sugar4j extends AutoCloseable {
    */
   Expression addIntVariable(String name, Collection<Integer> domain);
 
+  /**
+   * 整数変数intVariableの符号化をencodingにする. encodingはORDER, COMPACT_ORDER, LOGのいずれかでなければならない.
+   * COMPACT_ORDERの変数は, 設定のcompactOrderBaseを基数とする各桁を順序符号化した整数変数で表される.
+   * 定義域の大きさをdとして, 必要なSAT変数は d - 1 個から約 (基数 - 1) * log(d) 個に減り,
+   * 線形制約は桁ごとの比較と繰り上がりに分解されるので, 節の個数も定義域の大きさの積に比例しなくなる.
+   * LOGの変数は基数2のCOMPACT_ORDERとして, 約 log2(d) 個のビットで表される (対数符号化).
+   * 値の範囲の仮定 (addAssumption) は, ビットの比較を表す新しいブール変数を介して行われる.
+   * 符号化済み (updateの後) の変数の符号化は変更できず, IllegalStateExceptionを送出する.
+   * 線形でない制約 (乗算など) にCOMPACT_ORDERやLOGの変数を用いると, 符号化の際にSugar4jExceptionが送出される.
+   */
+  void setEncoding(Expression intVariable, Encoding encoding);
+
   /**
    * 制約 (変数宣言などでもよい) を追加する.
    */
@@ -66,12 +99,62 @@ public interface Sugar4j extends AutoCloseable {
   /**
    * 整数変数への割り当てを仮定する.
    * intVariableへ割り当てられる値は, valueとのopによる比較が成立するように仮定される.
-   * opはExpression.EQ, Expression.LE, Expression.GE, Expression.LT, Expression.GE
+   * opはExpression.EQ, Expression.LE, Expression.GE, Expression.LT, Expression.GT
    * のいずれかでなければならない.
+   * 仮定は順序符号化のリテラル (EQでは2つ, それ以外では1つ) で表される.
+   * ただし, COMPACT_ORDERの変数についての仮定はaddAssumption(Expression)と同様に1つの論理変数で表される.
    * 追加した仮定は一度solveメソッドを呼び出すとリセットされることに注意せよ.
    */
   void addAssumption(Expression intVariable, Expression op, int value);
 
+  /**
+   * 制約constraintが成立することを仮定する.
+   * constraintが高々1つの整数変数の線形式どうしの比較 (例えば (le (add (mul 2 x) 1) 7)),
+   * 論理変数, 論理変数の否定のいずれかであれば, 仮定は順序符号化の高々2つのリテラルで表される.
+   * それ以外の制約 (例えば (le (add x y) 10) や (alldifferent x y z)) は,
+   * 新しい論理変数pを用いた (imp p constraint) として初めて仮定されたときに一度だけ符号化され,
+   * pを仮定することで表される. pは引数の順序などを正規化した制約式ごとにキャッシュされるため,
+   * 同じ制約を繰り返し仮定しても再符号化は行われない.
+   * 追加した仮定は一度solveメソッドを呼び出すとリセットされることに注意せよ.
+   */
+  void addAssumption(Expression constraint);
+
+  /**
+   * 直前のsolveが充足不能であったとき, 追加した仮定のうち充足不能の原因となったものを返す.
+   * 仮定を取り除いても充足不能である場合など, 原因となる仮定がないときは空のリストを返す.
+   * 直前のsolveが充足可能またはタイムアウトであったときも空のリストを返す.
+   * 返されるリストは極小であるとは限らない.
+   */
+  List<Assumption> getFailedAssumptions();
+
+  /**
+   * getFailedAssumptionsが返す仮定の集合を, 同じSATソルバを用いて極小化して返す.
+   * 各仮定について, それを除いても充足不能であれば取り除くことを繰り返す.
+   * 1回のsolveごとにタイムアウトtimeout (秒) を設け, タイムアウトしたときはその時点の結果を返す.
+   * 極小化の結果は, 以降のgetFailedAssumptionsの戻り値にも反映される.
+   */
+  List<Assumption> minimizeFailedAssumptions(long timeout);
+
+  /**
+   * 新しいスコープを開始する.
+   * 以降に追加した制約 (変数宣言を含む) は, 対応するpopの呼び出しで取り除かれる.
+   * スコープ内の制約は選択リテラルで保護されて符号化されるため,
+   * 取り除いた後もSATソルバの学習節と符号化済みの制約はそのまま再利用される.
+   */
+  void push();
+
+  /**
+   * 最後に開始したスコープを終了し, その中で追加した制約と変数を取り除く.
+   * 未使用の仮定も破棄される.
+   * スコープが存在しないときはIllegalStateExceptionを送出する.
+   */
+  void pop();
+
+  /**
+   * 現在のスコープの深さ (pushの回数からpopの回数を引いた値) を返す.
+   */
+  int getScopeDepth();
+
   /**
    * 遅延されているSAT符号化を実行する.
    */
@@ -89,6 +172,60 @@ public interface Sugar4j extends AutoCloseable {
    */
   Solution solve(long timeout);
 
+  /**
+   * このオブジェクトが表す制約充足問題をタイムアウト付きで解く.
+   * タイムアウトはミリ秒の精度で扱われる.
+   * nullまたは0以下の値のとき, タイムアウトなしを表す.
+   */
+  Solution solve(Duration timeout);
+
+  /**
+   * このオブジェクトが表す制約充足問題を非同期に解く.
+   * solveAsync(null)と同じである.
+   */
+  CompletableFuture<Solution> solveAsync();
+
+  /**
+   * このオブジェクトが表す制約充足問題を, このオブジェクトが持つ専用のスレッドで非同期に解く.
+   * 詳細はsolveAsync(Duration, Executor)を参照せよ.
+   */
+  CompletableFuture<Solution> solveAsync(Duration timeout);
+
+  /**
+   * このオブジェクトが表す制約充足問題を, executor上で非同期に解く.
+   * SAT符号化と仮定の受け渡しは呼び出したスレッドで済ませ, SATソルバによる探索のみをexecutorで行う.
+   * 返されたFutureをcancelするなどして完了させると, SATソルバの探索は速やかに中断される.
+   * 非同期の求解が終わるまで, このオブジェクトの他のメソッドはその終了を待ってから処理を行う.
+   */
+  CompletableFuture<Solution> solveAsync(Duration timeout, Executor executor);
+
+  /**
+   * 目的関数objectiveの値を最小化する.
+   * objectiveは整数変数または整数の式である.
+   * 探索戦略にはOptimizationStrategy.BINARYを用い, タイムアウトは設けない.
+   * 呼び出し前に追加した仮定は全ての反復で仮定され, 呼び出し後にリセットされる.
+   */
+  OptimizationResult minimize(Expression objective);
+
+  /**
+   * 目的関数objectiveの値を, 探索戦略strategyを用いてタイムアウト付きで最小化する.
+   * 時間の単位は秒であり, 0以下の値のときタイムアウトなしを表す.
+   * タイムアウトしたときは, それまでに得られた最良の解を返す.
+   */
+  OptimizationResult minimize(Expression objective, OptimizationStrategy strategy, long timeout);
+
+  /**
+   * 目的関数objectiveの値を最大化する.
+   * 詳細はminimize(Expression)を参照せよ.
+   */
+  OptimizationResult maximize(Expression objective);
+
+  /**
+   * 目的関数objectiveの値を, 探索戦略strategyを用いてタイムアウト付きで最大化する.
+   * 詳細はminimize(Expression, OptimizationStrategy, long)を参照せよ.
+   */
+  OptimizationResult maximize(Expression objective, OptimizationStrategy strategy, long timeout);
+
   /**
    * SAT符号化により生成されたSAT節の個数を返す.
    */
@@ -98,4 +235,17 @@ public interface Sugar4j extends AutoCloseable {
    * SAT符号化により生成されたSAT変数の個数を返す.
    */
   int getSatVariablesCount();
+
+  /**
+   * 処理の段階ごとの計測値を受け取るリスナを登録する.
+   * nullを与えると計測を止める. 計測しない間は, 計測のための処理は行われない.
+   */
+  void setMetricsListener(MetricsListener listener);
+
+  /**
+   * これまでに符号化したSAT変数とSAT節の数を, それを生成した制約 (addExpressionに与えた式) ごとに返す.
+   * 補助変数や, 制約の分解で生じた節の分も元の制約に含めて数える.
+   * 設定のprofileEncodingがtrueのときだけ利用でき, falseのときはIllegalStateExceptionを送出する.
+   */
+  EncodingProfile getEncodingProfile();
 }
@@ -4,6 +4,7 @@ import static jp.kobe_u.sugar.expression.Expression.create;
 
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -13,41 +14,75 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BooleanSupplier;
+import jp.kobe_u.sugar.SugarConfig;
 import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.converter.CompactOrderConverter;
 import jp.kobe_u.sugar.converter.Converter;
 import jp.kobe_u.sugar.converter.Simplifier;
 import jp.kobe_u.sugar.csp.BooleanVariable;
 import jp.kobe_u.sugar.csp.CSP;
 import jp.kobe_u.sugar.csp.IntegerDomain;
 import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.csp.LinearSum;
 import jp.kobe_u.sugar.encoder.Encoder;
+import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.encoder.EncodingProfile;
+import jp.kobe_u.sugar.encoder.Problem;
 import jp.kobe_u.sugar.expression.Expression;
+import jp.kobe_u.sugar.expression.Sequence;
 import lombok.EqualsAndHashCode;
-import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
 @ToString
 @EqualsAndHashCode
 final class Sugar4jImpl implements Sugar4j {
+  private static final String REIFICATION_NAME_PREFIX = "$R";
+
   private final SatSolver solver;
+  private final List<Assumption> assumptions = new ArrayList<>();
+  private List<Assumption> failedAssumptions = new ArrayList<>();
 
+  private final SugarConfig config;
   private final Converter converter;
   private final CSP csp;
+  private final CompactOrderConverter compactOrderConverter;
+  private final Simplifier simplifier;
   private final Encoder encoder;
+  private final SatSolver2ProblemAdapter problem;
+  private final List<Scope> scopes = new ArrayList<>();
+  private int falseLiteral = 0;
+  private final Map<Expression, Reification> reifications = new HashMap<>();
+  private int reificationsCount = 0;
+  private final List<Expression> definitions = new ArrayList<>();
+  private ExecutorService executor;
+  private CompletableFuture<Solution> solving;
+  private CompletableFuture<Void> solvingFinished;
+  private volatile MetricsListener metricsListener;
+
+  Sugar4jImpl(@NonNull SatSolver solver, @NonNull SugarConfig config) {
+    this.solver = solver;
 
-  Sugar4jImpl(@NonNull SatSolver solver) {
+    this.config = config;
     /* こうすると何故か動く */
-    Converter.INCREMENTAL_PROPAGATION = false;
-
-    this.solver = solver;
+    config.incrementalPropagation = false;
 
     this.csp = new CSP();
     csp.commit();
 
-    this.converter = new Converter(csp);
-    this.encoder = new Encoder(csp);
-    this.encoder.problem = new SatSolver2ProblemAdapter(solver);
+    this.converter = new Converter(csp, config);
+    this.compactOrderConverter = new CompactOrderConverter(csp, config);
+    this.simplifier = new Simplifier(csp, config);
+    this.encoder = new Encoder(csp, config);
+    this.problem = new SatSolver2ProblemAdapter(solver);
+    this.encoder.problem = problem;
   }
 
   @Override
@@ -85,13 +120,47 @@ final class Sugar4jImpl implements Sugar4j {
     return create(name);
   }
 
+  @Override
+  public void setEncoding(@NonNull Expression intVariable, @NonNull Encoding encoding) {
+    awaitSolving();
+    if (encoding != Encoding.ORDER && encoding != Encoding.COMPACT_ORDER
+        && encoding != Encoding.LOG) {
+      throw new IllegalArgumentException("unsupported encoding : " + encoding);
+    }
+    IntegerVariable variable = csp.getIntegerVariable(intVariable.stringValue());
+    if (variable == null) {
+      throw new IllegalArgumentException("unknown integer variable : " + intVariable);
+    }
+    if (variable.isFrozen()) {
+      throw new IllegalStateException("encoded variable : " + intVariable);
+    }
+    variable.setEncoding(encoding);
+  }
+
   @Override
   public void addExpression(Expression expression) {
+    awaitSolving();
+    PhaseClock clock = new PhaseClock(metricsListener);
     try {
       converter.convert(expression);
     } catch (SugarException ex) {
       throw new IllegalArgumentException(ex.getMessage() + " : Caused By: " + expression, ex);
     }
+    clock.end(MetricsListener.Phase.CONVERSION);
+    if (scopes.isEmpty() && isReplayedDefinition(expression)) {
+      definitions.add(expression);
+    }
+  }
+
+  /*
+   * CompiledModelから複製する際に, 再び変換すべき定義であるかを返す.
+   * 変数の定義は複製した変数を直接登録するので含まない.
+   */
+  private static boolean isReplayedDefinition(Expression expression) {
+    return expression.isSequence(Expression.DOMAIN_DEFINITION)
+        || expression.isSequence(Expression.PREDICATE_DEFINITION)
+        || expression.isSequence(Expression.RELATION_DEFINITION)
+        || expression.isSequence(Expression.OBJECTIVE_DEFINITION);
   }
 
   @Override
@@ -118,87 +187,368 @@ final class Sugar4jImpl implements Sugar4j {
     update();
 
     BooleanVariable variable = csp.getBooleanVariable(boolVariable.stringValue());
-    solver.assume(isPositive ? variable.getCode() : -variable.getCode());
+    if (variable == null) {
+      throw new IllegalArgumentException("unknown bool variable : " + boolVariable);
+    }
+    int literal = isPositive ? variable.getCode() : -variable.getCode();
+    assumptions.add(Assumption.ofBool(boolVariable, isPositive, new int[] {literal}));
   }
 
   @Override
   public void addAssumption(Expression intVariable, Expression op, int value) {
-    if (Expression.LT.equals(op)) {
-      addAssumption(intVariable, Expression.LE, value - 1);
-      return;
+    if (!isComparison(op)) {
+      throw new IllegalStateException("op must be one of EQ, LE, GE, LT, GT");
     }
-    if (Expression.GT.equals(op)) {
-      addAssumption(intVariable, Expression.GE, value + 1);
-      return;
+
+    update();
+
+    IntegerVariable variable = csp.getIntegerVariable(intVariable.stringValue());
+    if (variable == null) {
+      throw new IllegalArgumentException("unknown integer variable : " + intVariable);
+    }
+    List<Integer> literals = new ArrayList<>();
+    if (variable.isCompact()) {
+      // 各桁で表された変数の比較は1つのリテラルでは表せない
+      literals.add(reify(create(op, intVariable, create(value))));
+    } else {
+      LinearSum sum = new LinearSum(variable);
+      sum.setB(-value);
+      encodeComparison(sum, op, literals);
+    }
+    assumptions.add(Assumption.ofInt(intVariable, op, value, toArray(literals)));
+  }
+
+  @Override
+  public void addAssumption(@NonNull Expression constraint) {
+    update();
+
+    List<Integer> literals = new ArrayList<>();
+    if (constraint.isString() && csp.getBooleanVariable(constraint.stringValue()) != null) {
+      literals.add(csp.getBooleanVariable(constraint.stringValue()).getCode());
+    } else if (constraint.isSequence(Expression.NOT) && ((Sequence) constraint).length() == 2
+        && ((Sequence) constraint).get(1).isString()
+        && csp.getBooleanVariable(((Sequence) constraint).get(1).stringValue()) != null) {
+      literals.add(
+          -csp.getBooleanVariable(((Sequence) constraint).get(1).stringValue()).getCode());
+    } else {
+      LinearSum sum = null;
+      Expression op = null;
+      if (constraint.isSequence(2)) {
+        Sequence seq = (Sequence) constraint;
+        op = seq.get(0);
+        LinearSum lhs = toLinearSum(seq.get(1));
+        LinearSum rhs = toLinearSum(seq.get(2));
+        if (lhs != null && rhs != null) {
+          lhs.subtract(rhs);
+          sum = lhs;
+        }
+      }
+      if (sum != null && isComparison(op) && sum.size() <= 1 && !isCompact(sum)) {
+        encodeComparison(sum, op, literals);
+      } else {
+        literals.add(reify(constraint));
+      }
+    }
+    assumptions.add(Assumption.ofExpression(constraint, toArray(literals)));
+  }
+
+  private static boolean isCompact(LinearSum sum) {
+    for (IntegerVariable variable : sum.getVariables()) {
+      if (variable.isCompact()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * 制約constraintを, 新しい論理変数pについての (imp p constraint) として一度だけ変換し, pを返す.
+   * pは正規化した制約式をキーとしてキャッシュされ, 同じ制約の仮定には同じpを用いる.
+   */
+  int reify(Expression constraint) {
+    Expression key = canonicalize(constraint);
+    Reification reification = reifications.get(key);
+    if (reification == null) {
+      Expression name = create(REIFICATION_NAME_PREFIX + (++reificationsCount));
+      try {
+        converter.convert(create(Expression.BOOL_DEFINITION, name));
+        converter.convert(create(Expression.IMP, name, constraint));
+      } catch (SugarException ex) {
+        throw new IllegalArgumentException(ex.getMessage() + " : Caused By: " + constraint, ex);
+      }
+      update();
+
+      BooleanVariable variable = csp.getBooleanVariable(name.stringValue());
+
+      reification = new Reification(variable, scopes.size());
+      reifications.put(key, reification);
+    }
+    return reification.variable.getCode();
+  }
+
+  /*
+   * 可換な演算の引数を整列し, ge, gtをle, ltに書き換えた式を返す.
+   */
+  private static Expression canonicalize(Expression x) {
+    if (!x.isSequence()) {
+      return x;
+    }
+    Sequence seq = (Sequence) x;
+    List<Expression> xs = new ArrayList<>();
+    for (int i = 0; i < seq.length(); i++) {
+      xs.add(canonicalize(seq.get(i)));
+    }
+
+    if (seq.isSequence(2) && seq.isSequence(Expression.GE)) {
+      return create(Expression.LE, xs.get(2), xs.get(1));
+    }
+    if (seq.isSequence(2) && seq.isSequence(Expression.GT)) {
+      return create(Expression.LT, xs.get(2), xs.get(1));
+    }
+    if (seq.isSequence(Expression.ADD) || seq.isSequence(Expression.MUL)
+        || seq.isSequence(Expression.AND) || seq.isSequence(Expression.OR)
+        || seq.isSequence(Expression.IFF) || seq.isSequence(Expression.XOR)
+        || seq.isSequence(Expression.EQ) || seq.isSequence(Expression.NE)) {
+      Collections.sort(xs.subList(1, xs.size()));
+    }
+    return create(xs);
+  }
+
+  private static boolean isComparison(Expression op) {
+    return Expression.EQ.equals(op) || Expression.LE.equals(op) || Expression.GE.equals(op)
+        || Expression.LT.equals(op) || Expression.GT.equals(op);
+  }
+
+  /*
+   * xを整数の線形式に変換する. 変数の個数によらず, 線形でなければnullを返す.
+   * 変換によって補助変数を生成しないよう, 定数倍を除く乗算や除算などは扱わない.
+   */
+  private LinearSum toLinearSum(Expression x) {
+    if (x.isInteger()) {
+      return new LinearSum(x.integerValue());
+    }
+    if (x.isString()) {
+      IntegerVariable variable = csp.getIntegerVariable(x.stringValue());
+      return variable == null ? null : new LinearSum(variable);
     }
+    if (!x.isSequence() || ((Sequence) x).length() < 2) {
+      return null;
+    }
+
+    Sequence seq = (Sequence) x;
+    LinearSum sum = toLinearSum(seq.get(1));
+    if (sum == null) {
+      return null;
+    }
+    if (seq.isSequence(Expression.NEG) && seq.length() == 2
+        || seq.isSequence(Expression.SUB) && seq.length() == 2) {
+      sum.multiply(-1);
+      return sum;
+    }
+    for (int i = 2; i < seq.length(); i++) {
+      LinearSum term = toLinearSum(seq.get(i));
+      if (term == null) {
+        return null;
+      }
+      if (seq.isSequence(Expression.ADD)) {
+        sum.add(term);
+      } else if (seq.isSequence(Expression.SUB)) {
+        sum.subtract(term);
+      } else if (seq.isSequence(Expression.MUL) && seq.length() == 3 && term.size() == 0) {
+        sum.multiply(term.getB());
+      } else if (seq.isSequence(Expression.MUL) && seq.length() == 3 && sum.size() == 0) {
+        term.multiply(sum.getB());
+        sum = term;
+      } else {
+        return null;
+      }
+    }
+    return sum;
+  }
+
+  /*
+   * 高々1変数の線形式sumについて, (op sum 0) を表すリテラルをliteralsに追加する.
+   */
+  private void encodeComparison(LinearSum sum, Expression op, List<Integer> literals) {
     if (Expression.EQ.equals(op)) {
-      addAssumption(intVariable, Expression.LE, value);
-      addAssumption(intVariable, Expression.GE, value);
+      encodeComparison(sum, Expression.LE, literals);
+      encodeComparison(sum, Expression.GE, literals);
       return;
     }
 
-    if (!Expression.LE.equals(op) && !Expression.GE.equals(op)) {
-      throw new IllegalStateException("op must be one of EQ, LE, GE, LT, GT");
+    // a * x + b op 0 を a * x <= c の形にする
+    int a = sum.size() == 0 ? 0 : sum.getCoef().values().iterator().next();
+    int b = sum.getB();
+    int c;
+    if (Expression.LE.equals(op)) {
+      c = -b;
+    } else if (Expression.LT.equals(op)) {
+      c = -b - 1;
+    } else if (Expression.GE.equals(op)) {
+      a = -a;
+      c = b;
+    } else if (Expression.GT.equals(op)) {
+      a = -a;
+      c = b - 1;
+    } else {
+      throw new IllegalArgumentException("op must be one of EQ, LE, GE, LT, GT");
     }
 
-    update();
+    int code;
+    if (a == 0) {
+      code = 0 <= c ? Problem.TRUE_CODE : Problem.FALSE_CODE;
+    } else if (a > 0) {
+      // x <= floor(c / a)
+      code = getCodeLE(sum.getCoef().firstKey(), Math.floorDiv(c, a));
+    } else {
+      // x >= ceil(c / a), すなわち ~(x <= ceil(c / a) - 1)
+      code = negateCode(getCodeLE(sum.getCoef().firstKey(), -Math.floorDiv(-c, a) - 1));
+    }
 
-    IntegerVariable variable = csp.getIntegerVariable(intVariable.stringValue());
+    if (code == Problem.FALSE_CODE) {
+      literals.add(getFalseLiteral());
+    } else if (code != Problem.TRUE_CODE) {
+      literals.add(code);
+    }
+  }
 
-    int baseCode = variable.getCode();
-    if (Expression.LE.equals(op)) {
-      if (value < variable.getDomain().getLowerBound()) {
-        // unsat
-        solver.assume(baseCode);
-        solver.assume(-baseCode);
-        return;
-      }
+  /*
+   * x <= value を表すリテラルを返す (OrderEncoder#getCodeLEと同じ).
+   * 定義域の大きさをdとして, sizeLEの計算量 (連続な定義域ではO(1)) で求まる.
+   */
+  private static int getCodeLE(IntegerVariable variable, int value) {
+    IntegerDomain domain = variable.getDomain();
+    if (value < domain.getLowerBound()) {
+      return Problem.FALSE_CODE;
+    } else if (value >= domain.getUpperBound()) {
+      return Problem.TRUE_CODE;
+    }
+    return variable.getCode() + domain.sizeLE(value) - 1;
+  }
 
+  private static int negateCode(int code) {
+    if (code == Problem.FALSE_CODE) {
+      return Problem.TRUE_CODE;
+    } else if (code == Problem.TRUE_CODE) {
+      return Problem.FALSE_CODE;
+    }
+    return -code;
+  }
+
+  /*
+   * 常に偽であるリテラルを返す. 充足不能な仮定を表すために用いる.
+   */
+  private int getFalseLiteral() {
+    if (falseLiteral == 0) {
       try {
-        Iterator<Integer> it = variable.getDomain().values();
-        for (int offset = 0; offset < variable.getDomain().size() - 1; offset++) {
-          if (it.next() >= value) {
-            solver.assume(baseCode + offset);
-          }
-        }
+        falseLiteral = problem.variablesCount + 1;
+        problem.addVariables(1);
       } catch (SugarException ex) {
-        ex.printStackTrace();
-        throw new IllegalStateException();
+        throw new Sugar4jException(ex);
       }
-    } else if (Expression.GE.equals(op)) {
-      if (value > variable.getDomain().getUpperBound()) {
-        // unsat
-        solver.assume(baseCode);
-        solver.assume(-baseCode);
-        return;
+      problem.addDirectClause(-falseLiteral);
+    }
+    return falseLiteral;
+  }
+
+  private static int[] toArray(List<Integer> literals) {
+    int[] res = new int[literals.size()];
+    for (int i = 0; i < res.length; i++) {
+      res[i] = literals.get(i);
+    }
+    return res;
+  }
+
+  private static List<Integer> toLiterals(List<Assumption> assumptions) {
+    List<Integer> literals = new ArrayList<>();
+    for (Assumption assumption : assumptions) {
+      for (int literal : assumption.getLiterals()) {
+        literals.add(literal);
       }
+    }
+    return literals;
+  }
 
-      try {
-        Iterator<Integer> it = variable.getDomain().values();
-        for (int offset = 0; offset < variable.getDomain().size() - 1; offset++) {
-          if (it.next() < value) {
-            solver.assume(-(baseCode + offset));
-          }
+  /*
+   * 直前のsolveが充足不能のとき, assumptionsのうち充足不能の原因となった仮定を返す.
+   */
+  private List<Assumption> collectFailedAssumptions(List<Assumption> assumptions) {
+    List<Assumption> res = new ArrayList<>();
+    for (Assumption assumption : assumptions) {
+      for (int literal : assumption.getLiterals()) {
+        if (solver.failed(literal)) {
+          res.add(assumption);
+          break;
         }
-      } catch (SugarException ex) {
-        ex.printStackTrace();
-        throw new IllegalStateException();
       }
-    } else {
-      throw new RuntimeException();
     }
+    return res;
+  }
+
+  @Override
+  public List<Assumption> getFailedAssumptions() {
+    awaitSolving();
+    return Collections.unmodifiableList(failedAssumptions);
+  }
+
+  @Override
+  public List<Assumption> minimizeFailedAssumptions(long timeout) {
+    update();
+
+    List<Assumption> core = failedAssumptions;
+    int index = 0;
+    while (index < core.size()) {
+      List<Assumption> candidate = new ArrayList<>(core);
+      candidate.remove(index);
+
+      Solution solution = solve(toLiterals(candidate), timeout);
+      if (solution.isTimeout()) {
+        break;
+      }
+      if (solution.isSat()) {
+        // core.get(index)は取り除けない
+        index++;
+        continue;
+      }
+      // 確定済みの先頭index個の仮定は, 新たな原因にも必ず含まれる
+      core = collectFailedAssumptions(candidate);
+    }
+
+    failedAssumptions = core;
+    return getFailedAssumptions();
   }
 
   @Override
   public void update() {
+    awaitSolving();
+    PhaseClock clock = new PhaseClock(metricsListener);
     try {
-      csp.propagate();
-      Simplifier simplifier = new Simplifier(csp);
-      simplifier.simplify();
+      // 符号化済みの変数の定義域は凍結されているので, 追加分だけを伝播, 簡単化すればよい.
+      // 定義域が縮小されるのは追加分の変数だけなので, スコープ内でもpopで元に戻せる
+      csp.propagateDelta();
+      clock.end(MetricsListener.Phase.PROPAGATION);
+      compactOrderConverter.convertDelta();
+      simplifier.simplifyDelta();
+      clock.end(MetricsListener.Phase.SIMPLIFICATION);
+
+      int satVariablesCount = problem.variablesCount;
+      int satClausesCount = problem.clausesCount;
+      problem.setMeasuring(clock.isEnabled());
       encoder.encodeDelta();
+      problem.setMeasuring(false);
+      clock.end(MetricsListener.Phase.ENCODING,
+          problem.getTransferNanos(), problem.getTransferBytes());
+      clock.report(MetricsListener.Phase.CLAUSE_TRANSFER,
+          problem.getTransferNanos(), problem.getTransferBytes());
+      if (clock.isEnabled()) {
+        clock.updateFinished(new UpdateMetrics(csp.getIntegerVariablesDelta().size(),
+            csp.getBooleanVariablesDelta().size(), csp.getClausesDelta().size(),
+            problem.variablesCount - satVariablesCount, problem.clausesCount - satClausesCount));
+      }
 
       csp.commit();
       encoder.commit();
+      release();
     } catch (IOException ex1) {
       throw new Sugar4jException("IOException occurred", ex1);
     } catch (SugarException ex2) {
@@ -206,68 +556,347 @@ final class Sugar4jImpl implements Sugar4j {
     }
   }
 
-  @Override
-  public Solution solve() {
-    return solve(-1);
+  /*
+   * 符号化済みの制約と補助変数を解放する.
+   * スコープ内ではpopで元に戻す位置が変わらないように解放しない.
+   */
+  private void release() {
+    if (config.releaseEncoded && scopes.isEmpty()) {
+      csp.release();
+    }
   }
 
   @Override
-  public Solution solve(long timeout) {
+  public void push() {
     update();
 
-    List<Integer> solution = solver.solve(timeout);
-    if (solution.get(0) == SatSolver.UNSAT) {
-      return new SolutionImpl(false, false, new HashMap<>(), new HashMap<>());
+    int selector;
+    try {
+      selector = problem.variablesCount + 1;
+      problem.addVariables(1);
+    } catch (SugarException ex) {
+      throw new Sugar4jException(ex);
     }
-    if (solution.get(0) == SatSolver.INTERRUPTED) {
-      return new SolutionImpl(false, true, new HashMap<>(), new HashMap<>());
+
+    scopes.add(new Scope(selector, csp.getIntegerVariables().size(),
+        csp.getBooleanVariables().size(), csp.getClauses().size()));
+    problem.setSelector(selector);
+  }
+
+  @Override
+  public void pop() {
+    awaitSolving();
+    if (scopes.isEmpty()) {
+      throw new IllegalStateException("no scope to pop");
     }
 
-    Map<Expression, Integer> intMap = new HashMap<>();
-    for (IntegerVariable variable : csp.getIntegerVariables()) {
-      IntegerDomain domain = variable.getDomain();
-      if (variable.getCode() >= solution.size()) {
-        intMap.put(create(variable.getName()), variable.getDomain().getLowerBound());
-        continue;
+    Scope scope = scopes.remove(scopes.size() - 1);
+    csp.rollback(scope.integerVariablesSize, scope.booleanVariablesSize, scope.clausesSize);
+    csp.commit();
+    converter.clearEquivalence();
+    simplifier.clearCache();
+    assumptions.clear();
+    Iterator<Reification> it = reifications.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().scopeDepth > scopes.size()) {
+        it.remove();
       }
+    }
 
-      int offset = 0;
-      for (int i = 0; i < domain.size() - 1; i++) {
-        int literal = solution.get(variable.getCode() + i);
-        if (literal >= 0) {
-          break;
+    problem.addDirectClause(-scope.selector);
+    problem.setSelector(scopes.isEmpty() ? 0 : scopes.get(scopes.size() - 1).selector);
+  }
+
+  /*
+   * 以降に符号化される節を記録する. CompiledModel#newTemplateから用いる.
+   */
+  void startRecording() {
+    problem.startRecording();
+  }
+
+  /*
+   * 現在のモデルを符号化し, CompiledModelとして凍結する.
+   */
+  CompiledModel compile() {
+    if (!scopes.isEmpty()) {
+      throw new IllegalStateException("cannot compile inside a scope");
+    }
+    update();
+
+    Map<Expression, String> reificationNames = new HashMap<>();
+    for (Map.Entry<Expression, Reification> entry : reifications.entrySet()) {
+      reificationNames.put(entry.getKey(), entry.getValue().variable.getName());
+    }
+    return CompiledModel.freeze(config, problem.getRecord(), problem.variablesCount,
+        problem.clausesCount, csp.getIntegerVariables(), csp.getBooleanVariables(), definitions,
+        falseLiteral, reificationsCount, reificationNames);
+  }
+
+  /*
+   * 空のこのオブジェクトに, 凍結されたモデルmodelを読み込む.
+   * 節はSATソルバに一括して追加し, 変数は符号を保ったままCSPに登録する.
+   */
+  void load(CompiledModel model) {
+    try {
+      PhaseClock clock = new PhaseClock(metricsListener);
+      int[] clauses = model.getClauses();
+      solver.addClauses(clauses, 0, clauses.length);
+      clock.end(MetricsListener.Phase.CLAUSE_TRANSFER);
+      problem.variablesCount = model.getSatVariablesCount();
+      problem.clausesCount = model.getSatClausesCount();
+
+      for (IntegerVariable v : model.newIntegerVariables()) {
+        if (v.isAux()) {
+          csp.add(v);
+        } else {
+          converter.definitionConverter.addIntegerVariable(v);
         }
-        offset++;
       }
-
-      try {
-        Iterator<Integer> it = domain.values();
-        for (int i = 0; i < offset; i++) {
-          it.next();
+      for (BooleanVariable v : model.newBooleanVariables()) {
+        if (v.isAux()) {
+          csp.add(v);
+        } else {
+          converter.definitionConverter.addBooleanVariable(v);
         }
-        intMap.put(create(variable.getName()), it.next());
-      } catch (SugarException ex) {
-        throw new Sugar4jException(ex);
       }
+      for (Expression definition : model.getDefinitions()) {
+        converter.convert(definition);
+        definitions.add(definition);
+      }
+
+      falseLiteral = model.getFalseLiteral();
+      reificationsCount = model.getReificationsCount();
+      for (Map.Entry<Expression, String> entry : model.getReifications().entrySet()) {
+        BooleanVariable variable = csp.getBooleanVariable(entry.getValue());
+        reifications.put(entry.getKey(), new Reification(variable, 0));
+      }
+
+      csp.commit();
+      encoder.commit();
+      release();
+    } catch (SugarException ex) {
+      throw new Sugar4jException(ex);
     }
+  }
 
-    Map<Expression, Boolean> boolMap = new HashMap<>();
-    for (BooleanVariable variable : csp.getBooleanVariables()) {
-      if (variable.getCode() >= solution.size()) {
-        boolMap.put(create(variable.getName()), true);
-        continue;
+  @Override
+  public int getScopeDepth() {
+    return scopes.size();
+  }
+
+  @Override
+  public Solution solve() {
+    return solve(-1);
+  }
+
+  @Override
+  public Solution solve(long timeout) {
+    return solve(toDuration(timeout));
+  }
+
+  @Override
+  public Solution solve(Duration timeout) {
+    update();
+
+    Solution solution = solve(toLiterals(assumptions), timeout, null);
+    failedAssumptions = failedAssumptionsOf(solution, assumptions);
+    assumptions.clear();
+    return solution;
+  }
+
+  @Override
+  public CompletableFuture<Solution> solveAsync() {
+    return solveAsync(null);
+  }
+
+  @Override
+  public CompletableFuture<Solution> solveAsync(Duration timeout) {
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "sugar4j-solver");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return solveAsync(timeout, executor);
+  }
+
+  @Override
+  public CompletableFuture<Solution> solveAsync(final Duration timeout,
+                                                @NonNull Executor executor) {
+    update();
+
+    final List<Assumption> solvingAssumptions = new ArrayList<>(assumptions);
+    final List<Integer> literals = toLiterals(solvingAssumptions);
+    assumptions.clear();
+    failedAssumptions = new ArrayList<>();
+
+    final CompletableFuture<Solution> future = new CompletableFuture<>();
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+    // Futureが外部から完了させられたら探索を打ち切る
+    final BooleanSupplier terminate = new BooleanSupplier() {
+      @Override
+      public boolean getAsBoolean() {
+        return future.isDone();
       }
-      boolMap.put(create(variable.getName()), solution.get(variable.getCode()) > 0);
+    };
+
+    solving = future;
+    solvingFinished = finished;
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Solution solution = solve(literals, timeout, terminate);
+            failedAssumptions = failedAssumptionsOf(solution, solvingAssumptions);
+            future.complete(solution);
+          } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+          } finally {
+            finished.complete(null);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      solving = null;
+      solvingFinished = null;
+      throw ex;
+    }
+    return future;
+  }
+
+  /*
+   * 非同期の求解が実行中であれば, その終了を待つ.
+   */
+  private void awaitSolving() {
+    if (solvingFinished != null) {
+      solvingFinished.join();
+      solving = null;
+      solvingFinished = null;
+    }
+  }
+
+  private List<Assumption> failedAssumptionsOf(Solution solution, List<Assumption> assumptions) {
+    if (!solution.isSat() && !solution.isTimeout()) {
+      return collectFailedAssumptions(assumptions);
     }
+    return new ArrayList<>();
+  }
+
+  private static Duration toDuration(long timeout) {
+    return timeout > 0 ? Duration.ofSeconds(timeout) : null;
+  }
 
-    return new SolutionImpl(true, false, boolMap, intMap);
+  /*
+   * literalsを仮定して解く. update()は呼び出し側で済ませておくこと.
+   */
+  Solution solve(List<Integer> literals, long timeout) {
+    return solve(literals, toDuration(timeout), null);
+  }
+
+  /*
+   * literalsを仮定し, terminateがtrueを返すと中断するように解く.
+   */
+  private Solution solve(List<Integer> literals, Duration timeout, BooleanSupplier terminate) {
+    for (Scope scope : scopes) {
+      solver.assume(scope.selector);
+    }
+    for (int literal : literals) {
+      solver.assume(literal);
+    }
+
+    SatModel model = new SatModel();
+    PhaseClock clock = new PhaseClock(metricsListener);
+    long begin = System.nanoTime();
+    int result = solver.solve(timeout, terminate, model);
+    Duration elapsedTime = Duration.ofNanos(System.nanoTime() - begin);
+    clock.end(MetricsListener.Phase.SOLVE);
+    if (result == SatSolver.UNSAT) {
+      return SolutionImpl.unsat(elapsedTime);
+    }
+    if (result == SatSolver.INTERRUPTED) {
+      return SolutionImpl.timeout(elapsedTime);
+    }
+    Solution solution = SolutionImpl.sat(csp, model, encoder.getSatVariablesCount(), elapsedTime);
+    clock.end(MetricsListener.Phase.DECODE);
+    return solution;
+  }
+
+  @Override
+  public OptimizationResult minimize(Expression objective) {
+    return minimize(objective, OptimizationStrategy.BINARY, -1);
+  }
+
+  @Override
+  public OptimizationResult minimize(@NonNull Expression objective,
+                                     @NonNull OptimizationStrategy strategy, long timeout) {
+    return optimize(objective, false, strategy, timeout);
+  }
+
+  @Override
+  public OptimizationResult maximize(Expression objective) {
+    return maximize(objective, OptimizationStrategy.BINARY, -1);
+  }
+
+  @Override
+  public OptimizationResult maximize(@NonNull Expression objective,
+                                     @NonNull OptimizationStrategy strategy, long timeout) {
+    return optimize(objective, true, strategy, timeout);
+  }
+
+  private OptimizationResult optimize(Expression objective, boolean maximize,
+                                      OptimizationStrategy strategy, long timeout) {
+    awaitSolving();
+    IntegerVariable variable;
+    PhaseClock clock = new PhaseClock(metricsListener);
+    csp.setOrigin(objective);
+    try {
+      variable = converter.toIntegerVariable(objective);
+      converter.convertExtra();
+    } catch (SugarException ex) {
+      throw new IllegalArgumentException(ex.getMessage() + " : Caused By: " + objective, ex);
+    } finally {
+      csp.setOrigin(null);
+    }
+    clock.end(MetricsListener.Phase.CONVERSION);
+    update();
+
+    Optimizer optimizer = new Optimizer(this, solver, variable, maximize,
+        toLiterals(assumptions), timeout);
+    assumptions.clear();
+    return optimizer.optimize(strategy);
   }
 
   @Override
   public void close() {
+    if (solving != null) {
+      solving.cancel(true);
+    }
+    awaitSolving();
+    if (executor != null) {
+      executor.shutdown();
+    }
     solver.close();
   }
 
+  @Override
+  public void setMetricsListener(MetricsListener listener) {
+    this.metricsListener = listener;
+  }
+
+  @Override
+  public EncodingProfile getEncodingProfile() {
+    if (encoder.profile == null) {
+      throw new IllegalStateException("profileEncoding is disabled");
+    }
+    update();
+    return encoder.profile;
+  }
+
   @Override
   public int getSatClausesCount() {
     update();
@@ -280,24 +909,34 @@ final class Sugar4jImpl implements Sugar4j {
     return encoder.getSatVariablesCount();
   }
 
-  @ToString
-  @EqualsAndHashCode
-  private static class SolutionImpl implements Solution {
-    @Getter
-    private final boolean sat;
-    @Getter
-    private final boolean timeout;
-    @Getter
-    private final Map<Expression, Boolean> boolMap;
-    @Getter
-    private final Map<Expression, Integer> intMap;
-
-    SolutionImpl(boolean sat, boolean timeout, Map<Expression, Boolean> boolMap,
-                 Map<Expression, Integer> intMap) {
-      this.sat = sat;
-      this.timeout = timeout;
-      this.boolMap = Collections.unmodifiableMap(boolMap);
-      this.intMap = Collections.unmodifiableMap(intMap);
+  /*
+   * pushで開始したスコープ.
+   * スコープ内で符号化された節は全て~selectorを含み, pop時にはCSPを開始時の大きさに戻す.
+   */
+  private static final class Scope {
+    private final int selector;
+    private final int integerVariablesSize;
+    private final int booleanVariablesSize;
+    private final int clausesSize;
+
+    Scope(int selector, int integerVariablesSize, int booleanVariablesSize, int clausesSize) {
+      this.selector = selector;
+      this.integerVariablesSize = integerVariablesSize;
+      this.booleanVariablesSize = booleanVariablesSize;
+      this.clausesSize = clausesSize;
+    }
+  }
+
+  /*
+   * reifyで制約に対応させた論理変数と, それを生成したときのスコープの深さ.
+   */
+  private static final class Reification {
+    private final BooleanVariable variable;
+    private final int scopeDepth;
+
+    Reification(BooleanVariable variable, int scopeDepth) {
+      this.variable = variable;
+      this.scopeDepth = scopeDepth;
     }
   }
 }
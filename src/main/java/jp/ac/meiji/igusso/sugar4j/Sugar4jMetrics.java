@@ -0,0 +1,138 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.ToString;
+
+/**
+ * 通知された計測値を段階ごとに累計するMetricsListenerの実装クラス.
+ * 複数のSugar4jオブジェクトに登録して, 値を合算してもよい.
+ *
+ * <p>MXBeanとしてプラットフォームのMBeanServerに登録すれば, プロファイラを用いずに
+ * 実行中のプロセスのどの段階が時間を要しているかをJMXから参照できる.
+ * <pre>
+ * Sugar4jMetrics metrics = new Sugar4jMetrics();
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(
+ *     metrics, new ObjectName("jp.ac.meiji.igusso.sugar4j:type=Sugar4jMetrics"));
+ * sugar4j.setMetricsListener(metrics);
+ * </pre>
+ */
+@ToString(of = {"updatesCount"})
+public final class Sugar4jMetrics implements MetricsListener, Sugar4jMetricsMXBean {
+  private static final MetricsListener.Phase[] PHASES = MetricsListener.Phase.values();
+
+  private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASES.length);
+  private final AtomicLongArray elapsedNanos = new AtomicLongArray(PHASES.length);
+  private final AtomicLongArray allocatedBytes = new AtomicLongArray(PHASES.length);
+  private final AtomicLong updatesCount = new AtomicLong();
+  private final AtomicLong cspVariablesCount = new AtomicLong();
+  private final AtomicLong cspClausesCount = new AtomicLong();
+  private final AtomicLong satVariablesCount = new AtomicLong();
+  private final AtomicLong satClausesCount = new AtomicLong();
+
+  @Override
+  public void phaseFinished(MetricsListener.Phase phase, long elapsedNanos,
+                            long allocatedBytes) {
+    int index = phase.ordinal();
+    this.phaseCounts.incrementAndGet(index);
+    this.elapsedNanos.addAndGet(index, elapsedNanos);
+    if (allocatedBytes > 0) {
+      this.allocatedBytes.addAndGet(index, allocatedBytes);
+    }
+  }
+
+  @Override
+  public void updateFinished(UpdateMetrics metrics) {
+    updatesCount.incrementAndGet();
+    cspVariablesCount.addAndGet(
+        metrics.getIntegerVariablesCount() + metrics.getBooleanVariablesCount());
+    cspClausesCount.addAndGet(metrics.getCspClausesCount());
+    satVariablesCount.addAndGet(metrics.getSatVariablesCount());
+    satClausesCount.addAndGet(metrics.getSatClausesCount());
+  }
+
+  /**
+   * 段階phaseの処理の回数を返す.
+   */
+  public long getPhaseCount(MetricsListener.Phase phase) {
+    return phaseCounts.get(phase.ordinal());
+  }
+
+  /**
+   * 段階phaseの経過時間の合計 (ナノ秒) を返す.
+   */
+  public long getElapsedNanos(MetricsListener.Phase phase) {
+    return elapsedNanos.get(phase.ordinal());
+  }
+
+  /**
+   * 段階phaseで確保されたメモリの量の合計 (バイト) を返す.
+   */
+  public long getAllocatedBytes(MetricsListener.Phase phase) {
+    return allocatedBytes.get(phase.ordinal());
+  }
+
+  @Override
+  public Map<String, Long> getPhaseCounts() {
+    return toMap(phaseCounts);
+  }
+
+  @Override
+  public Map<String, Long> getElapsedNanos() {
+    return toMap(elapsedNanos);
+  }
+
+  @Override
+  public Map<String, Long> getAllocatedBytes() {
+    return toMap(allocatedBytes);
+  }
+
+  private static Map<String, Long> toMap(AtomicLongArray values) {
+    Map<String, Long> res = new LinkedHashMap<>();
+    for (MetricsListener.Phase phase : PHASES) {
+      res.put(phase.name(), values.get(phase.ordinal()));
+    }
+    return res;
+  }
+
+  @Override
+  public long getUpdatesCount() {
+    return updatesCount.get();
+  }
+
+  @Override
+  public long getCspVariablesCount() {
+    return cspVariablesCount.get();
+  }
+
+  @Override
+  public long getCspClausesCount() {
+    return cspClausesCount.get();
+  }
+
+  @Override
+  public long getSatVariablesCount() {
+    return satVariablesCount.get();
+  }
+
+  @Override
+  public long getSatClausesCount() {
+    return satClausesCount.get();
+  }
+
+  @Override
+  public void reset() {
+    for (int i = 0; i < PHASES.length; i++) {
+      phaseCounts.set(i, 0);
+      elapsedNanos.set(i, 0);
+      allocatedBytes.set(i, 0);
+    }
+    updatesCount.set(0);
+    cspVariablesCount.set(0);
+    cspClausesCount.set(0);
+    satVariablesCount.set(0);
+    satClausesCount.set(0);
+  }
+}
@@ -0,0 +1,54 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import java.util.Map;
+
+/**
+ * Sugar4jMetricsをJMXから参照するためのMXBeanインタフェース.
+ * 段階ごとの値のマップのキーはMetricsListener.Phaseの名前である.
+ */
+public interface Sugar4jMetricsMXBean {
+  /**
+   * 段階ごとの処理の回数を返す.
+   */
+  Map<String, Long> getPhaseCounts();
+
+  /**
+   * 段階ごとの経過時間の合計 (ナノ秒) を返す.
+   */
+  Map<String, Long> getElapsedNanos();
+
+  /**
+   * 段階ごとに確保されたメモリの量の合計 (バイト) を返す.
+   */
+  Map<String, Long> getAllocatedBytes();
+
+  /**
+   * updateによる符号化の回数を返す.
+   */
+  long getUpdatesCount();
+
+  /**
+   * 追加されたCSPの変数 (整数変数と論理変数) の数の合計を返す.
+   */
+  long getCspVariablesCount();
+
+  /**
+   * 追加されたCSPの節の数の合計を返す.
+   */
+  long getCspClausesCount();
+
+  /**
+   * 追加されたSAT変数の数の合計を返す.
+   */
+  long getSatVariablesCount();
+
+  /**
+   * 追加されたSATの節の数の合計を返す.
+   */
+  long getSatClausesCount();
+
+  /**
+   * 全ての値を0に戻す.
+   */
+  void reset();
+}
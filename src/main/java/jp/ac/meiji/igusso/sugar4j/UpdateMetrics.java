@@ -0,0 +1,49 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 1回のSugar4j#updateで追加されたCSPとSATの変数と節の数を表すクラス.
+ */
+@ToString
+public final class UpdateMetrics {
+  /**
+   * 追加されたCSPの整数変数の数を返す.
+   */
+  @Getter
+  private final int integerVariablesCount;
+
+  /**
+   * 追加されたCSPの論理変数の数を返す.
+   */
+  @Getter
+  private final int booleanVariablesCount;
+
+  /**
+   * 追加されたCSPの節の数を返す.
+   */
+  @Getter
+  private final int cspClausesCount;
+
+  /**
+   * 追加されたSAT変数の数を返す.
+   */
+  @Getter
+  private final int satVariablesCount;
+
+  /**
+   * 追加されたSATの節の数を返す.
+   */
+  @Getter
+  private final int satClausesCount;
+
+  UpdateMetrics(int integerVariablesCount, int booleanVariablesCount, int cspClausesCount,
+                int satVariablesCount, int satClausesCount) {
+    this.integerVariablesCount = integerVariablesCount;
+    this.booleanVariablesCount = booleanVariablesCount;
+    this.cspClausesCount = cspClausesCount;
+    this.satVariablesCount = satVariablesCount;
+    this.satClausesCount = satClausesCount;
+  }
+}
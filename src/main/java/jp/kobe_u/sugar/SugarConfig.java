@@ -0,0 +1,205 @@
+package jp.kobe_u.sugar;
+
+import java.util.ArrayList;
+import java.util.List;
+import jp.kobe_u.sugar.converter.CardinalityConverter;
+import jp.kobe_u.sugar.converter.CompactOrderConverter;
+import jp.kobe_u.sugar.converter.Converter;
+import jp.kobe_u.sugar.converter.GlobalConverter;
+import jp.kobe_u.sugar.converter.Simplifier;
+import jp.kobe_u.sugar.encoder.AbstractEncoder;
+import jp.kobe_u.sugar.hook.ConverterHook;
+
+/**
+ * SugarConfig holds the options of the translation of a CSP into SAT.
+ * Each Converter, Simplifier and Encoder refers to its own SugarConfig
+ * instead of the static options, so that independent CSPs can be
+ * translated on different threads with different options.
+ * A new SugarConfig takes the current values of the static options
+ * of Converter, Simplifier and SugarMain as its defaults.
+ *
+ * @see Converter
+ * @see Simplifier
+ */
+public class SugarConfig {
+  public int maxEquivMapSize;
+  public long maxLinearSumSize;
+  public boolean optPeephole;
+  public boolean optPeepholeAbs;
+  public boolean hintAllDiffPigeon;
+  public boolean incrementalPropagation;
+  public boolean linearize;
+  public boolean normalizeLinearSum;
+  public boolean decomposeRelation;
+  public boolean decomposeAllDifferent;
+  public GlobalConverter.AllDifferentEncoding allDifferentEncoding;
+  public boolean decomposeWeightedSum;
+  public boolean decomposeCumulative;
+  public GlobalConverter.CumulativeEncoding cumulativeEncoding;
+  public boolean decomposeElement;
+  public boolean decomposeDisjunctive;
+  public GlobalConverter.DisjunctiveEncoding disjunctiveEncoding;
+  public boolean disjunctiveTransitivity;
+  public boolean decomposeLexLess;
+  public boolean decomposeLexLessEq;
+  public boolean decomposeNValue;
+  public boolean decomposeCount;
+  public boolean decomposeGlobalCardinality;
+  public boolean decomposeGlobalCardinalityWithCosts;
+  public boolean equalityLiterals;
+  public boolean replaceArguments;
+  public boolean reduceArity;
+  public int maxArity;
+  public int splits;
+  public boolean useEq;
+  public boolean equivTranslation;
+  public boolean estimateSatSize;
+  public boolean holdConstraints;
+  public CardinalityConverter.Method cardinalityEncoding;
+  public int cardinalityMinSize;
+  public List<ConverterHook> hooks;
+  public boolean useSimplifyCache;
+  public int maxSimplifyCacheSize;
+  public boolean profileEncoding;
+  public int compactOrderBase;
+  public int compactOrderThreshold;
+  public int logEncodingThreshold;
+  public boolean releaseEncoded;
+  public int debug;
+
+  /**
+   * Constructs a new configuration initialized by the static options.
+   */
+  public SugarConfig() {
+    maxEquivMapSize = Converter.MAX_EQUIVMAP_SIZE;
+    maxLinearSumSize = Converter.MAX_LINEARSUM_SIZE;
+    optPeephole = Converter.OPT_PEEPHOLE;
+    optPeepholeAbs = Converter.OPT_PEEPHOLE_ABS;
+    hintAllDiffPigeon = Converter.HINT_ALLDIFF_PIGEON;
+    incrementalPropagation = Converter.INCREMENTAL_PROPAGATION;
+    linearize = Converter.LINEARIZE;
+    normalizeLinearSum = Converter.NORMALIZE_LINEARSUM;
+    decomposeRelation = Converter.DECOMPOSE_RELATION;
+    decomposeAllDifferent = Converter.DECOMPOSE_ALLDIFFERENT;
+    allDifferentEncoding = Converter.ALLDIFFERENT_ENCODING;
+    decomposeWeightedSum = Converter.DECOMPOSE_WEIGHTEDSUM;
+    decomposeCumulative = Converter.DECOMPOSE_CUMULATIVE;
+    cumulativeEncoding = Converter.CUMULATIVE_ENCODING;
+    decomposeElement = Converter.DECOMPOSE_ELEMENT;
+    decomposeDisjunctive = Converter.DECOMPOSE_DISJUNCTIVE;
+    disjunctiveEncoding = Converter.DISJUNCTIVE_ENCODING;
+    disjunctiveTransitivity = Converter.DISJUNCTIVE_TRANSITIVITY;
+    decomposeLexLess = Converter.DECOMPOSE_LEX_LESS;
+    decomposeLexLessEq = Converter.DECOMPOSE_LEX_LESSEQ;
+    decomposeNValue = Converter.DECOMPOSE_NVALUE;
+    decomposeCount = Converter.DECOMPOSE_COUNT;
+    decomposeGlobalCardinality = Converter.DECOMPOSE_GLOBAL_CARDINALITY;
+    decomposeGlobalCardinalityWithCosts = Converter.DECOMPOSE_GLOBAL_CARDINALITY_WITH_COSTS;
+    equalityLiterals = Converter.EQUALITY_LITERALS;
+    replaceArguments = Converter.REPLACE_ARGUMENTS;
+    reduceArity = Converter.REDUCE_ARITY;
+    maxArity = Converter.MAX_ARITY;
+    splits = Converter.SPLITS;
+    useEq = Converter.USE_EQ;
+    equivTranslation = Converter.EQUIV_TRANSLATION;
+    estimateSatSize = Converter.ESTIMATE_SATSIZE;
+    holdConstraints = Converter.HOLD_CONSTRAINTS;
+    cardinalityEncoding = CardinalityConverter.METHOD;
+    cardinalityMinSize = CardinalityConverter.MIN_SIZE;
+    hooks = Converter.hooks == null ? null : new ArrayList<ConverterHook>(Converter.hooks);
+    useSimplifyCache = Simplifier.USE_SIMPLIFYCACHE;
+    maxSimplifyCacheSize = Simplifier.MAX_SIMPLIFYCACHE_SIZE;
+    profileEncoding = AbstractEncoder.PROFILE_ENCODING;
+    compactOrderBase = CompactOrderConverter.BASE;
+    compactOrderThreshold = CompactOrderConverter.THRESHOLD;
+    logEncodingThreshold = CompactOrderConverter.LOG_THRESHOLD;
+    debug = SugarMain.debug;
+  }
+
+  public void setDecomposeAll(boolean flag) {
+    decomposeAllDifferent = flag;
+    decomposeWeightedSum = flag;
+    decomposeCumulative = flag;
+    decomposeElement = flag;
+    decomposeDisjunctive = flag;
+    decomposeLexLess = flag;
+    decomposeLexLessEq = flag;
+    decomposeNValue = flag;
+    decomposeCount = flag;
+    decomposeGlobalCardinality = flag;
+    decomposeGlobalCardinalityWithCosts = flag;
+  }
+
+  public void addHook(ConverterHook hook) {
+    if (hooks == null) {
+      hooks = new ArrayList<ConverterHook>();
+    }
+    hooks.add(hook);
+  }
+
+  /**
+   * Returns the options affecting the translation as a string.
+   * Hooks are shown by their class names.
+   * The debug level and releaseEncoded are omitted since they do not change the translation.
+   *
+   * @return the string representation of the options
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("SugarConfig(");
+    sb.append("maxEquivMapSize=").append(maxEquivMapSize);
+    sb.append(", maxLinearSumSize=").append(maxLinearSumSize);
+    sb.append(", optPeephole=").append(optPeephole);
+    sb.append(", optPeepholeAbs=").append(optPeepholeAbs);
+    sb.append(", hintAllDiffPigeon=").append(hintAllDiffPigeon);
+    sb.append(", incrementalPropagation=").append(incrementalPropagation);
+    sb.append(", linearize=").append(linearize);
+    sb.append(", normalizeLinearSum=").append(normalizeLinearSum);
+    sb.append(", decomposeRelation=").append(decomposeRelation);
+    sb.append(", decomposeAllDifferent=").append(decomposeAllDifferent);
+    sb.append(", allDifferentEncoding=").append(allDifferentEncoding);
+    sb.append(", decomposeWeightedSum=").append(decomposeWeightedSum);
+    sb.append(", decomposeCumulative=").append(decomposeCumulative);
+    sb.append(", cumulativeEncoding=").append(cumulativeEncoding);
+    sb.append(", decomposeElement=").append(decomposeElement);
+    sb.append(", decomposeDisjunctive=").append(decomposeDisjunctive);
+    sb.append(", disjunctiveEncoding=").append(disjunctiveEncoding);
+    sb.append(", disjunctiveTransitivity=").append(disjunctiveTransitivity);
+    sb.append(", decomposeLexLess=").append(decomposeLexLess);
+    sb.append(", decomposeLexLessEq=").append(decomposeLexLessEq);
+    sb.append(", decomposeNValue=").append(decomposeNValue);
+    sb.append(", decomposeCount=").append(decomposeCount);
+    sb.append(", decomposeGlobalCardinality=").append(decomposeGlobalCardinality);
+    sb.append(", decomposeGlobalCardinalityWithCosts=").append(decomposeGlobalCardinalityWithCosts);
+    sb.append(", equalityLiterals=").append(equalityLiterals);
+    sb.append(", replaceArguments=").append(replaceArguments);
+    sb.append(", reduceArity=").append(reduceArity);
+    sb.append(", maxArity=").append(maxArity);
+    sb.append(", splits=").append(splits);
+    sb.append(", useEq=").append(useEq);
+    sb.append(", equivTranslation=").append(equivTranslation);
+    sb.append(", estimateSatSize=").append(estimateSatSize);
+    sb.append(", holdConstraints=").append(holdConstraints);
+    sb.append(", cardinalityEncoding=").append(cardinalityEncoding);
+    sb.append(", cardinalityMinSize=").append(cardinalityMinSize);
+    sb.append(", hooks=[");
+    if (hooks != null) {
+      for (int i = 0; i < hooks.size(); i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append(hooks.get(i).getClass().getName());
+      }
+    }
+    sb.append("]");
+    sb.append(", useSimplifyCache=").append(useSimplifyCache);
+    sb.append(", maxSimplifyCacheSize=").append(maxSimplifyCacheSize);
+    sb.append(", profileEncoding=").append(profileEncoding);
+    sb.append(", compactOrderBase=").append(compactOrderBase);
+    sb.append(", compactOrderThreshold=").append(compactOrderThreshold);
+    sb.append(", logEncodingThreshold=").append(logEncodingThreshold);
+    sb.append(")");
+    return sb.toString();
+  }
+}
@@ -14,7 +14,10 @@ import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.zip.GZIPInputStream;
+import jp.kobe_u.sugar.converter.CardinalityConverter;
+import jp.kobe_u.sugar.converter.CompactOrderConverter;
 import jp.kobe_u.sugar.converter.Converter;
+import jp.kobe_u.sugar.converter.GlobalConverter;
 import jp.kobe_u.sugar.converter.Simplifier;
 import jp.kobe_u.sugar.csp.BooleanVariable;
 import jp.kobe_u.sugar.csp.CSP;
@@ -23,6 +26,7 @@ import jp.kobe_u.sugar.csp.IntegerDomain;
 import jp.kobe_u.sugar.csp.IntegerDomainDiet;
 import jp.kobe_u.sugar.csp.IntegerDomainIntervals;
 import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.encoder.AbstractEncoder;
 import jp.kobe_u.sugar.encoder.Encoder;
 import jp.kobe_u.sugar.encoder.Encoding;
 import jp.kobe_u.sugar.encoder.Problem;
@@ -77,14 +81,22 @@ public class SugarMain {
       Converter.DECOMPOSE_RELATION = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?decomp(ose)?_alldiff(erent)?")) {
       Converter.DECOMPOSE_ALLDIFFERENT = !opt.startsWith("no_");
+    } else if (opt.matches("alldiff=(pairwise|ladder|commander|product)")) {
+      Converter.ALLDIFFERENT_ENCODING = GlobalConverter.AllDifferentEncoding.valueOf(s[1].toUpperCase());
     } else if (opt.matches("(no_)?decomp(ose)?_(weightedsum|wsum)")) {
       Converter.DECOMPOSE_WEIGHTEDSUM = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?decomp(ose)?_cumul(ative)?")) {
       Converter.DECOMPOSE_CUMULATIVE = !opt.startsWith("no_");
+    } else if (opt.matches("cumul(ative)?=(auto|time|task)")) {
+      Converter.CUMULATIVE_ENCODING = GlobalConverter.CumulativeEncoding.valueOf(s[1].toUpperCase());
     } else if (opt.matches("(no_)?decomp(ose)?_elem(ent)?")) {
       Converter.DECOMPOSE_ELEMENT = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?decomp(ose)?_disj(unctive)?")) {
       Converter.DECOMPOSE_DISJUNCTIVE = !opt.startsWith("no_");
+    } else if (opt.matches("disj(unctive)?=(pairwise|precedence)")) {
+      Converter.DISJUNCTIVE_ENCODING = GlobalConverter.DisjunctiveEncoding.valueOf(s[1].toUpperCase());
+    } else if (opt.matches("(no_)?disj(unctive)?_trans(itivity)?")) {
+      Converter.DISJUNCTIVE_TRANSITIVITY = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?decomp(ose)?_lex_less")) {
       Converter.DECOMPOSE_LEX_LESS = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?decomp(ose)?_lex_lesseq")) {
@@ -97,6 +109,8 @@ public class SugarMain {
       Converter.DECOMPOSE_GLOBAL_CARDINALITY = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?decomp(ose)?_(global_cardinality_with_costs|gcc)")) {
       Converter.DECOMPOSE_GLOBAL_CARDINALITY_WITH_COSTS = !opt.startsWith("no_");
+    } else if (opt.matches("(no_)?eq(uality)?_lit(erals)?")) {
+      Converter.EQUALITY_LITERALS = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?hints")) {
       Converter.HINT_ALLDIFF_PIGEON = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?hint_alldiff_pigeon") || opt.matches("(no_)?pigeon")) {
@@ -115,6 +129,10 @@ public class SugarMain {
       Converter.EQUIV_TRANSLATION = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?hold")) {
       Converter.HOLD_CONSTRAINTS = !opt.startsWith("no_");
+    } else if (opt.matches("card=(none|auto|totalizer|counter|network)")) {
+      CardinalityConverter.METHOD = CardinalityConverter.Method.valueOf(s[1].toUpperCase());
+    } else if (opt.matches("card_min=(\\d+)")) {
+      CardinalityConverter.MIN_SIZE = Integer.parseInt(s[1]);
     } else if (opt.matches("(no_)?diet")) {
       IntegerDomain.USE_DIET_DOMAIN = !opt.startsWith("no_");
     } else if (opt.matches("domain=(\\d+)")) {
@@ -149,6 +167,14 @@ public class SugarMain {
       }
     } else if (opt.matches("(no_)?pmin")) {
       HybridConverter.USE_PMINIMAL = !opt.startsWith("no_");
+    } else if (opt.matches("(no_)?profile(_encoding)?")) {
+      AbstractEncoder.PROFILE_ENCODING = !opt.startsWith("no_");
+    } else if (opt.matches("compact=(\\d+)")) {
+      CompactOrderConverter.THRESHOLD = Integer.parseInt(s[1]);
+    } else if (opt.matches("compact_base=(\\d+)")) {
+      CompactOrderConverter.BASE = Integer.parseInt(s[1]);
+    } else if (opt.matches("log=(\\d+)")) {
+      CompactOrderConverter.LOG_THRESHOLD = Integer.parseInt(s[1]);
     } else if (opt.matches("(no_)?gcnf")) {
       Problem.GCNF = !opt.startsWith("no_");
     } else if (opt.matches("(no_)?gwcnf")) {
@@ -177,10 +203,17 @@ public class SugarMain {
     Converter.setDecomposeAll(true);
     Converter.DECOMPOSE_RELATION = false; // "true" has bug ??
     Converter.HINT_ALLDIFF_PIGEON = true;
+    Converter.ALLDIFFERENT_ENCODING = GlobalConverter.AllDifferentEncoding.PAIRWISE;
+    Converter.CUMULATIVE_ENCODING = GlobalConverter.CumulativeEncoding.TIME;
+    Converter.DISJUNCTIVE_ENCODING = GlobalConverter.DisjunctiveEncoding.PAIRWISE;
+    Converter.DISJUNCTIVE_TRANSITIVITY = false;
+    Converter.EQUALITY_LITERALS = true;
     Converter.REPLACE_ARGUMENTS = false;
     Converter.USE_EQ = false;
     Converter.EQUIV_TRANSLATION = false;
     Converter.HOLD_CONSTRAINTS = false;
+    CardinalityConverter.METHOD = CardinalityConverter.Method.AUTO;
+    CardinalityConverter.MIN_SIZE = 4;
     IntegerDomain.USE_DIET_DOMAIN = false;
     Problem.GCNF = false;
     Problem.GWCNF = false;
@@ -188,6 +221,9 @@ public class SugarMain {
     Simplifier.MAX_SIMPLIFYCACHE_SIZE = 1000;
     PBEncoder.BASE = 0;
     PBEncoder.ENCODING_OPTION = 1;
+    CompactOrderConverter.BASE = 16;
+    CompactOrderConverter.THRESHOLD = 0;
+    CompactOrderConverter.LOG_THRESHOLD = 0;
     HybridConverter.HYBRID_OPTION = 0;
     HybridConverter.USE_PMINIMAL = false;
   }
@@ -480,6 +516,15 @@ public class SugarMain {
   }
 
   public void translate(String cspFileName) throws SugarException, IOException {
+    translate(cspFileName, false);
+  }
+
+  /**
+   * Translates the CSP file into the clausal form CSP.
+   * The compact order and the log encodings are applied only when compact is true,
+   * since they are available only for the CNF encoder.
+   */
+  public void translate(String cspFileName, boolean compact) throws SugarException, IOException {
     List<Expression> expressions = parse(cspFileName);
     // Conversion
     Logger.fine("Converting to clausal form CSP");
@@ -508,6 +553,11 @@ public class SugarMain {
       Logger.println("s UNSATISFIABLE");
       return;
     }
+    if (compact) {
+      // Compact order and log encodings
+      CompactOrderConverter compactOrderConverter = new CompactOrderConverter(csp);
+      compactOrderConverter.convert();
+    }
     if (simplify_clauses) {
       // Simplification
       Logger.fine("Simplifing CSP clauses by introducing new Boolean variables");
@@ -524,7 +574,7 @@ public class SugarMain {
 
   public void encode(String cspFileName, String satFileName, String mapFileName)
       throws SugarException, IOException {
-    translate(cspFileName);
+    translate(cspFileName, true);
     if (csp.isUnsatisfiable()) {
       return;
     }
@@ -535,6 +585,11 @@ public class SugarMain {
     encoder.outputMap(mapFileName);
     Logger.status();
     Logger.info("SAT : " + encoder.summary());
+    if (encoder.profile != null) {
+      for (String line : encoder.profile.report(20)) {
+        Logger.info(line);
+      }
+    }
   }
 
   public void decode(String outFileName, String mapFileName)
@@ -748,9 +803,21 @@ public class SugarMain {
           csp.getIntegerVariable(name).setEncoding(Encoding.ORDER);
         } else if (encoding.equals("log")) {
           csp.getIntegerVariable(name).setEncoding(Encoding.LOG);
+        } else if (encoding.equals("compact")) {
+          csp.getIntegerVariable(name).setEncoding(Encoding.COMPACT_ORDER);
         } else {
           throw new SugarException("Unknown encoding " + encoding);
         }
+      } else if (s[0].equals("compact")) {
+        // compact name base offset digit0 digit1 ...
+        String name = s[1];
+        int base = Integer.parseInt(s[2]);
+        int offset = Integer.parseInt(s[3]);
+        IntegerVariable[] digits = new IntegerVariable[s.length - 4];
+        for (int i = 0; i < digits.length; i++) {
+          digits[i] = csp.getIntegerVariable(s[i + 4]);
+        }
+        csp.getIntegerVariable(name).setDigits(base, offset, digits);
       }
     }
     rd.close();
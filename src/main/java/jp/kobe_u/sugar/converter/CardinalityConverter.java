@@ -0,0 +1,343 @@
+package jp.kobe_u.sugar.converter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.csp.LinearSum;
+import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.expression.Expression;
+
+/**
+ * CardinalityConverter replaces a sum of 0-1 variables in a comparison
+ * by a new integer variable t counting them.
+ * The count t is defined by one of the following networks of auxiliary variables,
+ * each of which has a small domain and is related to its inputs
+ * by a comparison of at most three variables.
+ * <ul>
+ * <li>TOTALIZER: a balanced binary tree of partial counts.
+ * <li>COUNTER: a sequential counter, that is, a chain of partial counts.
+ * <li>NETWORK: an odd-even merge sorting network of comparators,
+ * whose i-th output means that at least i inputs are one.
+ * </ul>
+ * Only the needed direction is defined:
+ * t &gt;= sum for an upper bound of the sum, and t &lt;= sum for a lower bound.
+ * When the comparison is a constraint of the CSP itself,
+ * the partial counts are also truncated by the largest bound k relevant to the comparison,
+ * so that the number of clauses is bounded by O(n*k) instead of O(n^2).
+ * Otherwise the comparison may be false, for example in a disjunction or an assumption,
+ * and the partial counts range over 0..n so that their definitions are always satisfiable.
+ * AUTO chooses the method with the smallest estimated number of clauses.
+ *
+ * @see ComparisonConverter#convertComp(Expression, Expression, String)
+ */
+public class CardinalityConverter {
+  public enum Method {
+    NONE, AUTO, TOTALIZER, COUNTER, NETWORK
+  }
+
+  /**
+   * The default method.
+   */
+  public static Method METHOD = Method.AUTO;
+
+  /**
+   * The default least number of 0-1 variables to be counted.
+   */
+  public static int MIN_SIZE = 4;
+
+  private Converter converter;
+
+  public CardinalityConverter(Converter converter) {
+    this.converter = converter;
+  }
+
+  private static boolean isZeroOne(IntegerVariable v) {
+    IntegerDomain d = v.getDomain();
+    return d.getLowerBound() >= 0 && d.getUpperBound() <= 1
+        && v.getEncoding() == Encoding.ORDER;
+  }
+
+  /**
+   * Returns the linear sum where the largest group of 0-1 variables
+   * having the same coefficient is replaced by their count,
+   * or e itself when there is no such group to be counted.
+   * The comparison is assumed not to be a constraint of the CSP itself.
+   */
+  public LinearSum convert(LinearSum e, String cmp) throws SugarException {
+    return convert(e, cmp, false);
+  }
+
+  /**
+   * Returns the linear sum where the largest group of 0-1 variables
+   * having the same coefficient is replaced by their count,
+   * or e itself when there is no such group to be counted.
+   * topLevel must be true only when "e cmp 0" is added as a unit clause of the CSP.
+   */
+  public LinearSum convert(LinearSum e, String cmp, boolean topLevel) throws SugarException {
+    Method method = converter.config.cardinalityEncoding;
+    if (method == Method.NONE || cmp.equals("ne")) {
+      return e;
+    }
+    Map<Integer, List<IntegerVariable>> groups = new HashMap<Integer, List<IntegerVariable>>();
+    int a = 0;
+    List<IntegerVariable> xs = null;
+    for (IntegerVariable v : e.getCoef().keySet()) {
+      if (isZeroOne(v)) {
+        int a1 = e.getA(v);
+        List<IntegerVariable> group = groups.get(a1);
+        if (group == null) {
+          group = new ArrayList<IntegerVariable>();
+          groups.put(a1, group);
+        }
+        group.add(v);
+        if (xs == null || group.size() > xs.size()) {
+          a = a1;
+          xs = group;
+        }
+      }
+    }
+    if (xs == null || xs.size() < Math.max(2, converter.config.cardinalityMinSize)) {
+      return e;
+    }
+    int n = xs.size();
+    LinearSum rest = new LinearSum(e.getB());
+    for (IntegerVariable v : e.getCoef().keySet()) {
+      if (!xs.contains(v)) {
+        rest.setA(e.getA(v), v);
+      }
+    }
+    // a*sum + rest cmp 0
+    String dir = cmp;
+    if (a < 0 && cmp.equals("le")) {
+      dir = "ge";
+    } else if (a < 0 && cmp.equals("ge")) {
+      dir = "le";
+    }
+    IntegerDomain d = rest.getDomain();
+    long u = a > 0 ? -(long) d.getLowerBound() : (long) d.getUpperBound();
+    long c = Math.abs(a);
+    long k = dir.equals("ge") ? -Math.floorDiv(-u, c) : Math.floorDiv(u, c);
+    if (k <= 0) {
+      // the comparison forces the sum to be zero, or it is trivial
+      return e;
+    }
+    // the truncated counts cannot exceed k, which is only valid when the comparison holds
+    int cap = topLevel ? (int) Math.min(n, k) : n;
+    if (method == Method.AUTO) {
+      method = choose(n, cap);
+    }
+    List<Expression> inputs = new ArrayList<Expression>();
+    for (IntegerVariable v : xs) {
+      inputs.add(Expression.create(v.getName()));
+    }
+    IntegerVariable t;
+    if (method == Method.NETWORK) {
+      t = sort(inputs, cap, dir);
+    } else {
+      boolean balanced = method != Method.COUNTER;
+      Expression x = count(inputs, 0, n, cap, dir, balanced);
+      t = converter.csp.getIntegerVariable(x.stringValue());
+    }
+    rest.setA(a, t);
+    return rest;
+  }
+
+  /*
+   * Estimates the number of clauses, and returns the method of the least estimation.
+   */
+  private static Method choose(int n, int cap) {
+    long totalizer = estimateCount(n, cap, true);
+    long counter = estimateCount(n, cap, false);
+    long network = 3L * estimateNetwork(n) + cap + 1;
+    Method method = Method.TOTALIZER;
+    long size = totalizer;
+    if (counter < size) {
+      method = Method.COUNTER;
+      size = counter;
+    }
+    // the network is preferred only when it is clearly smaller,
+    // since it needs two variables for each comparator
+    if (4 * network < 3 * size) {
+      method = Method.NETWORK;
+    }
+    return method;
+  }
+
+  private static int split(int from, int to, boolean balanced) {
+    return balanced ? (from + to) / 2 : to - 1;
+  }
+
+  /*
+   * Estimates the clauses relating each partial count to its two parts,
+   * and the clauses of the order encoding of the partial count.
+   */
+  private static long estimateCount(int n, int cap, boolean balanced) {
+    long size = 0;
+    if (n > 1) {
+      int m = split(0, n, balanced);
+      size += (Math.min(m, cap) + 1L) * (Math.min(n - m, cap) + 1L);
+      size += Math.min(n, cap) - 1;
+      size += estimateCount(m, cap, balanced) + estimateCount(n - m, cap, balanced);
+    }
+    return size;
+  }
+
+  /*
+   * Relates the variable s to the sum in the direction dir.
+   */
+  private void relate(Expression s, Expression sum, String dir) throws SugarException {
+    Expression x;
+    if (dir.equals("le")) {
+      x = s.ge(sum);
+      x.setComment(s + " >= " + sum);
+    } else if (dir.equals("ge")) {
+      x = s.le(sum);
+      x.setComment(s + " <= " + sum);
+    } else {
+      x = s.eq(sum);
+      x.setComment(s + " == " + sum);
+    }
+    converter.convertConstraint(x);
+  }
+
+  /*
+   * Returns a variable counting the inputs from "from" to "to" (exclusive).
+   */
+  private Expression count(List<Expression> inputs, int from, int to, int cap, String dir,
+                           boolean balanced) throws SugarException {
+    if (to - from == 1) {
+      return inputs.get(from);
+    }
+    int mid = split(from, to, balanced);
+    Expression l = count(inputs, from, mid, cap, dir, balanced);
+    Expression r = count(inputs, mid, to, cap, dir, balanced);
+    Expression sum = l.add(r);
+    IntegerDomain d = IntegerDomain.create(0, Math.min(to - from, cap));
+    Expression s = Expression.create(converter.newIntegerVariable(d, sum).getName());
+    relate(s, sum, dir);
+    return s;
+  }
+
+  /*
+   * Iterates the comparators of the odd-even merge sorting network of size m.
+   */
+  private abstract static class Network {
+    void run(int m) throws SugarException {
+      for (int p = 1; p < m; p <<= 1) {
+        for (int k = p; k >= 1; k >>= 1) {
+          for (int j = k % p; j + k < m; j += 2 * k) {
+            for (int i = 0; i < Math.min(k, m - j - k); i++) {
+              if ((i + j) / (2 * p) == (i + j + k) / (2 * p)) {
+                compare(i + j, i + j + k);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    abstract void compare(int i, int j) throws SugarException;
+  }
+
+  private static int padding(int n) {
+    int m = 1;
+    while (m < n) {
+      m <<= 1;
+    }
+    return m;
+  }
+
+  /*
+   * Returns the number of comparators of two inputs which are not the padding zeros.
+   */
+  private static long estimateNetwork(int n) {
+    final boolean[] wires = new boolean[padding(n)];
+    final long[] count = new long[1];
+    for (int i = 0; i < n; i++) {
+      wires[i] = true;
+    }
+    try {
+      new Network() {
+        @Override
+        void compare(int i, int j) {
+          if (wires[i] && wires[j]) {
+            count[0]++;
+          } else if (wires[j]) {
+            wires[i] = true;
+            wires[j] = false;
+          }
+        }
+      }.run(wires.length);
+    } catch (SugarException e) {
+      throw new IllegalStateException(e);
+    }
+    return count[0];
+  }
+
+  /*
+   * Sorts the inputs in descending order by the comparators,
+   * and returns a variable counting the sorted outputs.
+   * A null wire is the padding zero.
+   */
+  private IntegerVariable sort(List<Expression> inputs, int cap, final String dir)
+      throws SugarException {
+    int n = inputs.size();
+    final Expression[] wires = new Expression[padding(n)];
+    for (int i = 0; i < n; i++) {
+      wires[i] = inputs.get(i);
+    }
+    final IntegerDomain bit = IntegerDomain.create(0, 1);
+    new Network() {
+      @Override
+      void compare(int i, int j) throws SugarException {
+        Expression a = wires[i];
+        Expression b = wires[j];
+        if (b == null) {
+          return;
+        }
+        if (a == null) {
+          wires[i] = b;
+          wires[j] = null;
+          return;
+        }
+        IntegerVariable max = converter.newIntegerVariable(bit, Expression.create(Expression.MAX, a, b));
+        IntegerVariable min = converter.newIntegerVariable(bit, Expression.create(Expression.MIN, a, b));
+        Expression hi = Expression.create(max.getName());
+        Expression lo = Expression.create(min.getName());
+        if (!dir.equals("ge")) {
+          // at least one (two) of a and b -> hi (lo)
+          converter.convertConstraint(hi.ge(a));
+          converter.convertConstraint(hi.ge(b));
+          converter.convertConstraint(lo.ge(a.add(b).sub(1)));
+        }
+        if (!dir.equals("le")) {
+          // hi (lo) -> at least one (two) of a and b
+          converter.convertConstraint(hi.le(a.add(b)));
+          converter.convertConstraint(lo.le(a));
+          converter.convertConstraint(lo.le(b));
+        }
+        wires[i] = hi;
+        wires[j] = lo;
+      }
+    }.run(wires.length);
+    IntegerVariable v = converter.newIntegerVariable(IntegerDomain.create(0, cap),
+        Expression.create(Expression.ADD, inputs));
+    Expression t = Expression.create(v.getName());
+    for (int i = 1; i <= Math.min(n, cap + 1); i++) {
+      Expression y = wires[i - 1];
+      if (!dir.equals("ge")) {
+        // y_i -> t >= i
+        converter.convertConstraint(i <= cap ? y.le(0).or(t.ge(i)) : y.le(0));
+      }
+      if (!dir.equals("le") && i <= cap) {
+        // t >= i -> y_i
+        converter.convertConstraint(t.le(i - 1).or(y.ge(1)));
+      }
+    }
+    return v;
+  }
+}
@@ -0,0 +1,435 @@
+package jp.kobe_u.sugar.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jp.kobe_u.sugar.Logger;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.csp.BooleanLiteral;
+import jp.kobe_u.sugar.csp.BooleanVariable;
+import jp.kobe_u.sugar.csp.CSP;
+import jp.kobe_u.sugar.csp.Clause;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.csp.LinearLeLiteral;
+import jp.kobe_u.sugar.csp.LinearLiteral;
+import jp.kobe_u.sugar.csp.LinearSum;
+import jp.kobe_u.sugar.csp.Literal;
+import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.expression.Expression;
+
+/**
+ * CompactOrderConverter rewrites the CSP for the compact order encoding.
+ * An integer variable x of the encoding COMPACT_ORDER is represented by digits
+ * d_0, ..., d_{m-1} of base B as x = lb(x) + B^0*d_0 + ... + B^{m-1}*d_{m-1},
+ * where each digit is an auxiliary integer variable of {0..B-1} encoded by the order encoding.
+ * Hence x needs about (B-1)*log_B(d) SAT variables instead of d-1
+ * where d is the size of its domain.
+ *
+ * <p>A comparison literal S &lt;= 0 containing compact variables is replaced by
+ * the comparisons at each digit position connected by carries:
+ * S_0 + b_0 &lt;= B*c_1, S_j + b_j + c_j &lt;= B*c_{j+1}, ..., S_{m-1} + b_{m-1} + c_{m-1} &lt;= 0,
+ * where S_j is the sum of the j-th digits, b_j is the j-th digit of the constant,
+ * and c_j is an auxiliary integer variable for the carry.
+ * Multiplying the j-th comparison by B^j and summing them up gives S &lt;= 0,
+ * and conversely the carries c_{j+1} = ceil((S_0 + ... + B^j*S_j + b_0 + ... + B^j*b_j) / B^{j+1})
+ * satisfy the comparisons.
+ * Each comparison only contains the digits and the carries of small domains,
+ * so that the number of clauses no longer depends on the products of the domain sizes.
+ * A literal in a non-unit clause is replaced by a new boolean variable p
+ * with the clauses p -&gt; (the comparisons).
+ * Integer variables which are not compact are added at the least significant position.
+ * When the bases of the compact variables differ,
+ * each digit is added at the position of the smallest base dividing its weight.
+ *
+ * <p>An integer variable of the encoding LOG is represented by the binary digits,
+ * that is, the log encoding is the compact order encoding of base 2.
+ * Each bit is an order encoded variable of {0..1} having a single SAT variable,
+ * and the comparisons at the bit positions connected by carries work as adders and comparators.
+ * Bounds of a log encoded variable are available as reified comparisons of its bits.
+ *
+ * <p>Auxiliary integer variables sharing a comparison with a compact variable
+ * also become compact unless they are already encoded,
+ * since they usually have the domains as large as the compact variables.
+ * Only comparisons (le, ge, eq and ne) can contain compact variables.
+ *
+ * @see IntegerVariable#setDigits(int, int, IntegerVariable[])
+ * @see Encoding#COMPACT_ORDER
+ * @see Encoding#LOG
+ */
+public class CompactOrderConverter {
+  /**
+   * The default base of the digits.
+   */
+  public static int BASE = 16;
+
+  /**
+   * The default size of the domains above which the integer variables become compact.
+   * Zero or less means only the variables of the encoding COMPACT_ORDER become compact.
+   */
+  public static int THRESHOLD = 0;
+
+  /**
+   * The default size of the domains above which the integer variables are log encoded.
+   * Zero or less means only the variables of the encoding LOG are log encoded.
+   * It precedes THRESHOLD.
+   */
+  public static int LOG_THRESHOLD = 0;
+
+  private CSP csp;
+  private SugarConfig config;
+
+  public CompactOrderConverter(CSP csp) {
+    this(csp, new SugarConfig());
+  }
+
+  public CompactOrderConverter(CSP csp, SugarConfig config) {
+    this.csp = csp;
+    this.config = config;
+  }
+
+  /**
+   * Rewrites all the integer variables and the clauses of the CSP.
+   *
+   * @throws SugarException when a literal cannot be rewritten
+   */
+  public void convert() throws SugarException {
+    List<Clause> newClauses = convert(csp.getIntegerVariables(), csp.getClauses());
+    if (newClauses != null) {
+      csp.setClauses(newClauses);
+    }
+  }
+
+  /**
+   * Rewrites only the integer variables and the clauses added after the last commit of the CSP.
+   * The clauses added before were already rewritten,
+   * and the compact variables encoded before keep their digits.
+   *
+   * @throws SugarException when a literal cannot be rewritten
+   * @see CSP#commit()
+   */
+  public void convertDelta() throws SugarException {
+    List<Clause> delta = csp.getClausesDelta();
+    List<Clause> newClauses = convert(csp.getIntegerVariablesDelta(), delta);
+    if (newClauses != null) {
+      delta.clear();
+      delta.addAll(newClauses);
+    }
+  }
+
+  /*
+   * Returns the rewritten clauses, or null when no clause is rewritten.
+   */
+  private List<Clause> convert(List<IntegerVariable> variables0, List<Clause> clauses)
+      throws SugarException {
+    // The variables are copied since the digits are added to the CSP
+    List<IntegerVariable> variables = new ArrayList<IntegerVariable>(variables0);
+    for (IntegerVariable v : variables) {
+      if (v.isFrozen()) {
+        continue;
+      }
+      int size = v.getDomain().size();
+      if (config.logEncodingThreshold > 0 && size > config.logEncodingThreshold) {
+        v.setEncoding(Encoding.LOG);
+      } else if (config.compactOrderThreshold > 0 && size > config.compactOrderThreshold) {
+        v.setEncoding(Encoding.COMPACT_ORDER);
+      }
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Clause clause : clauses) {
+        for (Literal literal : clause.getLiterals()) {
+          if (literal instanceof LinearLiteral && isCompact(literal)) {
+            Encoding encoding = Encoding.COMPACT_ORDER;
+            for (IntegerVariable v : literal.getVariables()) {
+              if (v.getEncoding() == Encoding.LOG) {
+                encoding = Encoding.LOG;
+              }
+            }
+            for (IntegerVariable v : literal.getVariables()) {
+              if (!v.isFrozen() && v.isAux() && v.getEncoding() == Encoding.ORDER
+                  && v.getDomain().size() > getBase(encoding)) {
+                v.setEncoding(encoding);
+                changed = true;
+              }
+            }
+          }
+        }
+      }
+    }
+    List<Clause> newClauses = new ArrayList<Clause>();
+    int count = 0;
+    for (IntegerVariable v : variables) {
+      if (isCompact(v) && !v.isCompact()) {
+        addDigits(v, newClauses);
+        count++;
+      }
+    }
+    boolean rewritten = count > 0;
+    for (Clause clause : clauses) {
+      if (isCompact(clause)) {
+        rewrite(clause, newClauses);
+        rewritten = true;
+      } else {
+        newClauses.add(clause);
+      }
+    }
+    if (!rewritten) {
+      return null;
+    }
+    Logger.fine(count + " integer variables are represented by digits");
+    return newClauses;
+  }
+
+  /*
+   * The log encoding is the compact order encoding of base 2.
+   */
+  private static boolean isCompact(IntegerVariable v) {
+    return v.getEncoding() == Encoding.COMPACT_ORDER || v.getEncoding() == Encoding.LOG;
+  }
+
+  private int getBase(Encoding encoding) {
+    return encoding == Encoding.LOG ? 2 : config.compactOrderBase;
+  }
+
+  private boolean isCompact(Literal literal) {
+    Set<IntegerVariable> vs = literal.getVariables();
+    if (vs != null) {
+      for (IntegerVariable v : vs) {
+        if (isCompact(v)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean isCompact(Clause clause) {
+    for (Literal literal : clause.getLiterals()) {
+      if (isCompact(literal)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Adds the digits of v, and the clauses for the upper bound and the holes of its domain.
+   */
+  private void addDigits(IntegerVariable v, List<Clause> newClauses) throws SugarException {
+    if (v.isFrozen()) {
+      throw new SugarException("Encoded variable cannot be compact " + v);
+    }
+    int base = getBase(v.getEncoding());
+    if (base < 2) {
+      throw new SugarException("Illegal base " + base + " of the compact order encoding");
+    }
+    IntegerDomain domain = v.getDomain();
+    int lb = domain.getLowerBound();
+    int ub = domain.getUpperBound();
+    long range = (long) ub - lb;
+    int m = 1;
+    long unit = 1;
+    while (unit * base <= range) {
+      unit *= base;
+      m++;
+    }
+    IntegerVariable[] digits = new IntegerVariable[m];
+    for (int j = 0; j < m; j++) {
+      int top = j < m - 1 ? base - 1 : (int) (range / unit);
+      digits[j] = csp.newAuxIntegerVariable(IntegerDomain.create(0, top));
+      digits[j].setOrigin(v.getOrigin());
+      csp.add(digits[j]);
+    }
+    v.setDigits(base, lb, digits);
+    List<Clause> clauses = v.getDomainClauses();
+    if ((range / unit) * unit + (unit - 1) > range) {
+      clauses.add(new Clause(new LinearLeLiteral(new LinearSum(1, v, -ub))));
+    }
+    for (Clause clause : clauses) {
+      clause.setOrigin(v.getOrigin());
+      rewrite(clause, newClauses);
+    }
+  }
+
+  private void rewrite(Clause clause, List<Clause> newClauses) throws SugarException {
+    Expression origin = clause.getOrigin();
+    List<Literal> literals = clause.getLiterals();
+    if (literals.size() == 1 && literals.get(0) instanceof LinearLiteral
+        && !((LinearLiteral) literals.get(0)).getCmp().equals("ne")) {
+      // A unit clause is replaced by the comparisons themselves
+      for (LinearSum sum : toLe((LinearLiteral) literals.get(0))) {
+        for (Literal lit : split(sum, origin)) {
+          Clause newClause = new Clause(lit);
+          newClause.setOrigin(origin);
+          newClauses.add(newClause);
+        }
+      }
+      return;
+    }
+    Clause newClause = new Clause();
+    newClause.setOrigin(origin);
+    for (Literal literal : literals) {
+      if (!isCompact(literal)) {
+        newClause.add(literal);
+      } else if (!(literal instanceof LinearLiteral)) {
+        throw new SugarException("Cannot encode " + literal + " by the compact order encoding");
+      } else if (((LinearLiteral) literal).getCmp().equals("ne")) {
+        // S != 0 <--> S+1 <= 0 or -S+1 <= 0
+        LinearSum sum = ((LinearLiteral) literal).getLinearExpression();
+        LinearSum lt = new LinearSum(sum);
+        lt.setB(lt.getB() + 1);
+        LinearSum gt = new LinearSum(sum);
+        gt.multiply(-1);
+        gt.setB(gt.getB() + 1);
+        newClause.add(reify(new LinearSum[] { lt }, origin, newClauses));
+        newClause.add(reify(new LinearSum[] { gt }, origin, newClauses));
+      } else {
+        newClause.add(reify(toLe((LinearLiteral) literal), origin, newClauses));
+      }
+    }
+    newClauses.add(newClause);
+  }
+
+  /*
+   * Returns the linear sums S such that the literal is equivalent to the conjunction of S <= 0.
+   */
+  private LinearSum[] toLe(LinearLiteral literal) throws SugarException {
+    LinearSum sum = literal.getLinearExpression();
+    LinearSum neg = new LinearSum(sum);
+    neg.multiply(-1);
+    String cmp = literal.getCmp();
+    if (cmp.equals("le")) {
+      return new LinearSum[] { new LinearSum(sum) };
+    } else if (cmp.equals("ge")) {
+      return new LinearSum[] { neg };
+    } else if (cmp.equals("eq")) {
+      return new LinearSum[] { new LinearSum(sum), neg };
+    }
+    throw new SugarException("Internal error " + literal);
+  }
+
+  /*
+   * Returns a new boolean literal p with the clauses p -> (S <= 0) for each S.
+   */
+  private Literal reify(LinearSum[] sums, Expression origin, List<Clause> newClauses)
+      throws SugarException {
+    BooleanVariable p = csp.newAuxBooleanVariable();
+    p.setOrigin(origin);
+    csp.add(p);
+    for (LinearSum sum : sums) {
+      for (Literal lit : split(sum, origin)) {
+        Clause newClause = new Clause();
+        newClause.setOrigin(origin);
+        newClause.add(new BooleanLiteral(p, true));
+        newClause.add(lit);
+        newClauses.add(newClause);
+      }
+    }
+    return new BooleanLiteral(p, false);
+  }
+
+  /*
+   * Splits S <= 0 into the comparisons at each digit position connected by carries.
+   */
+  private List<Literal> split(LinearSum sum, Expression origin) throws SugarException {
+    // The positions are of the smallest base among the compact variables
+    int base = 0;
+    for (IntegerVariable v : sum.getVariables()) {
+      if (v.isCompact()) {
+        base = base == 0 ? v.getBase() : Math.min(base, v.getBase());
+      }
+    }
+    List<Literal> literals = new ArrayList<Literal>();
+    if (base == 0) {
+      literals.add(new LinearLeLiteral(new LinearSum(sum)));
+      return literals;
+    }
+    List<LinearSum> positions = new ArrayList<LinearSum>();
+    positions.add(new LinearSum(0));
+    long b = sum.getB();
+    for (Map.Entry<IntegerVariable, Integer> entry : sum.getCoef().entrySet()) {
+      IntegerVariable v = entry.getKey();
+      int a = entry.getValue();
+      if (v.isCompact()) {
+        b += (long) a * v.getOffset();
+        long weight = a;
+        for (IntegerVariable digit : v.getDigits()) {
+          put(positions, base, weight, digit, sum);
+          weight *= v.getBase();
+        }
+      } else {
+        put(positions, base, a, v, sum);
+      }
+    }
+    int m = positions.size();
+    LinearSum[] sums = positions.toArray(new LinearSum[m]);
+    for (int j = 0; j < m - 1; j++) {
+      sums[j].setB((int) Math.floorMod(b, (long) base));
+      b = Math.floorDiv(b, (long) base);
+    }
+    sums[m - 1].setB(toInt(b, sum));
+    for (int j = 0; j < m; j++) {
+      LinearSum t = sums[j];
+      if (j == m - 1) {
+        literals.add(new LinearLeLiteral(t));
+        break;
+      }
+      long lo = t.getB();
+      long hi = t.getB();
+      for (Map.Entry<IntegerVariable, Integer> entry : t.getCoef().entrySet()) {
+        IntegerDomain d = entry.getKey().getDomain();
+        long a = entry.getValue();
+        lo += Math.min(a * d.getLowerBound(), a * d.getUpperBound());
+        hi += Math.max(a * d.getLowerBound(), a * d.getUpperBound());
+      }
+      // the smallest carry satisfying t <= base * carry is ceil(t / base)
+      int carryLb = toInt(-Math.floorDiv(-lo, (long) base), sum);
+      int carryUb = toInt(-Math.floorDiv(-hi, (long) base), sum);
+      if (carryLb == carryUb) {
+        if (hi > (long) base * carryLb) {
+          LinearSum le = new LinearSum(t);
+          le.setB(toInt(t.getB() - (long) base * carryLb, sum));
+          literals.add(new LinearLeLiteral(le));
+        }
+        sums[j + 1].setB(toInt((long) sums[j + 1].getB() + carryLb, sum));
+      } else {
+        IntegerVariable carry = csp.newAuxIntegerVariable(IntegerDomain.create(carryLb, carryUb));
+        carry.setOrigin(origin);
+        csp.add(carry);
+        LinearSum le = new LinearSum(t);
+        le.setA(-base, carry);
+        literals.add(new LinearLeLiteral(le));
+        sums[j + 1].setA(1, carry);
+      }
+    }
+    return literals;
+  }
+
+  /*
+   * Adds weight*v at the highest position p such that base^p divides the weight.
+   * The weight is exactly the coefficient at p when the base of v is a power of the base.
+   */
+  private static void put(List<LinearSum> positions, int base, long weight, IntegerVariable v,
+                          LinearSum sum) throws SugarException {
+    int p = 0;
+    while (weight % base == 0) {
+      weight /= base;
+      p++;
+    }
+    while (positions.size() <= p) {
+      positions.add(new LinearSum(0));
+    }
+    positions.get(p).setA(toInt(weight, sum), v);
+  }
+
+  private static int toInt(long value, LinearSum sum) throws SugarException {
+    if (value < Integer.MIN_VALUE || Integer.MAX_VALUE < value) {
+      throw new SugarException("Too large constant in the compact order encoding of " + sum);
+    }
+    return (int) value;
+  }
+}
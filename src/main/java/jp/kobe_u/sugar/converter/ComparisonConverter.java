@@ -345,11 +345,11 @@ public class ComparisonConverter {
   }
 
   protected LinearSum convertFormula(Expression x) throws SugarException {
-    if (Converter.hooks != null) {
+    if (converter.config.hooks != null) {
       Expression x1;
       do {
         x1 = x;
-        for (ConverterHook hook : Converter.hooks) {
+        for (ConverterHook hook : converter.config.hooks) {
           x = hook.convertFunction(converter, x);
         }
       } while (!x1.equals(x));
@@ -402,7 +402,7 @@ public class ComparisonConverter {
         }
         */
     IntegerVariable var = e.getLargestDomainVariable();
-    if (!e.isDomainLargerThanExcept(Converter.MAX_LINEARSUM_SIZE, var)) {
+    if (!e.isDomainLargerThanExcept(converter.config.maxLinearSumSize, var)) {
       return e;
     }
     IntegerVariable[] vs = e.getVariablesSorted();
@@ -422,7 +422,7 @@ public class ComparisonConverter {
         if (factor > 1) {
             e1.divide(factor);
         }
-        IntegerVariable v = new IntegerVariable(e1.getDomain());
+        IntegerVariable v = csp.newAuxIntegerVariable(e1.getDomain());
         v.setComment(v.getName() + " : " + e1);
         csp.add(v);
         Expression x = Expression.create(v.getName());
@@ -441,7 +441,7 @@ public class ComparisonConverter {
       e1.divide(factor);
     }
     // v == (a[2]*vs[2] + a[3]*vs[3] + ... + a[n]*vs[n]) / factor
-    IntegerVariable v = new IntegerVariable(e1.getDomain());
+    IntegerVariable v = csp.newAuxIntegerVariable(e1.getDomain());
     v.setComment(v.getName() + " : " + e1);
     csp.add(v);
     Expression x = Expression.create(v.getName());
@@ -461,19 +461,19 @@ public class ComparisonConverter {
   }
 
   private LinearSum simplifyLinearExpression(LinearSum e, String cmp, boolean first) throws SugarException {
-    if (Converter.ESTIMATE_SATSIZE) {
+    if (converter.config.estimateSatSize) {
       // seems bad in general
-      if (e.satSizeLE(Converter.MAX_LINEARSUM_SIZE)) {
+      if (e.satSizeLE(converter.config.maxLinearSumSize)) {
         return e;
       }
     } else {
-      if (e.size() <= 1 || !e.isDomainLargerThan(Converter.MAX_LINEARSUM_SIZE)) {
+      if (e.size() <= 1 || !e.isDomainLargerThan(converter.config.maxLinearSumSize)) {
         // if (e.size() <= 1 || ! e.isDomainLargerThanExcept(MAX_LINEARSUM_SIZE)) {
         return e;
       }
     }
     int b = e.getB();
-    LinearSum[] es = e.split(first ? 3 : Converter.SPLITS);
+    LinearSum[] es = e.split(first ? 3 : converter.config.splits);
     e = new LinearSum(b);
     for (int i = 0; i < es.length; i++) {
       LinearSum ei = es[i];
@@ -485,16 +485,16 @@ public class ComparisonConverter {
       ei = simplifyLinearExpression(ei, "eq", false);
       // System.out.println(es[i] + " ==> " + ei);
       if (ei.size() > 1) {
-        IntegerVariable v = new IntegerVariable(ei.getDomain());
+        IntegerVariable v = csp.newAuxIntegerVariable(ei.getDomain());
         v.setComment(v.getName() + " : " + ei);
         csp.add(v);
         Expression x = Expression.create(v.getName());
         Expression ex = ei.toExpression();
         Expression eq;
-        if (!Converter.USE_EQ && !Converter.EQUIV_TRANSLATION && cmp.equals("ge")) {
+        if (!converter.config.useEq && !converter.config.equivTranslation && cmp.equals("ge")) {
           eq = x.le(ex);
           eq.setComment(v.getName() + " <= " + ex);
-        } else if (!Converter.USE_EQ && !Converter.EQUIV_TRANSLATION && cmp.equals("le")) {
+        } else if (!converter.config.useEq && !converter.config.equivTranslation && cmp.equals("le")) {
           eq = x.ge(ex);
           eq.setComment(v.getName() + " >= " + ex);
         } else {
@@ -513,11 +513,11 @@ public class ComparisonConverter {
   }
 
   private LinearSum reduceLinearExpression(LinearSum e, String cmp) throws SugarException {
-    if (e.size() <= Converter.MAX_ARITY) {
+    if (e.size() <= converter.config.maxArity) {
       return e;
     }
     int b = e.getB();
-    LinearSum[] es = e.split(Converter.MAX_ARITY);
+    LinearSum[] es = e.split(converter.config.maxArity);
     e = new LinearSum(b);
     for (int i = 0; i < es.length; i++) {
       LinearSum ei = es[i];
@@ -528,16 +528,16 @@ public class ComparisonConverter {
       ei = reduceLinearExpression(ei, "eq");
       // System.out.println(es[i] + " ==> " + ei);
       if (ei.size() > 1) {
-        IntegerVariable v = new IntegerVariable(ei.getDomain());
+        IntegerVariable v = csp.newAuxIntegerVariable(ei.getDomain());
         v.setComment(v.getName() + " : " + ei);
         csp.add(v);
         Expression x = Expression.create(v.getName());
         Expression ex = ei.toExpression();
         Expression eq;
-        if (!Converter.USE_EQ && cmp.equals("ge")) {
+        if (!converter.config.useEq && cmp.equals("ge")) {
           eq = x.le(ex);
           eq.setComment(v.getName() + " <= " + ex);
-        } else if (!Converter.USE_EQ && cmp.equals("le")) {
+        } else if (!converter.config.useEq && cmp.equals("le")) {
           eq = x.ge(ex);
           eq.setComment(v.getName() + " >= " + ex);
         } else {
@@ -559,10 +559,10 @@ public class ComparisonConverter {
   private LinearSum reduceArity(LinearSum e, String cmp) throws SugarException {
     LinearSum[] es = e.splitPbPart();
     e = es[0];
-    if (Converter.REDUCE_ARITY) {
-      if (Converter.MAX_ARITY > 0) {
+    if (converter.config.reduceArity) {
+      if (converter.config.maxArity > 0) {
         e = reduceLinearExpression(e, cmp);
-      } else if (e.size() > 3 && e.isDomainLargerThanExcept(Converter.MAX_LINEARSUM_SIZE)) {
+      } else if (e.size() > 3 && e.isDomainLargerThanExcept(converter.config.maxLinearSumSize)) {
         e = simplifyLinearExpression(e, cmp, true);
       }
     }
@@ -612,8 +612,17 @@ public class ComparisonConverter {
     */
 
   public List<Clause> convertComp(Expression x, Expression y, String cmp) throws SugarException {
+    return convertComp(x, y, cmp, false);
+  }
+
+  /*
+   * topLevel is true when the literal of the comparison is added as a unit clause of the CSP.
+   */
+  public List<Clause> convertComp(Expression x, Expression y, String cmp, boolean topLevel)
+      throws SugarException {
     LinearSum e = convertFormula(x.sub(y));
     e.factorize();
+    e = converter.cardinalityConverter.convert(e, cmp, topLevel);
     e = reduceArity(e, cmp);
     Literal lit = null;
     if (cmp.equals("eq")) {
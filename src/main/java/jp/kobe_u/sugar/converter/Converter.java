@@ -6,8 +6,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import jp.kobe_u.sugar.Logger;
+import jp.kobe_u.sugar.SugarConfig;
 import jp.kobe_u.sugar.SugarException;
-import jp.kobe_u.sugar.SugarMain;
 import jp.kobe_u.sugar.csp.BooleanLiteral;
 import jp.kobe_u.sugar.csp.BooleanVariable;
 import jp.kobe_u.sugar.csp.CSP;
@@ -44,16 +44,24 @@ public class Converter {
   public static boolean NORMALIZE_LINEARSUM = true;
   public static boolean DECOMPOSE_RELATION = false;
   public static boolean DECOMPOSE_ALLDIFFERENT = true;
+  public static GlobalConverter.AllDifferentEncoding ALLDIFFERENT_ENCODING =
+      GlobalConverter.AllDifferentEncoding.PAIRWISE;
   public static boolean DECOMPOSE_WEIGHTEDSUM = true;
   public static boolean DECOMPOSE_CUMULATIVE = true;
+  public static GlobalConverter.CumulativeEncoding CUMULATIVE_ENCODING =
+      GlobalConverter.CumulativeEncoding.TIME;
   public static boolean DECOMPOSE_ELEMENT = true;
   public static boolean DECOMPOSE_DISJUNCTIVE = true;
+  public static GlobalConverter.DisjunctiveEncoding DISJUNCTIVE_ENCODING =
+      GlobalConverter.DisjunctiveEncoding.PAIRWISE;
+  public static boolean DISJUNCTIVE_TRANSITIVITY = false;
   public static boolean DECOMPOSE_LEX_LESS = true;
   public static boolean DECOMPOSE_LEX_LESSEQ = true;
   public static boolean DECOMPOSE_NVALUE = true;
   public static boolean DECOMPOSE_COUNT = true;
   public static boolean DECOMPOSE_GLOBAL_CARDINALITY = true;
   public static boolean DECOMPOSE_GLOBAL_CARDINALITY_WITH_COSTS = true;
+  public static boolean EQUALITY_LITERALS = true;
   public static boolean REPLACE_ARGUMENTS = false;
   public static boolean REDUCE_ARITY = true;
   public static int MAX_ARITY = 0;
@@ -65,21 +73,31 @@ public class Converter {
   public static boolean HOLD_CONSTRAINTS = false;
 
   public static List<ConverterHook> hooks = null;
+  public final SugarConfig config;
   public CSP csp;
   public DefinitionConverter definitionConverter;
   public ComparisonConverter comparisonConverter;
   public GlobalConverter globalConverter;
+  public CardinalityConverter cardinalityConverter;
   public ExpressionOptimizer expressionOptimizer;
   private List<Expression> extra;
+  private List<Expression> extraOrigins;
   private Map<Expression, IntegerVariable> equivMap;
 
   public Converter(CSP csp) {
+    this(csp, new SugarConfig());
+  }
+
+  public Converter(CSP csp, SugarConfig config) {
     this.csp = csp;
+    this.config = config;
     definitionConverter = new DefinitionConverter(this);
     globalConverter = new GlobalConverter(this);
     comparisonConverter = new ComparisonConverter(this);
+    cardinalityConverter = new CardinalityConverter(this);
     expressionOptimizer = new ExpressionOptimizer(this);
     extra = new ArrayList<Expression>();
+    extraOrigins = new ArrayList<Expression>();
     equivMap = new EquivMap();
   }
 
@@ -106,6 +124,22 @@ public class Converter {
 
   protected void addExtra(Expression x) {
     extra.add(x);
+    extraOrigins.add(csp.getOrigin());
+  }
+
+  /*
+   * Converts the first extra expression
+   * on behalf of the top-level expression which queued it.
+   */
+  private void convertFirstExtra() throws SugarException {
+    Expression x = extra.remove(0);
+    Expression origin = csp.getOrigin();
+    csp.setOrigin(extraOrigins.remove(0));
+    try {
+      convertExpression(x);
+    } finally {
+      csp.setOrigin(origin);
+    }
   }
 
   protected IntegerVariable getEquivalence(Expression x) {
@@ -114,11 +148,19 @@ public class Converter {
 
   protected void addEquivalence(IntegerVariable v, Expression x) {
     equivMap.put(x, v);
-    if (SugarMain.debug >= 2) {
+    if (config.debug >= 2) {
       System.out.println("Equivalence " + v + " = " + x);
     }
   }
 
+  /**
+   * Forgets the auxiliary variables cached for the converted formulas.
+   * This must be called when variables are removed from the CSP.
+   */
+  public void clearEquivalence() {
+    equivMap.clear();
+  }
+
   public void syntaxError(String s) throws SugarException {
     throw new SugarException("Syntax error " + s);
   }
@@ -139,7 +181,7 @@ public class Converter {
 
   public IntegerVariable newIntegerVariable(IntegerDomain d, Expression x)
       throws SugarException {
-    IntegerVariable v = new IntegerVariable(d);
+    IntegerVariable v = csp.newAuxIntegerVariable(d);
     csp.add(v);
     v.setComment(v.getName() + " : " + x.toString());
     return v;
@@ -180,13 +222,13 @@ public class Converter {
         } else if (clauses0.size() == 1) {
           clause.addAll(clauses0.get(0).getLiterals());
         } else {
-          BooleanVariable v = new BooleanVariable();
+          BooleanVariable v = csp.newAuxBooleanVariable();
           csp.add(v);
           // v.setComment(seq.toString());
           BooleanLiteral v0 = new BooleanLiteral(v, false);
           BooleanLiteral v1 = new BooleanLiteral(v, true);
           clause.add(v0);
-          if (EQUIV_TRANSLATION) {
+          if (config.equivTranslation) {
             for (Clause clause0 : clauses0) {
               for (Literal lit : clause0.getLiterals()) {
                 Clause cl = new Clause(v0);
@@ -258,7 +300,16 @@ public class Converter {
   }
 
   public Expression convertComparison(Sequence seq, boolean negative, List<Clause> clauses) throws SugarException {
-    if (NORMALIZE_LINEARSUM) {
+    return convertComparison(seq, negative, clauses, false);
+  }
+
+  /*
+   * topLevel is true when seq is equivalent to a constraint of the CSP itself,
+   * so that its literal becomes a unit clause.
+   */
+  private Expression convertComparison(Sequence seq, boolean negative, List<Clause> clauses,
+                                       boolean topLevel) throws SugarException {
+    if (config.normalizeLinearSum) {
       if (seq.isSequence(Expression.EQ)) {
         return (seq.get(1).le(seq.get(2))).and(seq.get(1).ge(seq.get(2)));
       }
@@ -269,27 +320,29 @@ public class Converter {
     if ((seq.isSequence(Expression.EQ) && !negative)
         || (seq.isSequence(Expression.NE) && negative)) {
       checkArity(seq, 2);
-      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "eq"));
+      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "eq", topLevel));
     } else if ((seq.isSequence(Expression.NE) && !negative)
         || (seq.isSequence(Expression.EQ) && negative)) {
       checkArity(seq, 2);
-      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "ne"));
+      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "ne", topLevel));
     } else if ((seq.isSequence(Expression.LE) && !negative)
         || (seq.isSequence(Expression.GT) && negative)) {
       checkArity(seq, 2);
-      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "le"));
+      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "le", topLevel));
     } else if ((seq.isSequence(Expression.LT) && !negative)
         || (seq.isSequence(Expression.GE) && negative)) {
       checkArity(seq, 2);
-      clauses.addAll(comparisonConverter.convertComp(seq.get(1).add(1), seq.get(2), "le"));
+      clauses.addAll(comparisonConverter.convertComp(seq.get(1).add(1), seq.get(2), "le",
+          topLevel));
     } else if ((seq.isSequence(Expression.GE) && !negative)
         || (seq.isSequence(Expression.LT) && negative)) {
       checkArity(seq, 2);
-      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "ge"));
+      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "ge", topLevel));
     } else if ((seq.isSequence(Expression.GT) && !negative)
         || (seq.isSequence(Expression.LE) && negative)) {
       checkArity(seq, 2);
-      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2).add(1), "ge"));
+      clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2).add(1), "ge",
+          topLevel));
     } else {
       syntaxError(seq);
     }
@@ -331,17 +384,26 @@ public class Converter {
     */
 
   public Expression convertGlobal(Sequence seq, boolean negative, List<Clause> clauses) throws SugarException {
+    return convertGlobal(seq, negative, clauses, false);
+  }
+
+  /*
+   * topLevel is true when seq is equivalent to a constraint of the CSP itself,
+   * that is, when the clauses of seq are not combined with other ones.
+   */
+  private Expression convertGlobal(Sequence seq, boolean negative, List<Clause> clauses,
+                                   boolean topLevel) throws SugarException {
     Expression x = null;
     if (seq.isSequence(Expression.ALLDIFFERENT)) {
-      x = globalConverter.convertAllDifferent(seq);
+      x = globalConverter.convertAllDifferent(seq, negative);
     } else if (seq.isSequence(Expression.WEIGHTEDSUM)) {
       x = globalConverter.convertWeightedSum(seq);
     } else if (seq.isSequence(Expression.CUMULATIVE)) {
-      x = globalConverter.convertCumulative(seq);
+      x = globalConverter.convertCumulative(seq, negative);
     } else if (seq.isSequence(Expression.ELEMENT)) {
       x = globalConverter.convertElement(seq);
     } else if (seq.isSequence(Expression.DISJUNCTIVE)) {
-      x = globalConverter.convertDisjunctive(seq);
+      x = globalConverter.convertDisjunctive(seq, negative, topLevel);
     } else if (seq.isSequence(Expression.LEX_LESS)) {
       x = globalConverter.convertLex_less(seq);
     } else if (seq.isSequence(Expression.LEX_LESSEQ)) {
@@ -361,11 +423,16 @@ public class Converter {
   }
 
   private List<Clause> convertConstraint(Expression x, boolean negative) throws SugarException {
+    return convertConstraint(x, negative, false);
+  }
+
+  private List<Clause> convertConstraint(Expression x, boolean negative, boolean topLevel)
+      throws SugarException {
     List<Clause> clauses = new ArrayList<Clause>();
     while (true) {
-      if (hooks != null) {
+      if (config.hooks != null) {
         Expression x1 = null;
-        for (ConverterHook hook : hooks) {
+        for (ConverterHook hook : config.hooks) {
           x1 = hook.convertConstraint(this, x, negative, clauses);
           if (x1 == null) {
             break;
@@ -381,7 +448,7 @@ public class Converter {
         break;
       } else {
         Sequence seq = (Sequence) x;
-        if (OPT_PEEPHOLE) {
+        if (config.optPeephole) {
           Expression y = expressionOptimizer.peephole(seq, negative);
           if (y != null) {
             x = y;
@@ -397,7 +464,7 @@ public class Converter {
         } else if (definitionConverter.isPredicate(seq)) {
           x = definitionConverter.convertPredicate(seq);
         } else if (definitionConverter.isRelation(seq)) {
-          if (DECOMPOSE_RELATION) {
+          if (config.decomposeRelation) {
             // TODO Bug
             RelationLiteral lit = (RelationLiteral) definitionConverter.convertRelation(seq, negative);
             List<Expression> e = new ArrayList<Expression>();
@@ -431,16 +498,16 @@ public class Converter {
             break;
           }
         } else if (Expression.isComparison(seq)) {
-          if (!LINEARIZE) {
+          if (!config.linearize) {
             x = seq.hold();
             continue;
           }
-          x = convertComparison(seq, negative, clauses);
+          x = convertComparison(seq, negative, clauses, topLevel);
           if (x == null) {
             break;
           }
         } else if (Expression.isGlobalConstraint(seq)) {
-          x = convertGlobal(seq, negative, clauses);
+          x = convertGlobal(seq, negative, clauses, topLevel);
           if (x == null) {
             break;
           }
@@ -458,7 +525,7 @@ public class Converter {
   }
 
   protected void convertConstraint(Expression x) throws SugarException {
-    List<Clause> clauses = convertConstraint(x, false);
+    List<Clause> clauses = convertConstraint(x, false, true);
     // clauses = simplify(clauses);
     if (clauses.size() > 0) {
       if (x.getComment() == null) {
@@ -469,7 +536,7 @@ public class Converter {
     }
     for (Clause clause : clauses) {
       csp.add(clause);
-      if (INCREMENTAL_PROPAGATION) {
+      if (config.incrementalPropagation) {
         clause.propagate();
       }
     }
@@ -500,7 +567,7 @@ public class Converter {
   }
 
   public void convertExpression(Expression x) throws SugarException {
-    if (SugarMain.debug >= 2) {
+    if (config.debug >= 2) {
       System.out.println("Converting " + x);
     }
     if (x.isSequence(Expression.DOMAIN_DEFINITION)) {
@@ -522,7 +589,7 @@ public class Converter {
     } else if (x.isSequence(Expression.GROUPS_DEFINITION)) {
       definitionConverter.convertGroupsDefinition((Sequence) x);
     } else {
-      if (HOLD_CONSTRAINTS) {
+      if (config.holdConstraints) {
         x = convertHold(x);
         convertConstraint(Expression.create(Expression.HOLD, x));
       } else {
@@ -532,10 +599,25 @@ public class Converter {
   }
 
   public void convert(Expression x) throws SugarException {
-    convertExpression(x);
+    Expression origin = csp.getOrigin();
+    csp.setOrigin(x);
+    try {
+      convertExpression(x);
+      convertExtra();
+    } finally {
+      csp.setOrigin(origin);
+    }
+  }
+
+  /**
+   * Converts the extra expressions queued during the conversion,
+   * e.g. by {@link #toIntegerVariable(Expression)}.
+   *
+   * @throws SugarException when the conversion fails
+   */
+  public void convertExtra() throws SugarException {
     while (extra.size() > 0) {
-      Expression x1 = extra.remove(0);
-      convertExpression(x1);
+      convertFirstExtra();
     }
   }
 
@@ -544,7 +626,9 @@ public class Converter {
     int percent = 10;
     int count = 0;
     for (Expression x : expressions) {
+      csp.setOrigin(x);
       convertExpression(x);
+      csp.setOrigin(null);
       count++;
       if ((100 * count) / n >= percent) {
         Logger.fine("converted " + count + " (" + percent + "%) expressions");
@@ -552,8 +636,7 @@ public class Converter {
       }
     }
     while (extra.size() > 0) {
-      Expression x = extra.remove(0);
-      convertExpression(x);
+      convertFirstExtra();
       count++;
       if (count % 1000 == 0) {
         Logger.fine("converted " + count + " extra expressions, remaining " + extra.size());
@@ -577,11 +660,11 @@ public class Converter {
     csp.setClauses(new ArrayList<Clause>());
     for (Clause clause : clauses) {
       Clause newClause = reduce(clause);
+      newClause.setOrigin(clause.getOrigin());
       csp.add(newClause);
     }
     while (extra.size() > 0) {
-      Expression x = extra.remove(0);
-      convertExpression(x);
+      convertFirstExtra();
     }
   }
 
@@ -598,7 +681,7 @@ public class Converter {
      */
     @Override
     protected boolean removeEldestEntry(Entry<Expression, IntegerVariable> eldest) {
-      return size() > Converter.MAX_EQUIVMAP_SIZE;
+      return size() > config.maxEquivMapSize;
     }
 
   }
@@ -144,6 +144,30 @@ public class DefinitionConverter {
     intMap.put(name, v);
   }
 
+  /**
+   * Adds an integer variable created outside of this converter
+   * as if it were defined by an int definition.
+   *
+   * @param v the integer variable
+   * @throws SugarException when the variable cannot be added to the CSP
+   */
+  public void addIntegerVariable(IntegerVariable v) throws SugarException {
+    csp.add(v);
+    intMap.put(v.getName(), v);
+  }
+
+  /**
+   * Adds a boolean variable created outside of this converter
+   * as if it were defined by a bool definition.
+   *
+   * @param v the boolean variable
+   * @throws SugarException when the variable cannot be added to the CSP
+   */
+  public void addBooleanVariable(BooleanVariable v) throws SugarException {
+    csp.add(v);
+    boolMap.put(v.getName(), v);
+  }
+
   protected BooleanVariable toBool(String name) {
     return boolMap.get(name);
   }
@@ -281,7 +281,7 @@ public class ExpressionOptimizer {
     if (x != null) {
       return x;
     }
-    if (Converter.OPT_PEEPHOLE_ABS) {
+    if (converter.config.optPeepholeAbs) {
       x = peepholeAbs(seq, negative);
       return x;
     }
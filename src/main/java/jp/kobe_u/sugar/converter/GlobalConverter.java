@@ -1,11 +1,16 @@
 package jp.kobe_u.sugar.converter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.csp.IntegerDomain;
 import jp.kobe_u.sugar.csp.IntegerVariable;
 import jp.kobe_u.sugar.csp.LinearSum;
+import jp.kobe_u.sugar.encoder.Encoding;
 import jp.kobe_u.sugar.expression.Expression;
 import jp.kobe_u.sugar.expression.Sequence;
 
@@ -13,8 +18,47 @@ import jp.kobe_u.sugar.expression.Sequence;
  * @author Naoyuki Tamura (tamura@kobe-u.ac.jp)
  */
 public class GlobalConverter {
+  /**
+   * Encodings of alldifferent.
+   * PAIRWISE decomposes it into the pairwise ne constraints.
+   * The others introduce the 0-1 variables e(x,v) meaning x = v for each value v,
+   * and encode the at-most-one constraint of e(x1,v), ..., e(xn,v)
+   * by the ladder, commander, or product encoding respectively.
+   */
+  public enum AllDifferentEncoding {
+    PAIRWISE, LADDER, COMMANDER, PRODUCT
+  }
+
+  /**
+   * Encodings of cumulative.
+   * TIME checks the resource at every time point of the horizon.
+   * TASK checks it only at the start time of each task,
+   * by the 0-1 variables r(i,j) meaning the task i is running at the start of the task j.
+   * AUTO chooses TASK only when the horizon is longer than the number of tasks
+   * and all start times are variables of the compact order or log encoding,
+   * since r(i,j) is linked to the start times by comparisons which are large in the order encoding.
+   */
+  public enum CumulativeEncoding {
+    AUTO, TIME, TASK
+  }
+
+  /**
+   * Encodings of disjunctive.
+   * PAIRWISE decomposes it into the disjunctions oi+di&lt;=oj || oj+dj&lt;=oi.
+   * PRECEDENCE introduces the 0-1 variable p(i,j) for each pair of tasks,
+   * linked by p(i,j)=1 -&gt; oi+di&lt;=oj and p(i,j)=0 -&gt; oj+dj&lt;=oi.
+   * The variable is shared by all disjunctive constraints having the same pair of tasks.
+   * PRECEDENCE applies only to disjunctive constraints of the CSP itself,
+   * and the nested ones are encoded by PAIRWISE.
+   */
+  public enum DisjunctiveEncoding {
+    PAIRWISE, PRECEDENCE
+  }
+
   private Converter converter;
 
+  private Map<String, IntegerVariable> precedences = new HashMap<String, IntegerVariable>();
+
   public GlobalConverter(Converter converter) {
     this.converter = converter;
   }
@@ -29,6 +73,11 @@ public class GlobalConverter {
 
   protected Expression convertAllDifferent(Sequence seq)
       throws SugarException {
+    return convertAllDifferent(seq, false);
+  }
+
+  protected Expression convertAllDifferent(Sequence seq, boolean negative)
+      throws SugarException {
     if (seq.length() == 2 && seq.get(1).isSequence()) {
             /*
             List<Expression> list = new ArrayList<Expression>();
@@ -47,7 +96,7 @@ public class GlobalConverter {
     }
     Sequence seq1 = (Sequence) seq.get(1);
     int n = seq1.length();
-    if (Converter.REPLACE_ARGUMENTS) {
+    if (converter.config.replaceArguments) {
       List<Expression> xs = new ArrayList<Expression>();
       for (Expression x : seq1.getExpressions()) {
         if (x.isAtom()) {
@@ -61,8 +110,12 @@ public class GlobalConverter {
       seq = (Sequence) Expression.create(Expression.ALLDIFFERENT, seq1);
     }
     Expression x;
-    if (!Converter.DECOMPOSE_ALLDIFFERENT) {
+    if (!converter.config.decomposeAllDifferent) {
       x = seq.hold();
+    } else if (converter.config.allDifferentEncoding != AllDifferentEncoding.PAIRWISE
+        && !negative) {
+      // auxiliary variables cannot be negated
+      x = convertAllDifferentByValues(seq1);
     } else {
       List<Expression> xs = new ArrayList<Expression>();
       xs.add(Expression.AND);
@@ -73,7 +126,7 @@ public class GlobalConverter {
       }
       x = Expression.create(xs);
     }
-    if (Converter.HINT_ALLDIFF_PIGEON) {
+    if (converter.config.hintAllDiffPigeon) {
       int lb = Integer.MAX_VALUE;
       int ub = Integer.MIN_VALUE;
       for (Expression y : seq1.getExpressions()) {
@@ -95,12 +148,154 @@ public class GlobalConverter {
     return x;
   }
 
+  private Expression newBit(String comment) throws SugarException {
+    IntegerVariable v = converter.csp.newAuxIntegerVariable(IntegerDomain.create(0, 1));
+    converter.csp.add(v);
+    v.setComment(v.getName() + " : " + comment);
+    return Expression.create(v.getName());
+  }
+
+  /*
+   * Returns the shared 0-1 variable equivalent to x = val,
+   * or null when x is not an integer variable or val is not an integer.
+   * ZERO is returned when val is not in the domain of x.
+   */
+  private Expression equality(Expression x, Expression val) throws SugarException {
+    if (!converter.config.equalityLiterals || !x.isString() || !val.isInteger()) {
+      return null;
+    }
+    IntegerVariable v = converter.csp.getIntegerVariable(x.stringValue());
+    if (v == null) {
+      return null;
+    }
+    IntegerVariable e = converter.csp.getEquality(v, val.integerValue());
+    return e == null ? Expression.ZERO : Expression.create(e.getName());
+  }
+
+  /*
+   * Decomposes alldifferent into at-most-one constraints for each value
+   * of the shared 0-1 variables e(x,v) meaning x = v.
+   * When the variables take all the values, the at-least-one constraints are also added.
+   */
+  private Expression convertAllDifferentByValues(Sequence seq1) throws SugarException {
+    Map<Integer, List<Expression>> bits = new TreeMap<Integer, List<Expression>>();
+    List<Expression> xs = new ArrayList<Expression>();
+    xs.add(Expression.AND);
+    List<IntegerVariable> vs = new ArrayList<IntegerVariable>();
+    for (Expression y : seq1.getExpressions()) {
+      IntegerVariable v = toIntegerVariable(y);
+      vs.add(v);
+      Iterator<Integer> iter = v.getDomain().values();
+      while (iter.hasNext()) {
+        int value = iter.next();
+        if (!bits.containsKey(value)) {
+          bits.put(value, new ArrayList<Expression>());
+        }
+      }
+    }
+    boolean exactlyOne = bits.size() == vs.size();
+    for (IntegerVariable v : vs) {
+      Iterator<Integer> iter = v.getDomain().values();
+      while (iter.hasNext()) {
+        int value = iter.next();
+        IntegerVariable e = converter.csp.getEquality(v, value);
+        bits.get(value).add(Expression.create(e.getName()));
+      }
+    }
+    for (List<Expression> es : bits.values()) {
+      atMostOne(es, xs);
+      if (exactlyOne) {
+        List<Expression> alo = new ArrayList<Expression>();
+        alo.add(Expression.OR);
+        for (Expression e : es) {
+          alo.add(e.ge(1));
+        }
+        xs.add(Expression.create(alo));
+      }
+    }
+    return Expression.create(xs);
+  }
+
+  /*
+   * Adds the constraints that at most one of the 0-1 variables es is one.
+   */
+  private void atMostOne(List<Expression> es, List<Expression> xs) throws SugarException {
+    int n = es.size();
+    if (n <= 4) {
+      for (int i = 0; i < n; i++) {
+        for (int j = i + 1; j < n; j++) {
+          xs.add(es.get(i).le(0).or(es.get(j).le(0)));
+        }
+      }
+      return;
+    }
+    switch (converter.config.allDifferentEncoding) {
+      case LADDER:
+        // s(i) means one of es(0), ..., es(i) is one
+        Expression s0 = null;
+        for (int i = 0; i < n; i++) {
+          Expression e = es.get(i);
+          Expression s = i < n - 1 ? newBit("ladder") : null;
+          if (s != null) {
+            xs.add(e.le(0).or(s.ge(1)));
+          }
+          if (s0 != null) {
+            xs.add(s0.le(0).or(e.le(0)));
+            if (s != null) {
+              xs.add(s0.le(0).or(s.ge(1)));
+            }
+          }
+          s0 = s;
+        }
+        break;
+      case COMMANDER: {
+        // groups of three variables with their commanders
+        List<Expression> cs = new ArrayList<Expression>();
+        for (int i = 0; i < n; i += 3) {
+          List<Expression> group = es.subList(i, Math.min(i + 3, n));
+          atMostOne(group, xs);
+          Expression c = newBit("commander");
+          for (Expression e : group) {
+            xs.add(e.le(0).or(c.ge(1)));
+          }
+          cs.add(c);
+        }
+        atMostOne(cs, xs);
+        break;
+      }
+      case PRODUCT: {
+        // es(i*q+j) is placed at the row i and the column j
+        int p = (int) Math.ceil(Math.sqrt(n));
+        int q = (n + p - 1) / p;
+        List<Expression> rows = new ArrayList<Expression>();
+        List<Expression> cols = new ArrayList<Expression>();
+        for (int i = 0; i < p; i++) {
+          rows.add(newBit("row"));
+        }
+        for (int j = 0; j < q; j++) {
+          cols.add(newBit("column"));
+        }
+        for (int k = 0; k < n; k++) {
+          Expression e = es.get(k);
+          xs.add(e.le(0).or(rows.get(k / q).ge(1)));
+          xs.add(e.le(0).or(cols.get(k % q).ge(1)));
+        }
+        atMostOne(rows, xs);
+        atMostOne(cols, xs);
+        break;
+      }
+      default:
+        throw new SugarException("Unknown encoding of alldifferent "
+            + converter.config.allDifferentEncoding);
+    }
+  }
+
   protected Expression convertWeightedSum(Sequence seq) throws SugarException {
     converter.checkArity(seq, 3);
     if (!seq.get(1).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_WEIGHTEDSUM) {
+    if (!converter.config.decomposeWeightedSum) {
       return seq.hold();
     }
     Sequence seq1 = (Sequence) seq.get(1);
@@ -132,11 +327,16 @@ public class GlobalConverter {
   }
 
   protected Expression convertCumulative(Sequence seq) throws SugarException {
+    return convertCumulative(seq, false);
+  }
+
+  protected Expression convertCumulative(Sequence seq, boolean negative)
+      throws SugarException {
     converter.checkArity(seq, 2);
     if (!seq.get(1).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_CUMULATIVE) {
+    if (!converter.config.decomposeCumulative) {
       return seq.hold();
     }
     Sequence seq1 = (Sequence) seq.get(1);
@@ -175,6 +375,16 @@ public class GlobalConverter {
       lb = Math.min(lb, d1.getLowerBound());
       ub = Math.max(ub, d2.getUpperBound() - 1);
     }
+    CumulativeEncoding encoding = converter.config.cumulativeEncoding;
+    if (encoding == CumulativeEncoding.AUTO) {
+      encoding = (long) ub - lb + 1 > n && isCompactlyEncoded(t0)
+          ? CumulativeEncoding.TASK : CumulativeEncoding.TIME;
+    }
+    if (encoding == CumulativeEncoding.TASK && !negative) {
+      // auxiliary variables cannot be negated
+      convertCumulativeByTasks(seq1, t0, t1, x2, xs);
+      return Expression.create(xs);
+    }
     for (int value = lb; value <= ub; value++) {
       Expression t = Expression.create(value);
       List<Expression> sum = new ArrayList<Expression>();
@@ -193,6 +403,68 @@ public class GlobalConverter {
     return x;
   }
 
+  /*
+   * Returns true when all xs are integer variables not in the order encoding.
+   */
+  private boolean isCompactlyEncoded(Expression[] xs) {
+    for (Expression x : xs) {
+      if (!x.isString()) {
+        return false;
+      }
+      IntegerVariable v = converter.csp.getIntegerVariable(x.stringValue());
+      if (v == null || v.getEncoding() == Encoding.ORDER) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Adds the constraints that the resource is not exceeded at the start time of each task j
+   * to xs, which are sum(height(i) * r(i,j)) + height(j) <= limit for the tasks i other than j.
+   * r(i,j) is only bounded below by t0(i) <= t0(j) < t1(i) -> r(i,j),
+   * and omitted when the task i cannot be running at the start of the task j.
+   */
+  private void convertCumulativeByTasks(Sequence seq1, Expression[] t0, Expression[] t1,
+                                        Expression limit, List<Expression> xs)
+      throws SugarException {
+    int n = seq1.length();
+    IntegerDomain[] d0 = new IntegerDomain[n];
+    IntegerDomain[] d1 = new IntegerDomain[n];
+    for (int i = 0; i < n; i++) {
+      d0[i] = convertFormula(t0[i]).getDomain();
+      d1[i] = convertFormula(t1[i]).getDomain();
+    }
+    for (int j = 0; j < n; j++) {
+      Expression height = ((Sequence) seq1.get(j)).get(3);
+      if (height.isInteger() && height.integerValue() <= 0) {
+        continue;
+      }
+      List<Expression> sum = new ArrayList<Expression>();
+      sum.add(Expression.ADD);
+      sum.add(height);
+      for (int i = 0; i < n; i++) {
+        Expression height1 = ((Sequence) seq1.get(i)).get(3);
+        if (i == j || height1.isInteger() && height1.integerValue() == 0) {
+          continue;
+        }
+        if (d0[i].getLowerBound() > d0[j].getUpperBound()
+            || d1[i].getUpperBound() <= d0[j].getLowerBound()) {
+          continue;
+        }
+        Expression r = newBit("running " + i + " at start " + j);
+        xs.add((t0[i].gt(t0[j])).or(t1[i].le(t0[j])).or(r.ge(1)));
+        sum.add(height1.mul(r));
+      }
+      Expression x = Expression.create(sum).le(limit);
+      if (convertFormula(t1[j].sub(t0[j])).getDomain().getLowerBound() <= 0) {
+        // a task of zero duration is not running at its start
+        x = (t1[j].le(t0[j])).or(x);
+      }
+      xs.add(x);
+    }
+  }
+
   protected Expression convertElement(Sequence seq) throws SugarException {
     if (!seq.isSequence(3) && !seq.isSequence(4)) {
       converter.syntaxError(seq);
@@ -200,7 +472,7 @@ public class GlobalConverter {
     if (!seq.get(2).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_ELEMENT) {
+    if (!converter.config.decomposeElement) {
       return seq.hold();
     }
     Expression x1 = seq.get(1);
@@ -220,20 +492,39 @@ public class GlobalConverter {
     xs.add(x1.le(Expression.create(n)));
     for (int i = 0; i < n; i++) {
       Expression x = Expression.create(op, seq2.get(i), x3);
-      xs.add((x1.eq(Expression.create(i + 1))).imp(x));
+      Expression e = equality(x1, Expression.create(i + 1));
+      if (e == null) {
+        xs.add((x1.eq(Expression.create(i + 1))).imp(x));
+      } else {
+        xs.add(e.le(0).or(x));
+      }
     }
     Expression x = Expression.create(xs);
     return x;
   }
 
   protected Expression convertDisjunctive(Sequence seq) throws SugarException {
+    return convertDisjunctive(seq, false);
+  }
+
+  protected Expression convertDisjunctive(Sequence seq, boolean negative)
+      throws SugarException {
+    return convertDisjunctive(seq, negative, false);
+  }
+
+  /*
+   * The PRECEDENCE encoding is used only when topLevel is true,
+   * since the links of the precedence variables are added as constraints of the CSP.
+   */
+  protected Expression convertDisjunctive(Sequence seq, boolean negative, boolean topLevel)
+      throws SugarException {
     // (disjuctive ((o1 d1) (o2 d2) ...))
     // --> di=0 || dj=0 || (oi+di<=oj) || (oj+dj<=oi) (for all i<j)
     converter.checkArity(seq, 1);
     if (!seq.get(1).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_DISJUNCTIVE) {
+    if (!converter.config.decomposeDisjunctive) {
       return seq.hold();
     }
     Sequence seq1 = (Sequence) seq.get(1);
@@ -244,6 +535,13 @@ public class GlobalConverter {
       if (!seq1.get(i).isSequence(1)) {
         converter.syntaxError(seq);
       }
+    }
+    if (converter.config.disjunctiveEncoding == DisjunctiveEncoding.PRECEDENCE
+        && !negative && topLevel) {
+      convertDisjunctiveByPrecedences(seq1);
+      return Expression.create(xs);
+    }
+    for (int i = 0; i < n; i++) {
       Sequence task1 = (Sequence) seq1.get(i);
       Expression origin1 = task1.get(0);
       Expression duration1 = task1.get(1);
@@ -260,6 +558,74 @@ public class GlobalConverter {
     return x;
   }
 
+  /*
+   * Returns the literal meaning that task1 precedes task2,
+   * which is p(task1,task2) >= 1 or p(task2,task1) <= 0 of the shared variable.
+   * A new variable is linked to the start times when it is not yet in the CSP.
+   */
+  private Expression precedes(Sequence task1, Sequence task2) throws SugarException {
+    String s1 = task1.toString();
+    String s2 = task2.toString();
+    if (s1.compareTo(s2) > 0) {
+      return precedes(task2, task1).le(0);
+    }
+    String key = s1 + " " + s2;
+    IntegerVariable v = precedences.get(key);
+    if (v == null || converter.csp.getIntegerVariable(v.getName()) != v) {
+      v = converter.csp.newAuxIntegerVariable(IntegerDomain.create(0, 1));
+      converter.csp.add(v);
+      v.setComment(v.getName() + " : precedes " + key);
+      precedences.put(key, v);
+      Expression p = Expression.create(v.getName());
+      Expression origin1 = task1.get(0);
+      Expression duration1 = task1.get(1);
+      Expression origin2 = task2.get(0);
+      Expression duration2 = task2.get(1);
+      Expression zero = duration1.eq(0).or(duration2.eq(0));
+      converter.convertConstraint(zero.or(p.le(0)).or(origin1.add(duration1).le(origin2)));
+      converter.convertConstraint(zero.or(p.ge(1)).or(origin2.add(duration2).le(origin1)));
+    }
+    return Expression.create(v.getName()).ge(1);
+  }
+
+  /*
+   * Orders each pair of tasks by the shared precedence variable.
+   * When disjunctiveTransitivity is set, the cycles of the precedences are also forbidden
+   * for the tasks of positive durations, which are implied but help the SAT solver.
+   */
+  private void convertDisjunctiveByPrecedences(Sequence seq1) throws SugarException {
+    int n = seq1.length();
+    Sequence[] tasks = new Sequence[n];
+    boolean[] positive = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      tasks[i] = (Sequence) seq1.get(i);
+      positive[i] = convertFormula(tasks[i].get(1)).getDomain().getLowerBound() > 0;
+    }
+    Expression[][] before = new Expression[n][n];
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        before[i][j] = precedes(tasks[i], tasks[j]);
+        before[j][i] = before[i][j].not();
+      }
+    }
+    if (!converter.config.disjunctiveTransitivity) {
+      return;
+    }
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        for (int k = j + 1; k < n; k++) {
+          if (positive[i] && positive[j] && positive[k]) {
+            // no i -> j -> k -> i, no i -> k -> j -> i
+            converter.convertConstraint(
+                before[i][j].not().or(before[j][k].not()).or(before[i][k]));
+            converter.convertConstraint(
+                before[k][j].not().or(before[j][i].not()).or(before[k][i]));
+          }
+        }
+      }
+    }
+  }
+
   protected Expression convertLex_less(Sequence seq) throws SugarException {
     // (lex_less (x1 x2 x3) (y1 y2 y3))
     // --> (x1<=y1 && (x1==y1 -> (x2<=y2 && (x2==y2 -> x3<y3))))
@@ -267,7 +633,7 @@ public class GlobalConverter {
     if (!seq.get(1).isSequence() || !seq.get(2).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_LEX_LESS) {
+    if (!converter.config.decomposeLexLess) {
       return seq.hold();
     }
     Sequence seq1 = (Sequence) seq.get(1);
@@ -292,7 +658,7 @@ public class GlobalConverter {
     if (!seq.get(1).isSequence() || !seq.get(2).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_LEX_LESSEQ) {
+    if (!converter.config.decomposeLexLessEq) {
       return seq.hold();
     }
     Sequence seq1 = (Sequence) seq.get(1);
@@ -317,7 +683,7 @@ public class GlobalConverter {
     if (!seq.get(2).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_NVALUE) {
+    if (!converter.config.decomposeNValue) {
       return seq.hold();
     }
     Expression x1 = seq.get(1);
@@ -353,7 +719,7 @@ public class GlobalConverter {
     // --> c>=0 && c<=n && c==if(x1 op val,1,0)+...+if(xn op val,1,0)
     // --> if(x1==val,1,0)+...+if(xn==val,1,0) op c
     converter.checkArity(seq, 4);
-    if (!Converter.DECOMPOSE_COUNT) {
+    if (!converter.config.decomposeCount) {
       return seq.hold();
     }
     Expression val = seq.get(1);
@@ -364,8 +730,13 @@ public class GlobalConverter {
     sum.add(Expression.ADD);
     int n = seq2.length();
     for (int i = 0; i < n; i++) {
-      sum.add(seq2.get(i).eq(val)
-          .ifThenElse(Expression.ONE, Expression.ZERO));
+      Expression e = equality(seq2.get(i), val);
+      if (e == null) {
+        sum.add(seq2.get(i).eq(val)
+            .ifThenElse(Expression.ONE, Expression.ZERO));
+      } else {
+        sum.add(e);
+      }
     }
     Expression x = Expression.create(op, Expression.create(sum), c);
     return x;
@@ -380,7 +751,7 @@ public class GlobalConverter {
     if (!seq.get(1).isSequence() || !seq.get(2).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_GLOBAL_CARDINALITY) {
+    if (!converter.config.decomposeGlobalCardinality) {
       return seq.hold();
     }
     Sequence vars = (Sequence) seq.get(1);
@@ -415,7 +786,7 @@ public class GlobalConverter {
         || !seq.get(3).isSequence()) {
       converter.syntaxError(seq);
     }
-    if (!Converter.DECOMPOSE_GLOBAL_CARDINALITY_WITH_COSTS) {
+    if (!converter.config.decomposeGlobalCardinalityWithCosts) {
       return seq.hold();
     }
     Sequence vars = (Sequence) seq.get(1);
@@ -441,7 +812,14 @@ public class GlobalConverter {
       }
       Expression var = vars.get(a - 1);
       Expression val = ((Sequence) counts.get(b - 1)).get(0);
-      sum.add((var.eq(val)).ifThenElse(w, Expression.ZERO));
+      Expression e = equality(var, val);
+      if (e == null) {
+        sum.add((var.eq(val)).ifThenElse(w, Expression.ZERO));
+      } else if (w.isInteger()) {
+        sum.add(e.mul(w));
+      } else {
+        sum.add((e.ge(1)).ifThenElse(w, Expression.ZERO));
+      }
     }
     Expression x = x1.and(cost.eq(Expression.create(sum)));
     return x;
@@ -5,22 +5,30 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import jp.kobe_u.sugar.SugarConfig;
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.csp.BooleanLiteral;
 import jp.kobe_u.sugar.csp.BooleanVariable;
 import jp.kobe_u.sugar.csp.CSP;
 import jp.kobe_u.sugar.csp.Clause;
 import jp.kobe_u.sugar.csp.Literal;
+import jp.kobe_u.sugar.expression.Expression;
 
 public class Simplifier {
   public static boolean USE_SIMPLIFYCACHE = true;
   public static int MAX_SIMPLIFYCACHE_SIZE = 1000;
   private static boolean SIMPLIFY_ALL = true;
   private CSP csp;
+  private SugarConfig config;
   private Map<Literal, BooleanLiteral> simplifyCache;
 
   public Simplifier(CSP csp) {
+    this(csp, new SugarConfig());
+  }
+
+  public Simplifier(CSP csp, SugarConfig config) {
     this.csp = csp;
+    this.config = config;
     simplifyCache = new SimplifyMap();
   }
 
@@ -30,7 +38,9 @@ public class Simplifier {
       newClauses.add(clause);
     } else {
       List<Literal> literals = clause.getLiterals();
+      Expression origin = clause.getOrigin();
       clause = new Clause();
+      clause.setOrigin(origin);
       int complex = 0;
       for (Literal literal : literals) {
         if (literal.isSimple()) {
@@ -39,31 +49,35 @@ public class Simplifier {
           complex++;
           if (!SIMPLIFY_ALL && complex == 1) {
             clause.add(literal);
-          } else if (USE_SIMPLIFYCACHE && simplifyCache.containsKey(literal)) {
+          } else if (config.useSimplifyCache && simplifyCache.containsKey(literal)) {
             Literal lit = simplifyCache.get(literal);
             clause.add(lit);
           } else {
-            BooleanVariable p = new BooleanVariable();
+            BooleanVariable p = csp.newAuxBooleanVariable();
+            p.setOrigin(origin);
             csp.add(p);
             BooleanLiteral posLiteral = new BooleanLiteral(p, false);
             BooleanLiteral negLiteral = new BooleanLiteral(p, true);
-            if (Converter.EQUIV_TRANSLATION) {
+            if (config.equivTranslation) {
               Clause newClause = new Clause();
+              newClause.setOrigin(origin);
               newClause.add(negLiteral);
               newClause.add(literal);
               newClauses.add(newClause);
               newClause = new Clause();
+              newClause.setOrigin(origin);
               newClause.add(posLiteral);
               newClause.add(literal.neg());
               newClauses.add(newClause);
             } else {
               Clause newClause = new Clause();
+              newClause.setOrigin(origin);
               newClause.add(negLiteral);
               newClause.add(literal);
               newClauses.add(newClause);
             }
             clause.add(posLiteral);
-            if (USE_SIMPLIFYCACHE) {
+            if (config.useSimplifyCache) {
               simplifyCache.put(literal, posLiteral);
             }
           }
@@ -83,6 +97,36 @@ public class Simplifier {
     csp.setClauses(newClauses);
   }
 
+  /**
+   * Simplifies only the clauses added after the last commit of the CSP.
+   * The cache is kept across the calls,
+   * so that a literal simplified before is replaced by the same boolean variable.
+   *
+   * @throws SugarException when an internal error occurs
+   * @see CSP#commit()
+   */
+  public void simplifyDelta() throws SugarException {
+    List<Clause> delta = csp.getClausesDelta();
+    List<Clause> newClauses = new ArrayList<Clause>(delta.size());
+    boolean simple = true;
+    for (Clause clause : delta) {
+      simple = simple && clause.isSimple();
+      newClauses.addAll(simplify(clause));
+    }
+    if (!simple) {
+      delta.clear();
+      delta.addAll(newClauses);
+    }
+  }
+
+  /**
+   * Clears the cache.
+   * It should be called when the auxiliary boolean variables are removed from the CSP.
+   */
+  public void clearCache() {
+    simplifyCache.clear();
+  }
+
   private class SimplifyMap extends LinkedHashMap<Literal, BooleanLiteral> {
     SimplifyMap() {
       super(100, 0.75f, true);
@@ -93,7 +137,7 @@ public class Simplifier {
      */
     @Override
     protected boolean removeEldestEntry(Entry<Literal, BooleanLiteral> eldest) {
-      return size() > Simplifier.MAX_SIMPLIFYCACHE_SIZE;
+      return size() > config.maxSimplifyCacheSize;
     }
   }
 
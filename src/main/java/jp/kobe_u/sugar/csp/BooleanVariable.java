@@ -2,6 +2,7 @@ package jp.kobe_u.sugar.csp;
 
 import java.util.BitSet;
 import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.expression.Expression;
 
 /**
  * This class implements a boolean variable of CSP.
@@ -10,11 +11,11 @@ import jp.kobe_u.sugar.SugarException;
  * @see CSP
  */
 public class BooleanVariable implements Comparable<BooleanVariable> {
-  private static String AUX_NAME_PREFIX = "$B";
-  private static int auxBooleanVariablesCount = 0;
+  public static final String AUX_NAME_PREFIX = "$B";
   private String name;
   private boolean aux;
   private String comment = null;
+  private Expression origin = null;
   private int code;
   private boolean dominant;
   private boolean value;
@@ -30,19 +31,10 @@ public class BooleanVariable implements Comparable<BooleanVariable> {
     aux = false;
     if (name.startsWith(AUX_NAME_PREFIX)) {
       // Logger.println("c WARNING Auxiliary variable name found : " + name);
-      int i = Integer.parseInt(name.substring(AUX_NAME_PREFIX.length()));
-      if (i > auxBooleanVariablesCount) {
-        auxBooleanVariablesCount = i;
-      }
       aux = true;
     }
   }
 
-  public BooleanVariable() throws SugarException {
-    this.name = AUX_NAME_PREFIX + (++auxBooleanVariablesCount);
-    aux = true;
-  }
-
   /**
    * Returns the name of the boolean variable.
    *
@@ -79,6 +71,24 @@ public class BooleanVariable implements Comparable<BooleanVariable> {
     this.comment = comment;
   }
 
+  /**
+   * Returns the top-level expression from which the boolean variable was converted.
+   *
+   * @return the origin expression, or null when it is unknown
+   */
+  public Expression getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Sets the top-level expression from which the boolean variable was converted.
+   *
+   * @param origin the origin expression
+   */
+  public void setOrigin(Expression origin) {
+    this.origin = origin;
+  }
+
   /**
    * Returns the code value in the encoded representation.
    *
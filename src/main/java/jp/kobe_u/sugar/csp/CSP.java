@@ -4,9 +4,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import jp.kobe_u.sugar.Logger;
 import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.expression.Expression;
 
 /**
  * A class for CSP (Constraint Satisfaction Problems).
@@ -32,6 +35,8 @@ public class CSP {
 
   private HashMap<String, Relation> relationMap;
 
+  private HashMap<IntegerVariable, Map<Integer, IntegerVariable>> equalityMap;
+
   private List<IntegerVariable> objectiveVariables = null;
 
   private Objective objective = Objective.NONE;
@@ -46,6 +51,12 @@ public class CSP {
 
   private int clausesSizeSave = 0;
 
+  private int auxIntegerVariablesCount = 0;
+
+  private int auxBooleanVariablesCount = 0;
+
+  private Expression origin = null;
+
   /**
    * Constructs a new CSP.
    */
@@ -59,28 +70,170 @@ public class CSP {
     integerVariableMap = new HashMap<String, IntegerVariable>();
     booleanVariableMap = new HashMap<String, BooleanVariable>();
     relationMap = new HashMap<String, Relation>();
+    equalityMap = new HashMap<IntegerVariable, Map<Integer, IntegerVariable>>();
   }
 
+  /**
+   * Commits the variables and the clauses added so far.
+   * The domains of the committed integer variables are frozen
+   * since they are assumed to be already encoded.
+   */
   public void commit() {
+    for (IntegerVariable v : getIntegerVariablesDelta()) {
+      v.freeze();
+    }
     integerVariablesSizeSave = integerVariables.size();
     booleanVariablesSizeSave = booleanVariables.size();
     clausesSizeSave = clauses.size();
   }
 
   public void cancel() {
-    int i = integerVariablesSizeSave;
-    while (integerVariablesSizeSave < integerVariables.size()) {
-      integerVariableMap.remove(integerVariables.get(i).getName());
-      integerVariables.remove(i);
+    rollback(integerVariablesSizeSave, booleanVariablesSizeSave, clausesSizeSave);
+  }
+
+  /**
+   * Releases the committed clauses and the committed auxiliary variables,
+   * which are no longer needed once they are encoded.
+   * The committed non-auxiliary variables are kept with their codes and domains
+   * for assumptions and decoding.
+   * The sizes for {@link #rollback(int, int, int)} should be taken after the release.
+   *
+   * @return the number of released clauses and variables
+   */
+  public int release() {
+    int released = clausesSizeSave;
+    clauses = new ArrayList<Clause>(clauses.subList(clausesSizeSave, clauses.size()));
+    clausesSizeSave = 0;
+
+    List<IntegerVariable> newIntegerVariables = new ArrayList<IntegerVariable>();
+    for (int i = 0; i < integerVariables.size(); i++) {
+      IntegerVariable v = integerVariables.get(i);
+      if (i < integerVariablesSizeSave && v.isAux()) {
+        integerVariableMap.remove(v.getName());
+        released++;
+      } else {
+        newIntegerVariables.add(v);
+      }
+    }
+    integerVariablesSizeSave -= integerVariables.size() - newIntegerVariables.size();
+    integerVariables = newIntegerVariables;
+
+    List<BooleanVariable> newBooleanVariables = new ArrayList<BooleanVariable>();
+    for (int i = 0; i < booleanVariables.size(); i++) {
+      BooleanVariable v = booleanVariables.get(i);
+      if (i < booleanVariablesSizeSave && v.isAux()) {
+        booleanVariableMap.remove(v.getName());
+        released++;
+      } else {
+        newBooleanVariables.add(v);
+      }
+    }
+    booleanVariablesSizeSave -= booleanVariables.size() - newBooleanVariables.size();
+    booleanVariables = newBooleanVariables;
+    removeEqualities();
+    return released;
+  }
+
+  /**
+   * Removes the variables and the clauses added after the CSP had the given sizes.
+   * The sizes should be taken from a committed state.
+   *
+   * @param integerVariablesSize the number of integer variables to keep
+   * @param booleanVariablesSize the number of boolean variables to keep
+   * @param clausesSize the number of clauses to keep
+   */
+  public void rollback(int integerVariablesSize, int booleanVariablesSize, int clausesSize) {
+    while (integerVariablesSize < integerVariables.size()) {
+      IntegerVariable v = integerVariables.remove(integerVariables.size() - 1);
+      integerVariableMap.remove(v.getName());
     }
-    i = booleanVariablesSizeSave;
-    while (booleanVariablesSizeSave < booleanVariables.size()) {
-      booleanVariableMap.remove(booleanVariables.get(i).getName());
-      booleanVariables.remove(i);
+    while (booleanVariablesSize < booleanVariables.size()) {
+      BooleanVariable v = booleanVariables.remove(booleanVariables.size() - 1);
+      booleanVariableMap.remove(v.getName());
     }
-    i = clausesSizeSave;
-    while (clausesSizeSave < clauses.size()) {
-      clauses.remove(i);
+    while (clausesSize < clauses.size()) {
+      clauses.remove(clauses.size() - 1);
+    }
+    integerVariablesSizeSave = Math.min(integerVariablesSizeSave, integerVariablesSize);
+    booleanVariablesSizeSave = Math.min(booleanVariablesSizeSave, booleanVariablesSize);
+    clausesSizeSave = Math.min(clausesSizeSave, clausesSize);
+    removeEqualities();
+  }
+
+  /**
+   * Returns the 0-1 auxiliary variable e defined by e = 1 &lt;-&gt; v = c,
+   * which is added with its defining clauses when it is not yet in this CSP.
+   * The variable is shared by all constraints referring to v = c.
+   *
+   * @param v the integer variable
+   * @param c the value
+   * @return the 0-1 variable equivalent to v = c,
+   * or null when c is not in the domain of v
+   * @throws SugarException when the variable cannot be added
+   */
+  public IntegerVariable getEquality(IntegerVariable v, int c) throws SugarException {
+    IntegerVariable e = findEquality(v, c);
+    if (e != null || !v.getDomain().contains(c)) {
+      return e;
+    }
+    e = newAuxIntegerVariable(IntegerDomain.create(0, 1));
+    e.setComment(e.getName() + " : (= " + v.getName() + " " + c + ")");
+    add(e);
+    // e -> v >= c, e -> v <= c, v = c -> e
+    Clause clause = new Clause(new LinearLeLiteral(new LinearSum(1, e, 0)));
+    clause.add(new LinearGeLiteral(new LinearSum(1, v, -c)));
+    add(clause);
+    clause = new Clause(new LinearLeLiteral(new LinearSum(1, e, 0)));
+    clause.add(new LinearLeLiteral(new LinearSum(1, v, -c)));
+    add(clause);
+    clause = new Clause(new LinearGeLiteral(new LinearSum(1, e, -1)));
+    clause.add(new LinearLeLiteral(new LinearSum(1, v, -c + 1)));
+    clause.add(new LinearGeLiteral(new LinearSum(1, v, -c - 1)));
+    add(clause);
+    Map<Integer, IntegerVariable> map = equalityMap.get(v);
+    if (map == null) {
+      map = new HashMap<Integer, IntegerVariable>();
+      equalityMap.put(v, map);
+    }
+    map.put(c, e);
+    return e;
+  }
+
+  /**
+   * Returns the 0-1 variable equivalent to v = c
+   * if it has been added by {@link #getEquality(IntegerVariable, int)}.
+   *
+   * @param v the integer variable
+   * @param c the value
+   * @return the 0-1 variable equivalent to v = c, or null
+   */
+  public IntegerVariable findEquality(IntegerVariable v, int c) {
+    Map<Integer, IntegerVariable> map = equalityMap.get(v);
+    return map == null ? null : map.get(c);
+  }
+
+  /*
+   * Forgets the equality variables removed by the rollback or the release.
+   */
+  private void removeEqualities() {
+    Iterator<Map.Entry<IntegerVariable, Map<Integer, IntegerVariable>>> iter =
+        equalityMap.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<IntegerVariable, Map<Integer, IntegerVariable>> entry = iter.next();
+      if (integerVariableMap.get(entry.getKey().getName()) != entry.getKey()) {
+        iter.remove();
+        continue;
+      }
+      Iterator<IntegerVariable> es = entry.getValue().values().iterator();
+      while (es.hasNext()) {
+        IntegerVariable e = es.next();
+        if (integerVariableMap.get(e.getName()) != e) {
+          es.remove();
+        }
+      }
+      if (entry.getValue().isEmpty()) {
+        iter.remove();
+      }
     }
   }
 
@@ -157,11 +310,52 @@ public class CSP {
     return integerVariableMap.get(name);
   }
 
+  /**
+   * Returns a new auxiliary integer variable.
+   * Its name is unique among the auxiliary variables of this CSP.
+   * The variable is not added to the CSP.
+   *
+   * @param domain the domain of the integer variable
+   * @return the new auxiliary integer variable
+   * @throws SugarException when the domain is empty
+   */
+  public IntegerVariable newAuxIntegerVariable(IntegerDomain domain) throws SugarException {
+    return new IntegerVariable(IntegerVariable.AUX_NAME_PREFIX + (++auxIntegerVariablesCount),
+        domain);
+  }
+
+  /**
+   * Returns the top-level expression being converted.
+   *
+   * @return the origin expression, or null
+   */
+  public Expression getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Sets the top-level expression being converted.
+   * Variables and clauses added afterwards without their own origin
+   * are marked as converted from the expression.
+   *
+   * @param origin the origin expression, or null
+   */
+  public void setOrigin(Expression origin) {
+    this.origin = origin;
+  }
+
   public void add(IntegerVariable v) throws SugarException {
     String name = v.getName();
     if (integerVariableMap.containsKey(name)) {
       throw new SugarException("Duplicated integer variable " + name);
     }
+    if (v.isAux()) {
+      int i = Integer.parseInt(name.substring(IntegerVariable.AUX_NAME_PREFIX.length()));
+      auxIntegerVariablesCount = Math.max(auxIntegerVariablesCount, i);
+    }
+    if (v.getOrigin() == null) {
+      v.setOrigin(origin);
+    }
     integerVariableMap.put(v.getName(), v);
     integerVariables.add(v);
   }
@@ -179,11 +373,30 @@ public class CSP {
     return booleanVariables.subList(booleanVariablesSizeSave, booleanVariables.size());
   }
 
+  /**
+   * Returns a new auxiliary boolean variable.
+   * Its name is unique among the auxiliary variables of this CSP.
+   * The variable is not added to the CSP.
+   *
+   * @return the new auxiliary boolean variable
+   * @throws SugarException never
+   */
+  public BooleanVariable newAuxBooleanVariable() throws SugarException {
+    return new BooleanVariable(BooleanVariable.AUX_NAME_PREFIX + (++auxBooleanVariablesCount));
+  }
+
   public void add(BooleanVariable v) throws SugarException {
     String name = v.getName();
     if (booleanVariableMap.containsKey(name)) {
       throw new SugarException("Duplicated boolean variable " + name);
     }
+    if (v.isAux()) {
+      int i = Integer.parseInt(name.substring(BooleanVariable.AUX_NAME_PREFIX.length()));
+      auxBooleanVariablesCount = Math.max(auxBooleanVariablesCount, i);
+    }
+    if (v.getOrigin() == null) {
+      v.setOrigin(origin);
+    }
     booleanVariableMap.put(v.getName(), v);
     booleanVariables.add(v);
   }
@@ -244,6 +457,9 @@ public class CSP {
    * @param clause the clause to be added
    */
   public void add(Clause clause) {
+    if (clause.getOrigin() == null) {
+      clause.setOrigin(origin);
+    }
     clauses.add(clause);
   }
 
@@ -304,24 +520,59 @@ public class CSP {
     return removedValues + removedLiterals + removedClauses;
   }
 
-  public void compact() throws SugarException {
-    throw new SugarException("Unimplemented method compact()");
-        /*
-        int n = integerVariables.size();
-        for (int i = 0; i < n; i++) {
-            IntegerVariable v = integerVariables.get(i);
-            v.compact(this);
-        }
-        List<Clause> newClauses = new ArrayList<Clause>();
-        for (Clause clause : clauses) {
-            if (clause.isCompact()) {
-                newClauses.add(clause);
-            } else {
-                newClauses.addAll(compact(clause));
-            }
+  /**
+   * Propagates the bounds only through the clauses added after the last commit.
+   * Since the domains of the committed integer variables are frozen,
+   * the other clauses can never be modified,
+   * and the cost is proportional to the size of the delta.
+   * Valid clauses are removed from the delta.
+   *
+   * @return the number of removed values, literals, and clauses
+   * @throws SugarException when an internal error occurs
+   * @see #commit()
+   */
+  public int propagateDelta() throws SugarException {
+    List<Clause> delta = getClausesDelta();
+    int removedValues = 0;
+    int removedLiterals = 0;
+    List<Clause> modifiedClauses = new ArrayList<Clause>(delta);
+    while (!modifiedClauses.isEmpty()) {
+      for (IntegerVariable v : getIntegerVariablesDelta()) {
+        v.setModified(false);
+      }
+      int values = 0;
+      int literals = 0;
+      for (Clause clause : modifiedClauses) {
+        values += clause.propagate();
+        literals += clause.removeFalsefood();
+      }
+      if (values == 0 && literals == 0) {
+        break;
+      }
+      removedValues += values;
+      removedLiterals += literals;
+      modifiedClauses.clear();
+      for (Clause clause : delta) {
+        if (clause.isModified()) {
+          modifiedClauses.add(clause);
         }
-        clauses = newClauses;
-        */
+      }
+    }
+    List<Clause> newClauses = new ArrayList<Clause>(delta.size());
+    for (Clause clause : delta) {
+      if (!clause.isValid()) {
+        newClauses.add(clause);
+      }
+    }
+    int removedClauses = delta.size() - newClauses.size();
+    if (removedClauses > 0) {
+      delta.clear();
+      delta.addAll(newClauses);
+    }
+    Logger.fine(removedValues + " values, "
+        + removedLiterals + " unsatisfiable literals, and "
+        + removedClauses + " valid clauses are removed");
+    return removedValues + removedLiterals + removedClauses;
   }
 
   /**
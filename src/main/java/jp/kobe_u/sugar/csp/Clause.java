@@ -6,6 +6,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import jp.kobe_u.sugar.SugarConstants;
 import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.expression.Expression;
 
 /**
  * This class implements a clause in CSP.
@@ -17,6 +18,7 @@ public class Clause {
   private List<Literal> literals;
   private Set<IntegerVariable> commonVariables = null;
   private String comment = null;
+  private Expression origin = null;
 
   /**
    * Constructs a new clause with give literals.
@@ -79,6 +81,24 @@ public class Clause {
     return comment;
   }
 
+  /**
+   * Returns the top-level expression from which the clause was converted.
+   *
+   * @return the origin expression, or null when it is unknown
+   */
+  public Expression getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Sets the top-level expression from which the clause was converted.
+   *
+   * @param origin the origin expression
+   */
+  public void setOrigin(Expression origin) {
+    this.origin = origin;
+  }
+
   /**
    * Sets the comment to the clause.
    *
@@ -77,6 +77,27 @@ public abstract class IntegerDomain {
 
   public abstract IntegerDomain max(IntegerDomain domain) throws SugarException;
 
+  /**
+   * Returns the index-th smallest value of the domain (0-origin).
+   *
+   * @param index the index of the value
+   * @return the index-th smallest value
+   */
+  public int valueAt(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of domain " + this);
+    }
+    Iterator<int[]> it = intervals();
+    while (true) {
+      int[] interval = it.next();
+      int width = interval[1] - interval[0] + 1;
+      if (index < width) {
+        return interval[0] + index;
+      }
+      index -= width;
+    }
+  }
+
   private String rangeValues(int lb, int ub, boolean useDots) {
     if (useDots) {
       return lb + ".." + ub;
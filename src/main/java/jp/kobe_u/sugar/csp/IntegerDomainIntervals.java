@@ -121,6 +121,14 @@ public class IntegerDomainIntervals extends IntegerDomain {
     }
   }
 
+  @Override
+  public int valueAt(int index) {
+    if (domain == null && 0 <= index && index < size()) {
+      return lb + index;
+    }
+    return super.valueAt(index);
+  }
+
   public IntegerDomain bound(int lb0, int ub0) throws SugarException {
     int lb = getLowerBound();
     int ub = getUpperBound();
@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.util.List;
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.expression.Expression;
 
 /**
  * This class implements an integer variable of CSP.
@@ -14,18 +15,20 @@ import jp.kobe_u.sugar.encoder.Encoding;
  * @see CSP
  */
 public class IntegerVariable implements Comparable<IntegerVariable> {
-  private static String AUX_NAME_PREFIX = "$I";
-  private static int auxIntegerVariablesCount = 0;
+  public static final String AUX_NAME_PREFIX = "$I";
   private String name;
   private IntegerDomain domain;
   private boolean aux;
   private String comment = null;
+  private Expression origin = null;
   private boolean modified = true;
+  private boolean frozen = false;
   private int code;
   private boolean dominant;
   private int value;
-  // private int offset;
-  // private IntegerVariable[] vs = null;
+  private int base;
+  private int offset;
+  private IntegerVariable[] digits = null;
   private Encoding encoding = Encoding.ORDER;
 
   public IntegerVariable(String name, IntegerDomain domain) throws SugarException {
@@ -38,24 +41,10 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
     aux = false;
     if (name.startsWith(AUX_NAME_PREFIX)) {
       // Logger.println("c WARNING Auxiliary variable name found : " + name);
-      int i = Integer.parseInt(name.substring(AUX_NAME_PREFIX.length()));
-      if (i > auxIntegerVariablesCount) {
-        auxIntegerVariablesCount = i;
-      }
       aux = true;
     }
   }
 
-  public IntegerVariable(IntegerDomain domain) throws SugarException {
-    this.name = AUX_NAME_PREFIX + (++auxIntegerVariablesCount);
-    this.domain = domain;
-    if (domain.isEmpty()) {
-      throw new SugarException("Integer variable domain error " + name);
-    }
-    value = domain.getLowerBound();
-    aux = true;
-  }
-
   /**
    * Returns the name of the integer variable.
    *
@@ -96,6 +85,24 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
     this.comment = comment;
   }
 
+  /**
+   * Returns the top-level expression from which the integer variable was converted.
+   *
+   * @return the origin expression, or null when it is unknown
+   */
+  public Expression getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Sets the top-level expression from which the integer variable was converted.
+   *
+   * @param origin the origin expression
+   */
+  public void setOrigin(Expression origin) {
+    this.origin = origin;
+  }
+
   /**
    * @return the modified
    */
@@ -110,11 +117,34 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
     this.modified = modified;
   }
 
+  /**
+   * Returns true when the domain of the integer variable is frozen.
+   *
+   * @return true when the domain is frozen
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Freezes the domain of the integer variable.
+   * The domain of an encoded variable must not be changed
+   * since the codes of the order encoding depend on it.
+   * Further bounds are left to the SAT solver.
+   */
+  public void freeze() {
+    frozen = true;
+    modified = false;
+  }
+
   public int bound(int lb, int ub) throws SugarException {
     IntegerDomain oldDomain = domain;
     if (Math.max(domain.getLowerBound(), lb) > Math.min(domain.getUpperBound(), ub)) {
       throw new SugarException("Internal error: " + this + " " + lb + " " + ub);
     }
+    if (frozen) {
+      return 0;
+    }
     domain = domain.bound(lb, ub);
     if (!domain.equals(oldDomain)) {
       modified = true;
@@ -156,6 +186,50 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
     this.encoding = encoding;
   }
 
+  /**
+   * Returns true when the integer variable is represented by digits
+   * in the compact order encoding.
+   *
+   * @return true when the integer variable has digits
+   * @see #setDigits(int, int, IntegerVariable[])
+   */
+  public boolean isCompact() {
+    return digits != null;
+  }
+
+  /**
+   * Sets the digits representing the integer variable in the compact order encoding.
+   * The value of the variable is offset + sum of base^j * digits[j],
+   * and the variable itself has no SAT variables.
+   *
+   * @param base the base of the digits
+   * @param offset the offset added to the digits
+   * @param digits the digits from the least significant one
+   */
+  public void setDigits(int base, int offset, IntegerVariable[] digits) {
+    this.base = base;
+    this.offset = offset;
+    this.digits = digits;
+  }
+
+  public int getBase() {
+    return base;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the digits from the least significant one,
+   * or null when the integer variable is not compact.
+   *
+   * @return the digits
+   */
+  public IntegerVariable[] getDigits() {
+    return digits;
+  }
+
   public boolean isPbEncoding() {
     return encoding == Encoding.LOG;
   }
@@ -198,10 +272,9 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
   }
 
   public int getSatVariablesSize() {
-        /*
-        if (vs != null)
-            return 0;
-        */
+    if (digits != null) {
+      return 0;
+    }
     return domain.size() - 1;
   }
 
@@ -223,6 +296,15 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
   }
 
   public void decode(BitSet satValues) {
+    if (digits != null) {
+      long v = 0;
+      for (int j = digits.length - 1; j >= 0; j--) {
+        digits[j].decode(satValues);
+        v = v * base + digits[j].getValue();
+      }
+      value = (int) (offset + v);
+      return;
+    }
     int lb = domain.getLowerBound();
     int ub = domain.getUpperBound();
     int code = getCode();
@@ -8,8 +8,12 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.StreamTokenizer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
 import jp.kobe_u.sugar.Logger;
+import jp.kobe_u.sugar.SugarConfig;
 import jp.kobe_u.sugar.SugarConstants;
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.SugarMain;
@@ -26,12 +30,23 @@ import jp.kobe_u.sugar.csp.IntegerVariable;
  * @see CSP
  */
 public abstract class AbstractEncoder {
+  public static boolean PROFILE_ENCODING = false;
   public CSP csp;
   public Problem problem;
+  public SugarConfig config;
+  public EncodingProfile profile = null;
 
   public AbstractEncoder(CSP csp, Problem problem) {
+    this(csp, problem, new SugarConfig());
+  }
+
+  public AbstractEncoder(CSP csp, Problem problem, SugarConfig config) {
     this.csp = csp;
     this.problem = problem;
+    this.config = config;
+    if (config.profileEncoding) {
+      profile = new EncodingProfile();
+    }
   }
 
   public int negateCode(int code) {
@@ -49,25 +64,64 @@ public abstract class AbstractEncoder {
 
   public abstract void encodeClause(Clause c) throws SugarException;
 
+  /*
+   * Encodes the integer variable and counts the clauses for its origin.
+   */
+  private void encodeIntegerVariableProfiled(IntegerVariable v) throws SugarException {
+    if (profile == null) {
+      encodeIntegerVariable(v);
+      return;
+    }
+    int variablesCount0 = problem.variablesCount;
+    int clausesCount0 = problem.clausesCount;
+    encodeIntegerVariable(v);
+    profile.addVariables(v.getOrigin(), problem.variablesCount - variablesCount0);
+    profile.addClauses(v.getOrigin(), problem.clausesCount - clausesCount0);
+  }
+
+  /*
+   * Encodes the clause and counts the SAT variables and clauses for its origin.
+   */
+  private void encodeClauseProfiled(Clause c) throws SugarException {
+    if (profile == null) {
+      encodeClause(c);
+      return;
+    }
+    int variablesCount0 = problem.variablesCount;
+    int clausesCount0 = problem.clausesCount;
+    encodeClause(c);
+    profile.addVariables(c.getOrigin(), problem.variablesCount - variablesCount0);
+    profile.addClauses(c.getOrigin(), problem.clausesCount - clausesCount0);
+  }
+
   public void encode() throws SugarException {
     problem.clear();
+    if (profile != null) {
+      profile.clear();
+    }
     int satVariablesCount = 0;
     for (IntegerVariable v : csp.getIntegerVariables()) {
       v.setCode(satVariablesCount + 1);
       int size = v.getSatVariablesSize();
       satVariablesCount += size;
+      if (profile != null) {
+        profile.addVariables(v.getOrigin(), size);
+      }
     }
     for (BooleanVariable v : csp.getBooleanVariables()) {
       v.setCode(satVariablesCount + 1);
       int size = v.getSatVariablesSize();
       satVariablesCount += size;
+      if (profile != null) {
+        profile.addVariables(v.getOrigin(), size);
+      }
     }
     problem.addVariables(satVariablesCount - problem.variablesCount);
     int count = 0;
     int n = csp.getIntegerVariables().size();
     int percent = 10;
     for (IntegerVariable v : csp.getIntegerVariables()) {
-      encodeIntegerVariable(v);
+      encodeIntegerVariableProfiled(v);
       count++;
       if ((100 * count) / n >= percent) {
         Logger.fine(count + " (" + percent + "%) "
@@ -84,9 +138,9 @@ public abstract class AbstractEncoder {
         continue;
       }
       int clausesCount0 = problem.clausesCount;
-      encodeClause(c);
+      encodeClauseProfiled(c);
       count++;
-      if (SugarMain.debug >= 1) {
+      if (config.debug >= 1) {
         int k = problem.clausesCount - clausesCount0;
         Logger.fine(k + " SAT clauses for " + c);
       }
@@ -138,21 +192,27 @@ public abstract class AbstractEncoder {
       v.setCode(satVariablesCount + 1);
       int size = v.getSatVariablesSize();
       satVariablesCount += size;
+      if (profile != null) {
+        profile.addVariables(v.getOrigin(), size);
+      }
     }
     for (BooleanVariable v : csp.getBooleanVariablesDelta()) {
       v.setCode(satVariablesCount + 1);
       int size = v.getSatVariablesSize();
       satVariablesCount += size;
+      if (profile != null) {
+        profile.addVariables(v.getOrigin(), size);
+      }
     }
     problem.addVariables(satVariablesCount - problem.variablesCount);
     for (IntegerVariable v : csp.getIntegerVariablesDelta()) {
-      encodeIntegerVariable(v);
+      encodeIntegerVariableProfiled(v);
     }
     for (Clause c : csp.getClausesDelta()) {
       if (c.isValid()) {
         continue;
       }
-      encodeClause(c);
+      encodeClauseProfiled(c);
     }
     problem.done();
   }
@@ -177,8 +237,14 @@ public abstract class AbstractEncoder {
       mapWriter.write(s);
       mapWriter.write('\n');
     }
+    Set<IntegerVariable> digits = new HashSet<IntegerVariable>();
+    for (IntegerVariable v : csp.getIntegerVariables()) {
+      if (v.isCompact() && (!v.isAux() || config.debug > 0)) {
+        digits.addAll(Arrays.asList(v.getDigits()));
+      }
+    }
     for (IntegerVariable v : csp.getIntegerVariables()) {
-      if (!v.isAux() || SugarMain.debug > 0) {
+      if (!v.isAux() || config.debug > 0 || digits.contains(v)) {
         int code = v.getCode();
         StringBuilder sb = new StringBuilder();
         sb.append("int " + v.getName() + " " + code + " ");
@@ -190,7 +256,7 @@ public abstract class AbstractEncoder {
       }
     }
     for (BooleanVariable v : csp.getBooleanVariables()) {
-      if (!v.isAux() || SugarMain.debug > 0) {
+      if (!v.isAux() || config.debug > 0) {
         int code = v.getCode();
         String s = "bool " + v.getName() + " " + code;
 //              mapFile.write(s.getBytes());
@@ -199,6 +265,17 @@ public abstract class AbstractEncoder {
         mapWriter.write('\n');
       }
     }
+    for (IntegerVariable v : csp.getIntegerVariables()) {
+      if (v.isCompact() && (!v.isAux() || config.debug > 0)) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("compact " + v.getName() + " " + v.getBase() + " " + v.getOffset());
+        for (IntegerVariable d : v.getDigits()) {
+          sb.append(" " + d.getName());
+        }
+        mapWriter.write(sb.toString());
+        mapWriter.write('\n');
+      }
+    }
 //      mapFile.close();
     mapWriter.close();
   }
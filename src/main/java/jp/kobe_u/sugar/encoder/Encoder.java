@@ -8,7 +8,11 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.StreamTokenizer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import jp.kobe_u.sugar.SugarConfig;
 import jp.kobe_u.sugar.SugarConstants;
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.SugarMain;
@@ -28,6 +32,10 @@ public class Encoder extends OrderEncoder {
     super(csp, null);
   }
 
+  public Encoder(CSP csp, SugarConfig config) {
+    super(csp, null, config);
+  }
+
   public void commit() throws SugarException {
     problem.commit();
   }
@@ -84,8 +92,14 @@ public class Encoder extends OrderEncoder {
       mapWriter.write(s);
       mapWriter.write('\n');
     }
+    Set<IntegerVariable> digits = new HashSet<IntegerVariable>();
+    for (IntegerVariable v : csp.getIntegerVariables()) {
+      if (v.isCompact() && (!v.isAux() || config.debug > 0)) {
+        digits.addAll(Arrays.asList(v.getDigits()));
+      }
+    }
     for (IntegerVariable v : csp.getIntegerVariables()) {
-      if (!v.isAux() || SugarMain.debug > 0) {
+      if (!v.isAux() || config.debug > 0 || digits.contains(v)) {
         int code = v.getCode();
         StringBuilder sb = new StringBuilder();
         sb.append("int " + v.getName() + " " + code + " ");
@@ -95,13 +109,24 @@ public class Encoder extends OrderEncoder {
       }
     }
     for (BooleanVariable v : csp.getBooleanVariables()) {
-      if (!v.isAux() || SugarMain.debug > 0) {
+      if (!v.isAux() || config.debug > 0) {
         int code = v.getCode();
         String s = "bool " + v.getName() + " " + code;
         mapWriter.write(s);
         mapWriter.write('\n');
       }
     }
+    for (IntegerVariable v : csp.getIntegerVariables()) {
+      if (v.isCompact() && (!v.isAux() || config.debug > 0)) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("compact " + v.getName() + " " + v.getBase() + " " + v.getOffset());
+        for (IntegerVariable d : v.getDigits()) {
+          sb.append(" " + d.getName());
+        }
+        mapWriter.write(sb.toString());
+        mapWriter.write('\n');
+      }
+    }
     mapWriter.close();
   }
 
@@ -6,4 +6,5 @@ public enum Encoding {
   XXX_DIREDT_ORDER, // Unimplemented
   LOG,
   XXX_LOG_ORDER, // Unimplemented
+  COMPACT_ORDER,
 }
@@ -0,0 +1,202 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jp.kobe_u.sugar.expression.Expression;
+import jp.kobe_u.sugar.expression.Sequence;
+
+/**
+ * EncodingProfile counts the SAT variables and clauses generated
+ * for each top-level expression (origin) of the CSP.
+ * The origins are recorded by the converter in the variables and clauses of the CSP,
+ * including the auxiliary ones.
+ * An auxiliary variable shared by several expressions is counted
+ * for the expression which created it.
+ *
+ * @see AbstractEncoder
+ * @see jp.kobe_u.sugar.csp.CSP#setOrigin(Expression)
+ */
+public class EncodingProfile {
+  /**
+   * The kind of the variables and clauses whose origin is unknown.
+   */
+  public static final String UNKNOWN_KIND = "?";
+
+  private Map<Expression, Entry> origins = new IdentityHashMap<Expression, Entry>();
+
+  private Entry unknown = new Entry(null, UNKNOWN_KIND);
+
+  /**
+   * Entry holds the numbers of SAT variables and clauses for an origin or a kind.
+   */
+  public static class Entry {
+    private Expression origin;
+    private String kind;
+    private long variablesCount = 0;
+    private long clausesCount = 0;
+
+    Entry(Expression origin, String kind) {
+      this.origin = origin;
+      this.kind = kind;
+    }
+
+    /**
+     * Returns the origin expression, or null for the entry of a kind.
+     *
+     * @return the origin expression
+     */
+    public Expression getOrigin() {
+      return origin;
+    }
+
+    public String getKind() {
+      return kind;
+    }
+
+    public long getVariablesCount() {
+      return variablesCount;
+    }
+
+    public long getClausesCount() {
+      return clausesCount;
+    }
+
+    @Override
+    public String toString() {
+      return clausesCount + " clauses, " + variablesCount + " variables : "
+          + (origin == null ? kind : origin.toString());
+    }
+  }
+
+  /**
+   * Returns the kind of the given origin,
+   * i.e. the name of the constraint (or definition) at the top of the expression.
+   *
+   * @param origin the origin expression
+   * @return the kind of the origin
+   */
+  public static String kindOf(Expression origin) {
+    if (origin == null) {
+      return UNKNOWN_KIND;
+    }
+    if (origin.isSequence() && ((Sequence) origin).length() > 0) {
+      Expression head = ((Sequence) origin).get(0);
+      if (head.isAtom()) {
+        return head.toString();
+      }
+    }
+    if (origin.isAtom()) {
+      return "literal";
+    }
+    return UNKNOWN_KIND;
+  }
+
+  private Entry entryOf(Expression origin) {
+    if (origin == null) {
+      return unknown;
+    }
+    Entry entry = origins.get(origin);
+    if (entry == null) {
+      entry = new Entry(origin, kindOf(origin));
+      origins.put(origin, entry);
+    }
+    return entry;
+  }
+
+  public void addVariables(Expression origin, int count) {
+    if (count != 0) {
+      entryOf(origin).variablesCount += count;
+    }
+  }
+
+  public void addClauses(Expression origin, int count) {
+    if (count != 0) {
+      entryOf(origin).clausesCount += count;
+    }
+  }
+
+  /**
+   * Returns the entries for each origin
+   * in the descending order of the numbers of clauses and variables.
+   * The entry of the unknown origin is included if it is not empty.
+   *
+   * @return the ranked entries
+   */
+  public List<Entry> getOriginEntries() {
+    List<Entry> entries = new ArrayList<Entry>(origins.values());
+    if (unknown.variablesCount != 0 || unknown.clausesCount != 0) {
+      entries.add(unknown);
+    }
+    sort(entries);
+    return entries;
+  }
+
+  /**
+   * Returns the entries summed up for each kind
+   * in the descending order of the numbers of clauses and variables.
+   *
+   * @return the ranked entries
+   */
+  public List<Entry> getKindEntries() {
+    Map<String, Entry> kinds = new LinkedHashMap<String, Entry>();
+    for (Entry entry : getOriginEntries()) {
+      Entry kind = kinds.get(entry.kind);
+      if (kind == null) {
+        kind = new Entry(null, entry.kind);
+        kinds.put(entry.kind, kind);
+      }
+      kind.variablesCount += entry.variablesCount;
+      kind.clausesCount += entry.clausesCount;
+    }
+    List<Entry> entries = new ArrayList<Entry>(kinds.values());
+    sort(entries);
+    return entries;
+  }
+
+  private static void sort(List<Entry> entries) {
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry e1, Entry e2) {
+        int c = Long.compare(e2.clausesCount, e1.clausesCount);
+        if (c != 0) {
+          return c;
+        }
+        return Long.compare(e2.variablesCount, e1.variablesCount);
+      }
+    });
+  }
+
+  /**
+   * Returns a report of the kinds and the top origins.
+   *
+   * @param limit the maximum number of origins to be reported
+   * @return the report consisting of lines
+   */
+  public List<String> report(int limit) {
+    List<String> lines = new ArrayList<String>();
+    lines.add("SAT size by kind");
+    for (Entry entry : getKindEntries()) {
+      lines.add("  " + entry);
+    }
+    List<Entry> entries = getOriginEntries();
+    lines.add("SAT size by expression (top " + Math.min(limit, entries.size())
+        + " of " + entries.size() + ")");
+    for (int i = 0; i < limit && i < entries.size(); i++) {
+      lines.add("  " + entries.get(i));
+    }
+    return lines;
+  }
+
+  /**
+   * Clears all the counts.
+   */
+  public void clear() {
+    origins.clear();
+    unknown = new Entry(null, UNKNOWN_KIND);
+  }
+}
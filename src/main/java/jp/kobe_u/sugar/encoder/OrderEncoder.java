@@ -3,6 +3,7 @@ package jp.kobe_u.sugar.encoder;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import jp.kobe_u.sugar.SugarConfig;
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.csp.BooleanLiteral;
 import jp.kobe_u.sugar.csp.CSP;
@@ -28,6 +29,10 @@ public class OrderEncoder extends AbstractEncoder {
     super(csp, problem);
   }
 
+  public OrderEncoder(CSP csp, Problem problem, SugarConfig config) {
+    super(csp, problem, config);
+  }
+
   private int[] expand(int[] clause0, int n) {
     int[] clause = new int[clause0.length + n];
     for (int i = 0; i < clause0.length; i++) {
@@ -108,6 +113,10 @@ public class OrderEncoder extends AbstractEncoder {
   @Override
   public void encodeIntegerVariable(IntegerVariable v) throws SugarException {
     problem.addComment(v.toString());
+    if (v.isCompact()) {
+      // encoded by its digits
+      return;
+    }
     IntegerDomain domain = v.getDomain();
     int[] clause = new int[2];
     int a0 = domain.getLowerBound();
@@ -233,8 +242,15 @@ public class OrderEncoder extends AbstractEncoder {
         int c = iter.next();
         // vs[i]=c -> ...
         // encoder.writeComment(vs[i].getName() + " = " + c);
-        clause[i2] = getCodeLE(vs[i], 1, c - 1);
-        clause[i2 + 1] = getCodeLE(vs[i], -1, -c - 1);
+        IntegerVariable e = csp.findEquality(vs[i], c);
+        if (e != null) {
+          // the shared literal of vs[i]=c is used instead of the pair
+          clause[i2] = getCodeLE(e, 0);
+          clause[i2 + 1] = Problem.FALSE_CODE;
+        } else {
+          clause[i2] = getCodeLE(vs[i], 1, c - 1);
+          clause[i2 + 1] = getCodeLE(vs[i], -1, -c - 1);
+        }
         if (clause[i2] != Problem.TRUE_CODE && clause[i2 + 1] != Problem.TRUE_CODE) {
           encodeLinearNe(as, vs, i + 1, s + a * c, clause);
         }
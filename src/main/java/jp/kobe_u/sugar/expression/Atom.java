@@ -54,6 +54,10 @@ public class Atom extends Expression {
       return 0;
     }
     Atom another = (Atom) x;
+    if ((atom instanceof Integer) != (another.atom instanceof Integer)) {
+      // integers precede strings
+      return atom instanceof Integer ? -1 : 1;
+    }
     return atom.compareTo(another.atom);
   }
 
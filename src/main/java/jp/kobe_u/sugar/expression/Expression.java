@@ -1,9 +1,10 @@
 package jp.kobe_u.sugar.expression;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import jp.kobe_u.sugar.SugarConstants;
 import jp.kobe_u.sugar.csp.IntegerVariable;
 
@@ -16,8 +17,8 @@ public abstract class Expression implements Comparable<Expression> {
   // public static final int MAX_MAP_SIZE = 100000;
   public static final int MAX_MAP_SIZE = 10000;
   public static boolean intern = false;
-  private static HashMap<Expression, Expression> map =
-      new HashMap<Expression, Expression>();
+  private static Map<Expression, Expression> map =
+      new ConcurrentHashMap<Expression, Expression>();
   public static final Expression DOMAIN_DEFINITION =
       create(SugarConstants.DOMAIN_DEFINITION);
   public static final Expression INT_DEFINITION =
@@ -195,7 +196,7 @@ public abstract class Expression implements Comparable<Expression> {
     if (intern) {
       if (!map.containsKey(x)) {
         if (map.size() < MAX_MAP_SIZE) {
-          map.put(x, x);
+          map.putIfAbsent(x, x);
         }
       } else {
         // System.out.println("Found " + x);
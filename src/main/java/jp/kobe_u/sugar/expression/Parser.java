@@ -8,6 +8,7 @@ import java.io.StreamTokenizer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
@@ -45,6 +46,7 @@ public class Parser {
   private BufferedReader reader;
   private boolean prolog;
   private StreamTokenizer st;
+  private Iterator<Expression> pending;
 
   /**
    * Constructs a new parser.
@@ -93,27 +95,61 @@ public class Parser {
    * @throws IOException
    */
   public List<Expression> parseCSP() throws IOException {
-    st = new StreamTokenizer(reader);
-    st.resetSyntax();
-    st.commentChar(';');
-    st.whitespaceChars(0x0000, 0x0020);
-    st.wordChars('A', 'Z');
-    st.wordChars('a', 'z');
-    st.wordChars('_', '_');
-    st.wordChars('0', '9');
-    char[] chars = {
-        '+', '-', '*', '/', '%',
-        '=', '<', '>', '!', '&', '|', '$'};
-    for (char c : chars) {
-      st.wordChars(c, c);
+    List<Expression> expressions = new ArrayList<Expression>();
+    Expression x;
+    while ((x = nextCSP()) != null) {
+      expressions.add(x);
+      int n = expressions.size();
+      if (n % 10000 == 0) {
+        Logger.fine("parsed " + n + " expressions");
+      }
+    }
+    return expressions;
+  }
+
+  /**
+   * Parses the next top-level expression of the input.
+   * The input is read only as far as the end of the expression,
+   * so that a large input can be processed while it is being parsed.
+   * An input in Prolog format is parsed at the first call.
+   *
+   * @return the next expression, or null at the end of the input
+   * @throws IOException
+   */
+  public Expression next() throws IOException {
+    if (!prolog) {
+      return nextCSP();
+    }
+    if (pending == null) {
+      pending = parseProlog().iterator();
+    }
+    return pending.hasNext() ? pending.next() : null;
+  }
+
+  private Expression nextCSP() throws IOException {
+    if (st == null) {
+      st = new StreamTokenizer(reader);
+      st.resetSyntax();
+      st.commentChar(';');
+      st.whitespaceChars(0x0000, 0x0020);
+      st.wordChars('A', 'Z');
+      st.wordChars('a', 'z');
+      st.wordChars('_', '_');
+      st.wordChars('0', '9');
+      char[] chars = {
+          '+', '-', '*', '/', '%',
+          '=', '<', '>', '!', '&', '|', '$'};
+      for (char c : chars) {
+        st.wordChars(c, c);
+      }
+      st.wordChars(0x000080, 0x10FFFF);
+      st.parseNumbers();
+      st.eolIsSignificant(false);
+      st.nextToken();
     }
-    st.wordChars(0x000080, 0x10FFFF);
-    st.parseNumbers();
-    st.eolIsSignificant(false);
 
     Stack<List<Expression>> stack = new Stack<List<Expression>>();
     List<Expression> expressions = new ArrayList<Expression>();
-    st.nextToken();
     while (st.ttype != StreamTokenizer.TT_EOF) {
       Expression x;
       switch (st.ttype) {
@@ -131,11 +167,13 @@ public class Parser {
           expressions.add(x);
           break;
         case '-':
-          expressions.add(conv.get("-"));
+          x = conv.get("-");
+          expressions.add(x);
           break;
         case '(':
           stack.push(expressions);
           expressions = new ArrayList<Expression>();
+          x = null;
           break;
         case ')':
           if (expressions.size() == 2 && expressions.get(0).equals(Expression.SUB)) {
@@ -148,23 +186,20 @@ public class Parser {
           }
           expressions = stack.pop();
           expressions.add(x);
-          if (stack.isEmpty()) {
-            int n = expressions.size();
-            if (n % 10000 == 0) {
-              Logger.fine("parsed " + n + " expressions");
-            }
-          }
           break;
         default:
           char c = (char) st.ttype;
           throw new IOException("Bad character " + c + " at line " + st.lineno());
       }
       st.nextToken();
+      if (x != null && stack.isEmpty()) {
+        return x;
+      }
     }
     if (!stack.isEmpty()) {
       throw new IOException("Missing right paren at line " + st.lineno());
     }
-    return expressions;
+    return null;
   }
 
   /**
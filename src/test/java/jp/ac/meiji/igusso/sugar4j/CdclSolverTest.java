@@ -0,0 +1,182 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CdclSolverTest {
+  CdclSolver solver;
+
+  @Before
+  public void before() {
+    solver = CdclSolver.newInstance();
+  }
+
+  @After
+  public void after() {
+    solver.close();
+  }
+
+  @Test
+  public void testSat() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+    solver.add(1);
+
+    List<Integer> actual = solver.solve();
+    List<Integer> expected = Arrays.asList(SatSolver.SAT, 1, -2, -3);
+
+    assertThat(actual, is(expected));
+  }
+
+  @Test
+  public void testSatModel() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+
+    SatModel model = new SatModel();
+    solver.assume(2);
+    assertThat(solver.solve(model), is(SatSolver.SAT));
+    assertThat(model.size(), is(3));
+    assertThat(model.get(1), is(false));
+    assertThat(model.get(2), is(true));
+    assertThat(model.value(3), is(-3));
+    assertThat(model.isTrue(-3), is(true));
+
+    solver.assume(3);
+    assertThat(solver.solve(model), is(SatSolver.SAT));
+    assertThat(model.get(2), is(false));
+    assertThat(model.get(3), is(true));
+
+    solver.add(-3);
+    solver.assume(3);
+    assertThat(solver.solve(model), is(SatSolver.UNSAT));
+  }
+
+  @Test
+  public void testUnsat() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+    solver.add(1);
+    solver.add(2);
+
+    List<Integer> actual = solver.solve();
+    List<Integer> expected = Arrays.asList(SatSolver.UNSAT);
+
+    assertThat(actual, is(expected));
+  }
+
+  @Test
+  public void testAssume() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+
+    List<Integer> actual;
+    List<Integer> expected;
+
+    solver.assume(2);
+    actual = solver.solve();
+    expected = Arrays.asList(SatSolver.SAT, -1, 2, -3);
+    assertThat(actual, is(expected));
+
+    solver.assume(1);
+    solver.assume(2);
+    actual = solver.solve();
+    expected = Arrays.asList(SatSolver.UNSAT);
+    assertThat(actual, is(expected));
+    assertThat(solver.failed(1) || solver.failed(2), is(true));
+
+    actual = solver.solve();
+    assertThat(actual.get(0), is(SatSolver.SAT));
+  }
+
+  @Test
+  public void testIncremental() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+
+    assertThat(solver.solve().get(0), is(SatSolver.SAT));
+    solver.add(-1);
+    assertThat(solver.solve().get(0), is(SatSolver.SAT));
+    solver.add(-2);
+    assertThat(solver.solve().get(0), is(SatSolver.SAT));
+    solver.add(-3);
+    assertThat(solver.solve().get(0), is(SatSolver.UNSAT));
+  }
+
+  @Test
+  public void testPigeonHole() {
+    // 7 pigeons, 6 holes
+    int pigeons = 7;
+    int holes = 6;
+    for (int i = 0; i < pigeons; i++) {
+      int[] clause = new int[holes];
+      for (int j = 0; j < holes; j++) {
+        clause[j] = i * holes + j + 1;
+      }
+      solver.add(clause);
+    }
+    for (int j = 0; j < holes; j++) {
+      for (int i1 = 0; i1 < pigeons; i1++) {
+        for (int i2 = i1 + 1; i2 < pigeons; i2++) {
+          solver.add(-(i1 * holes + j + 1), -(i2 * holes + j + 1));
+        }
+      }
+    }
+    assertThat(solver.solve().get(0), is(SatSolver.UNSAT));
+  }
+
+  @Test
+  public void testRandom3Sat() {
+    Random rand = new Random(0);
+    for (int round = 0; round < 20; round++) {
+      CdclSolver s = CdclSolver.newInstance();
+      int n = 60;
+      int[][] clauses = new int[(int) (n * 4.2)][3];
+      for (int[] clause : clauses) {
+        for (int j = 0; j < 3; j++) {
+          int v = rand.nextInt(n) + 1;
+          clause[j] = rand.nextBoolean() ? v : -v;
+        }
+        s.add(clause);
+      }
+      List<Integer> res = s.solve();
+      if (res.get(0) == SatSolver.SAT) {
+        for (int[] clause : clauses) {
+          boolean satisfied = false;
+          for (int lit : clause) {
+            satisfied |= res.get(Math.abs(lit)) == lit;
+          }
+          assertThat(satisfied, is(true));
+        }
+      } else {
+        assertThat(res.get(0), is(SatSolver.UNSAT));
+      }
+      s.close();
+    }
+  }
+
+  @Test
+  public void testInterrupt() {
+    solver.interrupt();
+    solver.add(1, 2);
+    assertThat(solver.solve().get(0), is(SatSolver.SAT));
+  }
+}
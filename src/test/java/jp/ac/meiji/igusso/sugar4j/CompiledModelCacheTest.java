@@ -0,0 +1,156 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static jp.kobe_u.sugar.expression.Expression.create;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.expression.Expression;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompiledModelCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<Expression> newModel(int sum) {
+    List<Expression> expressions = new ArrayList<>();
+    List<Expression> xs = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Expression x = create("x" + i);
+      expressions.add(create(Expression.INT_DEFINITION, x, create(0), create(9)));
+      xs.add(x);
+    }
+    expressions.add(create(Expression.ALLDIFFERENT, xs));
+    expressions.add(create(Expression.EQ, create(Expression.ADD, xs), create(sum)));
+    return expressions;
+  }
+
+  private static int sumOf(Solution solution) {
+    int sum = 0;
+    for (int i = 0; i < 4; i++) {
+      sum += solution.getInt(create("x" + i));
+    }
+    return sum;
+  }
+
+  @Test
+  public void testHit() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    CompiledModelCache cache = CompiledModelCache.newInstance(directory, 0);
+    CompiledModel model1 = cache.get(newModel(20), new SugarConfig());
+    assertThat(cache.size() > 0, is(true));
+    long size = cache.size();
+
+    // 別のプロセスを想定して, 新しいキャッシュのオブジェクトから読み込む
+    CompiledModel model2 =
+        CompiledModelCache.newInstance(directory, 0).get(newModel(20), new SugarConfig());
+    assertThat(cache.size(), is(size));
+    assertThat(model2.getSatClausesCount(), is(model1.getSatClausesCount()));
+    assertThat(model2.getSatVariablesCount(), is(model1.getSatVariablesCount()));
+
+    try (Sugar4j sugar4j = model2.instantiate(CdclSolver.newInstance())) {
+      sugar4j.addConstraint(create(Expression.LE, create("x0"), create(1)));
+      Solution solution = sugar4j.solve();
+      assertThat(solution.isSat(), is(true));
+      assertThat(solution.getInt(create("x0")) <= 1, is(true));
+      assertThat(sumOf(solution), is(20));
+    }
+  }
+
+  @Test
+  public void testKey() throws Exception {
+    CompiledModelCache cache = CompiledModelCache.newInstance(folder.getRoot().toPath(), 0);
+    cache.get(newModel(20), new SugarConfig());
+    cache.get(newModel(21), new SugarConfig());
+    SugarConfig config = new SugarConfig();
+    config.maxLinearSumSize = 2;
+    cache.get(newModel(20), config);
+    cache.get(newModel(20), new SugarConfig());
+    assertThat(Files.list(folder.getRoot().toPath()).count(), is(3L));
+  }
+
+  @Test
+  public void testCspFile() throws Exception {
+    Path csp = folder.newFile("model.csp").toPath();
+    Files.write(csp, Arrays.asList(
+        "(int x 0 9)", "(int y 0 9)", "(= (+ x y) 12)", "(> x y)"), StandardCharsets.UTF_8);
+    CompiledModelCache cache =
+        CompiledModelCache.newInstance(folder.newFolder("cache").toPath(), 0);
+    cache.get(csp, new SugarConfig());
+    CompiledModel model = cache.get(csp, new SugarConfig());
+
+    try (Sugar4j sugar4j = model.instantiate(CdclSolver.newInstance())) {
+      OptimizationResult result = sugar4j.minimize(create("x"));
+      assertThat(result.isOptimal(), is(true));
+      assertThat(result.getObjectiveValue(), is(7));
+    }
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    CompiledModelCache cache = CompiledModelCache.newInstance(directory, 0);
+    cache.get(newModel(20), new SugarConfig());
+    long size = cache.size();
+    cache.clear();
+
+    // 2つ分の大きさに制限すると, 最後に使用していないものから削除される
+    cache = CompiledModelCache.newInstance(directory, size * 2 + size / 2);
+    cache.get(newModel(20), new SugarConfig());
+    Thread.sleep(1100);
+    cache.get(newModel(21), new SugarConfig());
+    Thread.sleep(1100);
+    cache.get(newModel(20), new SugarConfig());
+    Thread.sleep(1100);
+    cache.get(newModel(22), new SugarConfig());
+    assertThat(cache.size() <= size * 2 + size / 2, is(true));
+    assertThat(Files.list(directory).count(), is(2L));
+
+    long before = cache.size();
+    cache.get(newModel(20), new SugarConfig());
+    assertThat(cache.size(), is(before));
+  }
+
+  @Test
+  public void testDietDomain() throws Exception {
+    boolean diet = IntegerDomain.USE_DIET_DOMAIN;
+    IntegerDomain.USE_DIET_DOMAIN = true;
+    try {
+      Path directory = folder.getRoot().toPath();
+      Expression x = create("x");
+      List<Expression> expressions = Arrays.asList(create(Expression.INT_DEFINITION, x,
+          create(create(create(0), create(3)), create(create(10), create(12)))));
+      CompiledModelCache.newInstance(directory, 0).get(expressions, new SugarConfig());
+
+      // 読み込んだ定義域は区間の和のまま
+      CompiledModel model =
+          CompiledModelCache.newInstance(directory, 0).get(expressions, new SugarConfig());
+      Set<Integer> values = new TreeSet<>();
+      try (Sugar4j sugar4j = model.instantiate(CdclSolver.newInstance())) {
+        while (true) {
+          Solution solution = sugar4j.solve();
+          if (!solution.isSat()) {
+            break;
+          }
+          values.add(solution.getInt(x));
+          sugar4j.addConstraint(create(Expression.NE, x, create(solution.getInt(x))));
+        }
+      }
+      assertThat(values.toString(), is("[0, 1, 2, 3, 10, 11, 12]"));
+    } finally {
+      IntegerDomain.USE_DIET_DOMAIN = diet;
+    }
+  }
+}
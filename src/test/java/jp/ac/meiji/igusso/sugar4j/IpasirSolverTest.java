@@ -8,6 +8,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -16,12 +17,18 @@ public class IpasirSolverTest {
 
   @Before
   public void before() {
-    solver = IpasirSolver.newInstance("glueminisat");
+    try {
+      solver = IpasirSolver.newInstance("glueminisat");
+    } catch (UnsatisfiedLinkError ex) {
+      Assume.assumeNoException("native solver is not installed", ex);
+    }
   }
 
   @After
   public void after() {
-    solver.close();
+    if (solver != null) {
+      solver.close();
+    }
   }
 
   @Test
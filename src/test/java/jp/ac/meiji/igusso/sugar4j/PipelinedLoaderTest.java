@@ -0,0 +1,84 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static jp.kobe_u.sugar.expression.Expression.create;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.expression.Expression;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PipelinedLoaderTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /*
+   * x0 < x1 < ... < x(n-1) かつ x(i) + x(i+1) が奇数である問題.
+   */
+  private static List<String> newChain(int n) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      lines.add("(int x" + i + " 0 " + (2 * n) + ")");
+    }
+    for (int i = 0; i + 1 < n; i++) {
+      lines.add("(< x" + i + " x" + (i + 1) + ") ; comment");
+      lines.add("(= (% (+ x" + i + " x" + (i + 1) + ") 2) 1)");
+    }
+    return lines;
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    int n = 30;
+    Path csp = folder.newFile("chain.csp").toPath();
+    Files.write(csp, newChain(n), StandardCharsets.UTF_8);
+
+    // 小さなキューで, 各段が待たされる状況を作る
+    PipelinedLoader loader = PipelinedLoader.newInstance(7, 2, 64);
+    try (Sugar4j sugar4j = loader.load(csp, CdclSolver.newInstance(), new SugarConfig())) {
+      Solution solution = sugar4j.solve();
+      assertThat(solution.isSat(), is(true));
+      for (int i = 0; i + 1 < n; i++) {
+        int x0 = solution.getInt(create("x" + i));
+        int x1 = solution.getInt(create("x" + (i + 1)));
+        assertThat(x0 < x1, is(true));
+        assertThat((x0 + x1) % 2, is(1));
+      }
+
+      // 読み込み後に追加した制約も反映される
+      sugar4j.addConstraint(create(Expression.GE, create("x0"), create(n + 2)));
+      assertThat(sugar4j.solve().isSat(), is(false));
+    }
+  }
+
+  @Test
+  public void testSameEncodingAsOneShot() throws Exception {
+    Path csp = folder.newFile("chain.csp").toPath();
+    Files.write(csp, newChain(20), StandardCharsets.UTF_8);
+
+    // 変数の宣言が先に並んでいても, 後の制約で狭まった定義域で符号化される
+    try (Sugar4j batched = PipelinedLoader.newInstance(3, 2, 64)
+             .load(csp, CdclSolver.newInstance(), new SugarConfig());
+         Sugar4j oneShot = PipelinedLoader.newInstance(1000, 2, 1 << 16)
+             .load(csp, CdclSolver.newInstance(), new SugarConfig())) {
+      assertThat(batched.getSatVariablesCount(), is(oneShot.getSatVariablesCount()));
+      assertThat(batched.getSatClausesCount(), is(oneShot.getSatClausesCount()));
+    }
+  }
+
+  @Test(expected = Sugar4jException.class)
+  public void testParseError() throws Exception {
+    BufferedReader reader = new BufferedReader(new StringReader("(int x 0 3)\n(< x 2))\n"));
+    PipelinedLoader.newInstance().load(reader, CdclSolver.newInstance(), new SugarConfig());
+  }
+}
@@ -0,0 +1,164 @@
+package jp.ac.meiji.igusso.sugar4j;
+
+import static jp.kobe_u.sugar.expression.Expression.create;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import jp.kobe_u.sugar.expression.Expression;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PortfolioSolverTest {
+  PortfolioSolver solver;
+
+  @Before
+  public void before() {
+    solver = PortfolioSolver.newInstance(
+        CdclSolver.newInstance(), CdclSolver.newInstance(1), CdclSolver.newInstance(2));
+  }
+
+  @After
+  public void after() {
+    solver.close();
+  }
+
+  @Test
+  public void testSat() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+    solver.add(1);
+
+    List<Integer> actual = solver.solve();
+    List<Integer> expected = Arrays.asList(SatSolver.SAT, 1, -2, -3);
+
+    assertThat(actual, is(expected));
+    assertThat(solver.getWinner() != null, is(true));
+  }
+
+  @Test
+  public void testAssume() {
+    solver.add(1, 2, 3);
+    solver.add(-1, -2);
+    solver.add(-2, -3);
+    solver.add(-3, -1);
+
+    solver.assume(2);
+    assertThat(solver.solve(), is(Arrays.asList(SatSolver.SAT, -1, 2, -3)));
+
+    solver.assume(1);
+    solver.assume(2);
+    assertThat(solver.solve(), is(Arrays.asList(SatSolver.UNSAT)));
+    assertThat(solver.failed(1) || solver.failed(2), is(true));
+
+    solver.add(-1);
+    SatModel model = new SatModel();
+    assertThat(solver.solve(model), is(SatSolver.SAT));
+    assertThat(model.get(1), is(false));
+  }
+
+  @Test
+  public void testPigeonHole() {
+    int pigeons = 7;
+    int holes = 6;
+    for (int i = 0; i < pigeons; i++) {
+      int[] clause = new int[holes];
+      for (int j = 0; j < holes; j++) {
+        clause[j] = i * holes + j + 1;
+      }
+      solver.add(clause);
+    }
+    for (int j = 0; j < holes; j++) {
+      for (int i1 = 0; i1 < pigeons; i1++) {
+        for (int i2 = i1 + 1; i2 < pigeons; i2++) {
+          solver.add(-(i1 * holes + j + 1), -(i2 * holes + j + 1));
+        }
+      }
+    }
+    assertThat(solver.solve().get(0), is(SatSolver.UNSAT));
+    assertThat(solver.solve().get(0), is(SatSolver.UNSAT));
+  }
+
+  /*
+   * 中断に応じず, 一定時間後にINTERRUPTEDを返すソルバ.
+   */
+  private static final class SlowSolver implements SatSolver {
+    @Override
+    public String getName() {
+      return "slow";
+    }
+
+    @Override
+    public void add(int... clause) {
+    }
+
+    @Override
+    public void add(Collection<Integer> clause) {
+    }
+
+    @Override
+    public void assume(int literal) {
+    }
+
+    @Override
+    public List<Integer> solve() {
+      return solve(-1);
+    }
+
+    @Override
+    public List<Integer> solve(long timeout) {
+      try {
+        Thread.sleep(1500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return Arrays.asList(INTERRUPTED);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Test
+  public void testUninterruptibleSolver() {
+    try (PortfolioSolver portfolio = PortfolioSolver.newInstance(
+        new SlowSolver(), CdclSolver.newInstance())) {
+      portfolio.add(1, 2);
+      portfolio.add(-1);
+
+      // 遅いソルバの停止を待たずに結果が返る
+      long start = System.nanoTime();
+      assertThat(portfolio.solve(), is(Arrays.asList(SatSolver.SAT, -1, 2)));
+      assertThat(System.nanoTime() - start < 1_000_000_000L, is(true));
+
+      // 次のsolveは遅いソルバの停止を待ってから始まる
+      portfolio.add(-2);
+      assertThat(portfolio.solve(), is(Arrays.asList(SatSolver.UNSAT)));
+    }
+  }
+
+  @Test
+  public void testSugar4j() {
+    Sugar4j sugar4j = Sugar4j.newInstance(solver);
+    Expression x = sugar4j.addIntVariable("x", 0, 9);
+    Expression y = sugar4j.addIntVariable("y", 0, 9);
+    sugar4j.addConstraint(create(Expression.EQ, create(Expression.ADD, x, y), create(12)));
+    sugar4j.addConstraint(create(Expression.GT, x, y));
+
+    Solution solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(x) + solution.getInt(y), is(12));
+    assertThat(solution.getInt(x) > solution.getInt(y), is(true));
+
+    OptimizationResult result = sugar4j.minimize(x);
+    assertThat(result.isOptimal(), is(true));
+    assertThat(result.getObjectiveValue(), is(7));
+  }
+}
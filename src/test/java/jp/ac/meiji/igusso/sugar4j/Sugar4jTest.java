@@ -5,12 +5,25 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jp.kobe_u.sugar.SugarConfig;
+import jp.kobe_u.sugar.converter.CardinalityConverter;
+import jp.kobe_u.sugar.converter.GlobalConverter;
+import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.encoder.EncodingProfile;
 import jp.kobe_u.sugar.expression.Expression;
 import org.junit.After;
 import org.junit.Before;
@@ -23,7 +36,7 @@ public final class Sugar4jTest {
 
   @Before
   public void before() {
-    sugar4j = Sugar4j.newInstance(IpasirSolver.newInstance("glueminisat"));
+    sugar4j = Sugar4j.newInstance(CdclSolver.newInstance());
 
     bv = new Expression[3];
     for (int i = 0; i < bv.length; i++) {
@@ -213,6 +226,101 @@ public final class Sugar4jTest {
     assertThat(solution.getIntMap().get(iv[0]), is(2));
   }
 
+  @Test
+  public void testComparisonAssume() throws Exception {
+    Expression sv = sugar4j.addIntVariable("sv", Arrays.asList(-4, -1, 3, 7, 10));
+    sugar4j.addConstraint(create(Expression.EQ, iv[0], create(Expression.ADD, iv[1], iv[2])));
+
+    sugar4j.addAssumption(create(Expression.GT, create(Expression.MUL, create(2), sv), create(3)));
+    sugar4j.addAssumption(create(Expression.LE, create(Expression.ADD, sv, create(1)), create(7)));
+    Solution solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(sv), is(3));
+
+    sugar4j.addAssumption(create(Expression.GE, create(Expression.NEG, sv), create(2)));
+    solution = sugar4j.solve();
+    assertThat(solution.getInt(sv) <= -2, is(true));
+
+    sugar4j.addAssumption(create(Expression.EQ, create(Expression.SUB, iv[1], create(1)),
+        create(2)));
+    sugar4j.addAssumption(bv[1].not());
+    solution = sugar4j.solve();
+    assertThat(solution.getInt(iv[1]), is(3));
+    assertThat(solution.getBool(bv[1]), is(false));
+
+    Expression unsat = create(Expression.LT, create(Expression.MUL, iv[2], create(3)), create(0));
+    sugar4j.addAssumption(unsat);
+    sugar4j.addAssumption(iv[1], Expression.LE, 4);
+    assertThat(sugar4j.solve().isSat(), is(false));
+    assertThat(sugar4j.minimizeFailedAssumptions(-1).size(), is(1));
+    assertThat(sugar4j.getFailedAssumptions().get(0).toExpression(), is(unsat));
+  }
+
+  @Test
+  public void testConstraintAssume() throws Exception {
+    Expression sum = create(Expression.ADD, iv[1], iv[2]);
+    sugar4j.addConstraint(create(Expression.EQ, iv[0], sum));
+
+    sugar4j.addAssumption(create(Expression.GE, sum, create(3)));
+    Solution solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[1]) + solution.getInt(iv[2]) >= 3, is(true));
+    final int clauses = sugar4j.getSatClausesCount();
+
+    // 引数の順序が異なっても同じ制約として再利用される
+    sugar4j.addAssumption(
+        create(Expression.LE, create(3), create(Expression.ADD, iv[2], iv[1])));
+    assertThat(sugar4j.solve().isSat(), is(true));
+    assertThat(sugar4j.getSatClausesCount(), is(clauses));
+
+    Expression alldiff = create(Expression.ALLDIFFERENT, iv[0], iv[1], iv[2]);
+    sugar4j.addAssumption(alldiff);
+    sugar4j.addAssumption(create(Expression.GE, sum, create(3)));
+    solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[1]) != solution.getInt(iv[2]), is(true));
+    assertThat(solution.getInt(iv[0]) != solution.getInt(iv[1]), is(true));
+    final int clausesWithAllDifferent = sugar4j.getSatClausesCount();
+    assertThat(clausesWithAllDifferent > clauses, is(true));
+
+    sugar4j.addAssumption(alldiff);
+    sugar4j.addAssumption(create(Expression.LE, sum, create(1)));
+    sugar4j.addAssumption(bv[0]);
+    assertThat(sugar4j.solve().isSat(), is(false));
+    assertThat(sugar4j.minimizeFailedAssumptions(-1).size(), is(2));
+
+    sugar4j.addAssumption(alldiff);
+    assertThat(sugar4j.solve().isSat(), is(true));
+    assertThat(sugar4j.getSatClausesCount() > clausesWithAllDifferent, is(true));
+
+    // 仮定しなければ制約は課されない
+    sugar4j.addAssumption(iv[1], Expression.EQ, 0);
+    sugar4j.addAssumption(iv[2], Expression.EQ, 0);
+    assertThat(sugar4j.solve().isSat(), is(true));
+  }
+
+  @Test
+  public void testReifiedAssumptionExpires() throws Exception {
+    try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance())) {
+      List<Expression> xs = new ArrayList<>();
+      List<Expression> bs = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        xs.add(s.addIntVariable("x" + i, 0, 3));
+        bs.add(s.addIntVariable("b" + i, 0, 1));
+      }
+      s.addAssumption(create(Expression.LE, create(Expression.ADD, xs), create(2)));
+      s.addAssumption(create(Expression.LE, create(Expression.ADD, bs), create(1)));
+      assertThat(s.solve().isSat(), is(true));
+
+      // 仮定した線形和や0-1変数の和の制約は次の求解には課されない
+      for (int i = 0; i < 6; i++) {
+        s.addConstraint(create(Expression.EQ, xs.get(i), create(3)));
+        s.addConstraint(create(Expression.EQ, bs.get(i), create(1)));
+      }
+      assertThat(s.solve().isSat(), is(true));
+    }
+  }
+
   @Test
   public void testEnumeration() throws Exception {
     sugar4j.addConstraint(create(Expression.EQ, iv[0], create(Expression.ADD, iv[1], iv[2])));
@@ -255,6 +363,879 @@ public final class Sugar4jTest {
     assertThat(actual, is(expected));
   }
 
+  @Test
+  public void testTypedGetter() throws Exception {
+    Expression sv = sugar4j.addIntVariable("sv", Arrays.asList(-3, 1, 2, 8, 9, 20));
+    sugar4j.addConstraint(create(Expression.EQ, iv[0], create(Expression.ADD, iv[1], iv[2])));
+    sugar4j.addConstraint(create(Expression.OR, bv[0], bv[1]));
+
+    for (int value : Arrays.asList(-3, 1, 2, 8, 9, 20)) {
+      sugar4j.addAssumption(sv, Expression.EQ, value);
+      Solution solution = sugar4j.solve();
+      assertThat(solution.isSat(), is(true));
+      assertThat(solution.getInt(sv), is(value));
+      assertThat(solution.getIntMap().get(sv), is(value));
+      assertThat(solution.getInt(iv[0]), is(solution.getInt(iv[1]) + solution.getInt(iv[2])));
+      assertThat(solution.getBool(bv[0]) || solution.getBool(bv[1]), is(true));
+      assertThat(solution.getBoolMap().get(bv[2]), is(solution.getBool(bv[2])));
+      assertThat(solution.getIntMap().containsKey(create("unknown")), is(false));
+
+      Map<Expression, Integer> intMap = new HashMap<>(solution.getIntMap());
+      assertThat(intMap.size(), is(solution.getIntMap().size()));
+      assertThat(intMap.get(iv[1]), is(solution.getInt(iv[1])));
+    }
+  }
+
+  @Test
+  public void testMinimize() throws Exception {
+    sugar4j.addConstraint(create(Expression.EQ, iv[0], create(Expression.ADD, iv[1], iv[2])));
+    sugar4j.addConstraint(create(Expression.GT, iv[1], iv[2]));
+    sugar4j.addConstraint(create(Expression.GE, iv[2], create(1)));
+
+    for (OptimizationStrategy strategy : OptimizationStrategy.values()) {
+      OptimizationResult result = sugar4j.minimize(iv[0], strategy, -1);
+      assertThat(result.isSat(), is(true));
+      assertThat(result.isOptimal(), is(true));
+      assertThat(result.getObjectiveValue(), is(3));
+      assertThat(result.getBound(), is(3));
+      assertThat(result.getSolution().getInt(iv[0]), is(3));
+
+      result = sugar4j.maximize(create(Expression.SUB, iv[1], iv[2]), strategy, -1);
+      assertThat(result.isOptimal(), is(true));
+      assertThat(result.getObjectiveValue(), is(2));
+      Solution solution = result.getSolution();
+      assertThat(solution.getInt(iv[1]) - solution.getInt(iv[2]), is(2));
+
+      sugar4j.addAssumption(iv[1], Expression.GE, 4);
+      result = sugar4j.minimize(iv[0], strategy, -1);
+      assertThat(result.isSat(), is(false));
+      assertThat(result.isOptimal(), is(false));
+      assertThat(result.isTimeout(), is(false));
+
+      // 仮定はminimizeの呼び出し後にリセットされる
+      assertThat(sugar4j.solve().isSat(), is(true));
+    }
+  }
+
+  @Test
+  public void testFailedAssumptions() throws Exception {
+    sugar4j.addConstraint(create(Expression.LT, iv[0], iv[1]));
+    sugar4j.addConstraint(create(Expression.OR, bv[0], bv[1]));
+
+    sugar4j.addAssumption(bv[0], false);
+    sugar4j.addAssumption(iv[0], Expression.GE, 3);
+    sugar4j.addAssumption(iv[2], Expression.EQ, 1);
+    sugar4j.addAssumption(iv[1], Expression.LE, 3);
+    assertThat(sugar4j.solve().isSat(), is(false));
+
+    Set<Expression> core = new HashSet<>();
+    for (Assumption assumption : sugar4j.getFailedAssumptions()) {
+      core.add(assumption.toExpression());
+    }
+    assertThat(core.contains(create(Expression.GE, iv[0], create(3))), is(true));
+    assertThat(core.contains(create(Expression.LE, iv[1], create(3))), is(true));
+
+    core.clear();
+    for (Assumption assumption : sugar4j.minimizeFailedAssumptions(-1)) {
+      core.add(assumption.toExpression());
+    }
+    Set<Expression> expected = new HashSet<>();
+    expected.add(create(Expression.GE, iv[0], create(3)));
+    expected.add(create(Expression.LE, iv[1], create(3)));
+    assertThat(core, is(expected));
+    assertThat(sugar4j.getFailedAssumptions().size(), is(2));
+
+    sugar4j.addAssumption(bv[0], false);
+    sugar4j.addAssumption(bv[1], false);
+    assertThat(sugar4j.solve().isSat(), is(false));
+    assertThat(sugar4j.getFailedAssumptions().size(), is(2));
+    assertThat(sugar4j.getFailedAssumptions().get(0).isBool(), is(true));
+    assertThat(sugar4j.getFailedAssumptions().get(0).toExpression(), is(bv[0].not()));
+
+    assertThat(sugar4j.solve().isSat(), is(true));
+    assertThat(sugar4j.getFailedAssumptions().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testPushPop() throws Exception {
+    sugar4j.addConstraint(create(Expression.EQ, iv[0], create(Expression.ADD, iv[1], iv[2])));
+
+    sugar4j.push();
+    Expression tmp = sugar4j.addIntVariable("tmp", 0, 3);
+    sugar4j.addConstraint(create(Expression.EQ, iv[1], create(Expression.ADD, tmp, create(1))));
+    sugar4j.addConstraint(create(Expression.GE, iv[0], create(4)));
+    assertThat(sugar4j.getScopeDepth(), is(1));
+
+    Solution solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[0]) >= 4, is(true));
+    assertThat(solution.getInt(iv[1]), is(solution.getInt(tmp) + 1));
+    assertThat(sugar4j.minimize(iv[0]).getObjectiveValue(), is(4));
+
+    sugar4j.push();
+    sugar4j.addConstraint(create(Expression.GT, iv[1], iv[0]));
+    assertThat(sugar4j.solve().isSat(), is(false));
+    sugar4j.pop();
+
+    solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[0]) >= 4, is(true));
+    sugar4j.pop();
+    assertThat(sugar4j.getScopeDepth(), is(0));
+
+    sugar4j.addAssumption(iv[0], Expression.LE, 0);
+    solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[1]), is(0));
+    assertThat(solution.getIntMap().containsKey(tmp), is(false));
+
+    tmp = sugar4j.addIntVariable("tmp", 5, 6);
+    sugar4j.addConstraint(create(Expression.EQ, iv[2], tmp));
+    solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(false));
+  }
+
+  @Test
+  public void testIncrementalPropagation() throws Exception {
+    sugar4j.addConstraint(create(Expression.LT, iv[0], iv[1]));
+    assertThat(sugar4j.solve().isSat(), is(true));
+    int clausesCount = sugar4j.getSatClausesCount();
+
+    // 符号化済みのiv[0]の下限を後から制限しても, 既存の節の意味は変わらない
+    sugar4j.addConstraint(create(Expression.GE, iv[0], create(2)));
+    sugar4j.addAssumption(iv[1], Expression.LE, 3);
+    Solution solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[0]), is(2));
+    assertThat(solution.getInt(iv[1]), is(3));
+
+    // 制約を追加しない更新では節は増えない
+    int clausesCount2 = sugar4j.getSatClausesCount();
+    assertThat(clausesCount2 > clausesCount, is(true));
+    sugar4j.solve();
+    assertThat(sugar4j.getSatClausesCount(), is(clausesCount2));
+
+    sugar4j.push();
+    Expression tmp = sugar4j.addIntVariable("tmp", 0, 9);
+    sugar4j.addConstraint(create(Expression.LE, tmp, create(4)));
+    sugar4j.addConstraint(create(Expression.EQ, tmp, iv[2]));
+    solution = sugar4j.solve();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[2]) <= 4, is(true));
+    sugar4j.pop();
+
+    sugar4j.addAssumption(iv[2], Expression.GE, 4);
+    assertThat(sugar4j.solve().isSat(), is(true));
+  }
+
+  @Test
+  public void testReleaseEncoded() throws Exception {
+    SugarConfig config = new SugarConfig();
+    config.releaseEncoded = true;
+    try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+      List<Expression> xs = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        xs.add(s.addIntVariable("x" + i, 0, 9));
+      }
+      s.addConstraint(create(Expression.ALLDIFFERENT, xs));
+      s.addConstraint(create(Expression.EQ, create(Expression.ADD, xs), create(20)));
+      s.addConstraint(create(Expression.GT, create(Expression.MUL, create(2), xs.get(0)),
+          create(Expression.ADD, xs.get(1), xs.get(2))));
+
+      Solution solution = s.solve();
+      assertThat(solution.isSat(), is(true));
+      // 補助変数は解放され, 宣言した変数だけが残る
+      assertThat(solution.getIntMap().size(), is(4));
+
+      s.push();
+      s.addConstraint(create(Expression.LE, xs.get(0), create(3)));
+      assertThat(s.solve().isSat(), is(false));
+      s.pop();
+
+      s.addConstraint(create(Expression.EQ, xs.get(3), create(0)));
+      solution = s.solve();
+      assertThat(solution.isSat(), is(true));
+      int x0 = solution.getInt(xs.get(0));
+      int x1 = solution.getInt(xs.get(1));
+      int x2 = solution.getInt(xs.get(2));
+      assertThat(solution.getInt(xs.get(3)), is(0));
+      assertThat(x0 + x1 + x2, is(20));
+      assertThat(2 * x0 > x1 + x2, is(true));
+      assertThat(solution.getIntMap().size(), is(4));
+    }
+  }
+
+  /*
+   * x + 2y = z + 123, x > y, z != 7, x + y + z <= 150 で z を最小化する.
+   */
+  private static OptimizationResult minimizeLinear(Sugar4j s, Encoding encoding) {
+    Expression x = s.addIntVariable("x", 0, 99);
+    Expression y = s.addIntVariable("y", 0, 99);
+    Expression z = s.addIntVariable("z", 0, 99);
+    for (Expression v : Arrays.asList(x, y, z)) {
+      s.setEncoding(v, encoding);
+    }
+    s.addConstraint(create(Expression.EQ, create(Expression.ADD, x, create(Expression.MUL,
+        create(2), y)), create(Expression.ADD, z, create(123))));
+    s.addConstraint(create(Expression.GT, x, y));
+    s.addConstraint(create(Expression.NE, z, create(7)));
+    s.addConstraint(create(Expression.LE, create(Expression.ADD, x, y, z), create(150)));
+    return s.minimize(z);
+  }
+
+  @Test
+  public void testCompactOrderEncoding() throws Exception {
+    SugarConfig config = new SugarConfig();
+    config.compactOrderBase = 4;
+    try (Sugar4j order = Sugar4j.newInstance(CdclSolver.newInstance());
+         Sugar4j compact = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+      OptimizationResult expected = minimizeLinear(order, Encoding.ORDER);
+      OptimizationResult result = minimizeLinear(compact, Encoding.COMPACT_ORDER);
+      assertThat(result.isOptimal(), is(true));
+      assertThat(result.getObjectiveValue(), is(expected.getObjectiveValue()));
+      assertThat(compact.getSatVariablesCount() < order.getSatVariablesCount(), is(true));
+
+      Solution solution = result.getSolution();
+      int x = solution.getInt(create("x"));
+      int y = solution.getInt(create("y"));
+      int z = solution.getInt(create("z"));
+      assertThat(x + 2 * y, is(z + 123));
+      assertThat(x > y, is(true));
+      assertThat(z != 7, is(true));
+      assertThat(x + y + z <= 150, is(true));
+
+      // 各桁で表された変数についての仮定
+      compact.addAssumption(create("x"), Expression.LE, x - 1);
+      solution = compact.solve();
+      assertThat(solution.isSat(), is(true));
+      assertThat(solution.getInt(create("x")) < x, is(true));
+      compact.addAssumption(create(Expression.EQ, create("y"), create(y)));
+      compact.addAssumption(create("z"), Expression.EQ, z);
+      solution = compact.solve();
+      assertThat(solution.isSat(), is(true));
+      assertThat(solution.getInt(create("x")), is(x));
+    }
+  }
+
+  @Test
+  public void testLogEncoding() throws Exception {
+    try (Sugar4j order = Sugar4j.newInstance(CdclSolver.newInstance());
+         Sugar4j log = Sugar4j.newInstance(CdclSolver.newInstance())) {
+      OptimizationResult expected = minimizeLinear(order, Encoding.ORDER);
+      OptimizationResult result = minimizeLinear(log, Encoding.LOG);
+      assertThat(result.isOptimal(), is(true));
+      assertThat(result.getObjectiveValue(), is(expected.getObjectiveValue()));
+    }
+
+    // 基数の異なる変数が混在する大きな定義域の問題
+    SugarConfig config = new SugarConfig();
+    config.compactOrderBase = 4;
+    try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+      Expression x = s.addIntVariable("x", 0, 200000);
+      Expression y = s.addIntVariable("y", 0, 200000);
+      Expression z = s.addIntVariable("z", -100000, 400000);
+      s.setEncoding(x, Encoding.LOG);
+      s.setEncoding(y, Encoding.LOG);
+      s.setEncoding(z, Encoding.COMPACT_ORDER);
+      s.addConstraint(create(Expression.EQ, create(Expression.SUB, create(Expression.MUL,
+          create(3), x), y), create(Expression.ADD, z, create(12345))));
+      s.addConstraint(create(Expression.GT, y, create(Expression.ADD, x, create(1000))));
+      s.addConstraint(create(Expression.NE, x, create(0)));
+      Solution solution = s.solve();
+      assertThat(solution.isSat(), is(true));
+      int xv = solution.getInt(x);
+      int yv = solution.getInt(y);
+      int zv = solution.getInt(z);
+      assertThat(3 * xv - yv, is(zv + 12345));
+      assertThat(yv > xv + 1000, is(true));
+      assertThat(xv != 0, is(true));
+      assertThat(s.getSatVariablesCount() < 10000, is(true));
+
+      s.addAssumption(x, Expression.GE, 150000);
+      solution = s.solve();
+      assertThat(solution.isSat(), is(true));
+      assertThat(solution.getInt(x) >= 150000, is(true));
+      assertThat(solution.getInt(y) > solution.getInt(x) + 1000, is(true));
+
+      s.addAssumption(x, Expression.GE, 199000);
+      assertThat(s.solve().isSat(), is(false));
+    }
+  }
+
+  /*
+   * 整数変数 x[i] (lbs[i]..ubs[i]) の上の問題. 解を全て列挙するテストに用いる.
+   */
+  private abstract static class EnumeratedModel {
+    private final int[] lbs;
+    private final int[] ubs;
+
+    EnumeratedModel(int[] lbs, int[] ubs) {
+      this.lbs = lbs;
+      this.ubs = ubs;
+    }
+
+    abstract void constrain(Sugar4j s, Expression[] x);
+
+    abstract boolean isSolution(int[] v);
+  }
+
+  private static int[] filled(int n, int value) {
+    int[] values = new int[n];
+    Arrays.fill(values, value);
+    return values;
+  }
+
+  /*
+   * configで解を全て列挙し, 各解が正しいことと, 解の個数が総当たりで数えた個数に等しいことを確かめる.
+   * 解の個数を返す.
+   */
+  private static int checkSolutions(String message, SugarConfig config, EnumeratedModel model)
+      throws Exception {
+    int n = model.lbs.length;
+    int expected = 0;
+    int[] v = model.lbs.clone();
+    while (true) {
+      if (model.isSolution(v)) {
+        expected++;
+      }
+      int i = 0;
+      while (i < n && v[i] == model.ubs[i]) {
+        v[i] = model.lbs[i];
+        i++;
+      }
+      if (i == n) {
+        break;
+      }
+      v[i]++;
+    }
+
+    try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+      Expression[] x = new Expression[n];
+      for (int i = 0; i < n; i++) {
+        x[i] = s.addIntVariable("v" + i, model.lbs[i], model.ubs[i]);
+      }
+      model.constrain(s, x);
+      int count = 0;
+      while (true) {
+        Solution solution = s.solve();
+        if (!solution.isSat()) {
+          break;
+        }
+        int[] values = new int[n];
+        List<Expression> block = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+          values[i] = solution.getInt(x[i]);
+          block.add(create(Expression.NE, x[i], create(values[i])));
+        }
+        assertThat(message + " : " + Arrays.toString(values), model.isSolution(values), is(true));
+        s.addConstraint(create(Expression.OR, block));
+        count++;
+      }
+      assertThat(message, count, is(expected));
+      return count;
+    }
+  }
+
+  /*
+   * 0-1変数 b0..b8 の和についての制約.
+   */
+  private static final EnumeratedModel CARDINALITY_MODEL =
+      new EnumeratedModel(filled(9, 0), filled(9, 1)) {
+        @Override
+        void constrain(Sugar4j s, Expression[] b) {
+          List<Expression> bs = Arrays.asList(b);
+          s.addConstraint(create(Expression.LE, create(Expression.ADD, bs), create(4)));
+          s.addConstraint(create(Expression.GE,
+              create(Expression.ADD, bs.subList(0, 6)), create(2)));
+          s.addConstraint(create(Expression.EQ,
+              create(Expression.ADD, bs.subList(3, 9)), create(3)));
+          s.addConstraint(create(Expression.OR, create(Expression.GE,
+              create(Expression.ADD, Arrays.asList(b[0], b[2], b[4], b[6], b[8])), create(3)),
+              create(Expression.EQ, b[1], create(1))));
+        }
+
+        @Override
+        boolean isSolution(int[] b) {
+          int all = 0;
+          for (int bit : b) {
+            all += bit;
+          }
+          int head = b[0] + b[1] + b[2] + b[3] + b[4] + b[5];
+          int tail = b[3] + b[4] + b[5] + b[6] + b[7] + b[8];
+          int even = b[0] + b[2] + b[4] + b[6] + b[8];
+          return all <= 4 && head >= 2 && tail == 3 && (even >= 3 || b[1] == 1);
+        }
+      };
+
+  @Test
+  public void testCardinalityEncodings() throws Exception {
+    for (CardinalityConverter.Method method : CardinalityConverter.Method.values()) {
+      SugarConfig config = new SugarConfig();
+      config.cardinalityEncoding = method;
+      checkSolutions(method.toString(), config, CARDINALITY_MODEL);
+    }
+  }
+
+  /*
+   * 0-1変数 v0..v5 の和が1以下であるか, v6 = 1 である問題.
+   * 和の比較は選言の中にあり, v6 = 1 のとき和は制約されない.
+   */
+  private static final EnumeratedModel NESTED_CARDINALITY_MODEL =
+      new EnumeratedModel(filled(7, 0), filled(7, 1)) {
+        @Override
+        void constrain(Sugar4j s, Expression[] b) {
+          s.addConstraint(create(Expression.OR, create(Expression.LE,
+              create(Expression.ADD, Arrays.asList(b).subList(0, 6)), create(1)),
+              create(Expression.EQ, b[6], create(1))));
+        }
+
+        @Override
+        boolean isSolution(int[] b) {
+          return b[0] + b[1] + b[2] + b[3] + b[4] + b[5] <= 1 || b[6] == 1;
+        }
+      };
+
+  @Test
+  public void testNestedCardinality() throws Exception {
+    for (CardinalityConverter.Method method : CardinalityConverter.Method.values()) {
+      SugarConfig config = new SugarConfig();
+      config.cardinalityEncoding = method;
+      checkSolutions(method.toString(), config, NESTED_CARDINALITY_MODEL);
+
+      // 仮定した和の比較は次の求解を制約しない
+      try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+        List<Expression> b = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+          b.add(s.addIntVariable("b" + i, 0, 1));
+        }
+        s.addAssumption(create(Expression.LE, create(Expression.ADD, b), create(1)));
+        assertThat(method.toString(), s.solve().isSat(), is(true));
+        for (Expression bit : b) {
+          s.addConstraint(create(Expression.EQ, bit, create(1)));
+        }
+        assertThat(method.toString(), s.solve().isSat(), is(true));
+      }
+    }
+  }
+
+  /*
+   * 0..ub-1 の変数 n 個が全て異なり, 先頭の3個が昇順である問題.
+   */
+  private static EnumeratedModel newAllDifferentModel(int n, int ub) {
+    return new EnumeratedModel(filled(n, 0), filled(n, ub - 1)) {
+      @Override
+      void constrain(Sugar4j s, Expression[] x) {
+        s.addConstraint(create(Expression.ALLDIFFERENT, Arrays.asList(x)));
+        s.addConstraint(create(Expression.LT, x[0], x[1]));
+        s.addConstraint(create(Expression.LT, x[1], x[2]));
+      }
+
+      @Override
+      boolean isSolution(int[] x) {
+        Set<Integer> values = new HashSet<>();
+        for (int value : x) {
+          values.add(value);
+        }
+        return values.size() == x.length && x[0] < x[1] && x[1] < x[2];
+      }
+    };
+  }
+
+  @Test
+  public void testAllDifferentEncodings() throws Exception {
+    for (GlobalConverter.AllDifferentEncoding encoding
+        : GlobalConverter.AllDifferentEncoding.values()) {
+      SugarConfig config = new SugarConfig();
+      config.allDifferentEncoding = encoding;
+      // C(6,3) * 3 * 2
+      assertThat(checkSolutions(encoding.toString(), config, newAllDifferentModel(5, 6)), is(120));
+      // 値を全て使う場合, C(5,3) * 2
+      assertThat(checkSolutions(encoding.toString(), config, newAllDifferentModel(5, 5)), is(20));
+    }
+  }
+
+  /*
+   * v0 = i (1..4), v1..v4 = x0..x3 (0..2) とし,
+   * x[i] = 2, ちょうど2個が1, 高々1個が0, x0 + x1 != 2 である問題.
+   * スコープ内で作られた x = 0 のリテラルは pop で取り除かれ, その後の制約で作り直される.
+   */
+  private static final EnumeratedModel EQUALITY_MODEL =
+      new EnumeratedModel(new int[] {1, 0, 0, 0, 0}, new int[] {4, 2, 2, 2, 2}) {
+        @Override
+        void constrain(Sugar4j s, Expression[] v) {
+          Expression xs = create(Arrays.asList(v).subList(1, 5));
+          s.addConstraint(create(Expression.ELEMENT, v[0], xs, create(2)));
+          s.addConstraint(create(Expression.COUNT, create(1), xs, Expression.EQ, create(2)));
+          s.addConstraint(create(Expression.NE, create(Expression.ADD, v[1], v[2]), create(2)));
+          s.push();
+          s.addConstraint(create(Expression.COUNT, create(0), xs, Expression.GE, create(3)));
+          assertThat(s.solve().isSat(), is(false));
+          s.pop();
+          s.addConstraint(create(Expression.COUNT, create(0), xs, Expression.LE, create(1)));
+        }
+
+        @Override
+        boolean isSolution(int[] v) {
+          int ones = 0;
+          int zeros = 0;
+          for (int k = 1; k < v.length; k++) {
+            ones += v[k] == 1 ? 1 : 0;
+            zeros += v[k] == 0 ? 1 : 0;
+          }
+          return v[v[0]] == 2 && ones == 2 && zeros <= 1 && v[1] + v[2] != 2;
+        }
+      };
+
+  @Test
+  public void testEqualityLiterals() throws Exception {
+    for (boolean flag : new boolean[] {true, false}) {
+      SugarConfig config = new SugarConfig();
+      config.equalityLiterals = flag;
+      checkSolutions(Boolean.toString(flag), config, EQUALITY_MODEL);
+    }
+  }
+
+  /*
+   * 開始時刻 v0..v3 (0..4), 所要時間 (2, 3, v4, 2), 高さ (1, 2, 2, 1) の作業の,
+   * 高さの和が各時刻で3以下である問題. v4 (0..2) は0になりうる.
+   */
+  private static final EnumeratedModel CUMULATIVE_MODEL =
+      new EnumeratedModel(new int[] {0, 0, 0, 0, 0}, new int[] {4, 4, 4, 4, 2}) {
+        private final int[] heights = {1, 2, 2, 1};
+
+        @Override
+        void constrain(Sugar4j s, Expression[] v) {
+          Expression[] d = {create(2), create(3), v[4], create(2)};
+          List<Expression> tasks = new ArrayList<>();
+          for (int i = 0; i < 4; i++) {
+            tasks.add(create(v[i], d[i], Expression.NIL, create(heights[i])));
+          }
+          s.addConstraint(create(Expression.CUMULATIVE, create(tasks), create(3)));
+        }
+
+        @Override
+        boolean isSolution(int[] v) {
+          int[] d = {2, 3, v[4], 2};
+          for (int t = 0; t < 10; t++) {
+            int sum = 0;
+            for (int i = 0; i < 4; i++) {
+              if (v[i] <= t && t < v[i] + d[i]) {
+                sum += heights[i];
+              }
+            }
+            if (sum > 3) {
+              return false;
+            }
+          }
+          return true;
+        }
+      };
+
+  /*
+   * 開始時刻 v0..v4 (0..2), 所要時間 (2, 2, 2, 2, v5), 高さが全て1の作業の,
+   * 高さの和が各時刻で4以下である問題. v5 (0..1) は0になりうる.
+   * 高さの和は0-1変数の和となり, 4個の作業が実行中の時刻にも所要時間0の作業は開始できる.
+   */
+  private static final EnumeratedModel UNIT_CUMULATIVE_MODEL =
+      new EnumeratedModel(new int[] {0, 0, 0, 0, 0, 0}, new int[] {2, 2, 2, 2, 2, 1}) {
+        @Override
+        void constrain(Sugar4j s, Expression[] v) {
+          List<Expression> tasks = new ArrayList<>();
+          for (int i = 0; i < 5; i++) {
+            Expression d = i < 4 ? create(2) : v[5];
+            tasks.add(create(v[i], d, Expression.NIL, create(1)));
+          }
+          s.addConstraint(create(Expression.CUMULATIVE, create(tasks), create(4)));
+        }
+
+        @Override
+        boolean isSolution(int[] v) {
+          for (int t = 0; t < 4; t++) {
+            int sum = 0;
+            for (int i = 0; i < 5; i++) {
+              int d = i < 4 ? 2 : v[5];
+              if (v[i] <= t && t < v[i] + d) {
+                sum++;
+              }
+            }
+            if (sum > 4) {
+              return false;
+            }
+          }
+          return true;
+        }
+      };
+
+  @Test
+  public void testCumulativeEncodings() throws Exception {
+    for (GlobalConverter.CumulativeEncoding encoding
+        : GlobalConverter.CumulativeEncoding.values()) {
+      SugarConfig config = new SugarConfig();
+      config.cumulativeEncoding = encoding;
+      checkSolutions(encoding.toString(), config, CUMULATIVE_MODEL);
+      for (CardinalityConverter.Method method : CardinalityConverter.Method.values()) {
+        config.cardinalityEncoding = method;
+        checkSolutions(encoding + " " + method, config, UNIT_CUMULATIVE_MODEL);
+      }
+    }
+  }
+
+  private static boolean isDisjoint(int s1, int d1, int s2, int d2) {
+    return d1 == 0 || d2 == 0 || s1 + d1 <= s2 || s2 + d2 <= s1;
+  }
+
+  /*
+   * 開始時刻 v0..v3 (0..4), 所要時間 (2, 1, 2, v4) の作業について,
+   * 作業0, 1, 2が互いに重ならず, 作業0と3が重ならないか v3 = 0 である問題. v4 (0..1) は0になりうる.
+   * 作業0と1の組は2つの制約で共有される.
+   */
+  private static final EnumeratedModel DISJUNCTIVE_MODEL =
+      new EnumeratedModel(new int[] {0, 0, 0, 0, 0}, new int[] {4, 4, 4, 4, 1}) {
+        @Override
+        void constrain(Sugar4j s, Expression[] v) {
+          Expression[] tasks = {create(v[0], create(2)), create(v[1], create(1)),
+              create(v[2], create(2)), create(v[3], v[4])};
+          s.addConstraint(create(Expression.DISJUNCTIVE, create(tasks[0], tasks[1], tasks[2])));
+          s.addConstraint(create(Expression.DISJUNCTIVE, create(tasks[1], tasks[0])));
+          s.addConstraint(create(Expression.OR,
+              create(Expression.DISJUNCTIVE, create(tasks[0], tasks[3])),
+              create(Expression.EQ, v[3], create(0))));
+        }
+
+        @Override
+        boolean isSolution(int[] v) {
+          int[] d = {2, 1, 2, v[4]};
+          for (int i = 0; i < 3; i++) {
+            for (int j = i + 1; j < 3; j++) {
+              if (!isDisjoint(v[i], d[i], v[j], d[j])) {
+                return false;
+              }
+            }
+          }
+          return isDisjoint(v[0], d[0], v[3], d[3]) || v[3] == 0;
+        }
+      };
+
+  @Test
+  public void testDisjunctiveEncodings() throws Exception {
+    for (GlobalConverter.DisjunctiveEncoding encoding
+        : GlobalConverter.DisjunctiveEncoding.values()) {
+      for (boolean transitivity : new boolean[] {false, true}) {
+        SugarConfig config = new SugarConfig();
+        config.disjunctiveEncoding = encoding;
+        config.disjunctiveTransitivity = transitivity;
+        checkSolutions(encoding + " " + transitivity, config, DISJUNCTIVE_MODEL);
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSetEncodingOfEncodedVariable() throws Exception {
+    sugar4j.solve();
+    sugar4j.setEncoding(iv[0], Encoding.COMPACT_ORDER);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPopWithoutPush() throws Exception {
+    sugar4j.pop();
+  }
+
+  @Test
+  public void testSolveAsync() throws Exception {
+    sugar4j.addConstraint(create(Expression.LT, iv[0], iv[1]));
+    sugar4j.addAssumption(iv[0], Expression.GE, 3);
+    CompletableFuture<Solution> future = sugar4j.solveAsync();
+    Solution solution = future.get();
+    assertThat(solution.isSat(), is(true));
+    assertThat(solution.getInt(iv[0]), is(3));
+    assertThat(solution.getElapsedTime().isNegative(), is(false));
+
+    sugar4j.addAssumption(iv[1], Expression.LE, 0);
+    assertThat(sugar4j.solveAsync(Duration.ofSeconds(10)).get().isSat(), is(false));
+    assertThat(sugar4j.getFailedAssumptions().size(), is(1));
+  }
+
+  @Test
+  public void testCancelSolveAsync() throws Exception {
+    sugar4j.push();
+    addPigeonHole(11, 10);
+    CompletableFuture<Solution> future = sugar4j.solveAsync();
+    assertThat(future.cancel(true), is(true));
+    assertThat(future.isCancelled(), is(true));
+
+    // 中断された求解の終了を待ってから処理される
+    sugar4j.pop();
+    assertThat(sugar4j.solve().isSat(), is(true));
+  }
+
+  @Test
+  public void testDurationTimeout() throws Exception {
+    addPigeonHole(11, 10);
+    Solution solution = sugar4j.solve(Duration.ofMillis(100));
+    assertThat(solution.isTimeout(), is(true));
+    assertThat(solution.getElapsedTime().compareTo(Duration.ofSeconds(1)) < 0, is(true));
+  }
+
+  @Test
+  public void testConcurrentInstances() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        final int target = 10 + t;
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            SugarConfig config = new SugarConfig();
+            config.maxLinearSumSize = 4;
+            try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+              List<Expression> xs = new ArrayList<>();
+              for (int i = 0; i < 6; i++) {
+                xs.add(s.addIntVariable("x" + i, 0, 9));
+              }
+              s.addConstraint(create(Expression.EQ, create(Expression.ADD, xs), create(target)));
+              Solution solution = s.solve();
+              int sum = 0;
+              for (Expression x : xs) {
+                sum += solution.getInt(x);
+              }
+              return solution.isSat() && sum == target;
+            }
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertThat(future.get(), is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCompiledModel() throws Exception {
+    Sugar4j template = CompiledModel.newTemplate();
+    Expression[] xs = new Expression[3];
+    for (int i = 0; i < xs.length; i++) {
+      xs[i] = template.addIntVariable("x" + i, 0, 9);
+    }
+    Expression b = template.addBoolVariable("b");
+    template.addConstraint(create(Expression.ALLDIFFERENT, xs));
+    template.addConstraint(create(Expression.EQ, create(Expression.ADD, xs), create(15)));
+    template.addExpression(create(Expression.PREDICATE_DEFINITION,
+        create(create("small"), create("v")),
+        create(Expression.LE, create("v"), create(2))));
+    template.addConstraint(create(Expression.IMP, b, create(create("small"), xs[0])));
+    CompiledModel model = CompiledModel.compile(template);
+    template.close();
+
+    try (Sugar4j s1 = model.instantiate(CdclSolver.newInstance());
+         Sugar4j s2 = model.instantiate(CdclSolver.newInstance())) {
+      assertThat(s1.getSatClausesCount(), is(model.getSatClausesCount()));
+      assertThat(s1.getSatVariablesCount(), is(model.getSatVariablesCount()));
+
+      s1.addConstraint(b);
+      Solution solution1 = s1.solve();
+      assertThat(solution1.isSat(), is(true));
+      assertThat(solution1.getInt(xs[0]) <= 2, is(true));
+      assertThat(solution1.getInt(xs[0]) + solution1.getInt(xs[1]) + solution1.getInt(xs[2]),
+          is(15));
+
+      s2.addConstraint(create(Expression.GE, xs[0], create(9)));
+      s2.addConstraint(create(Expression.GE, xs[1], create(6)));
+      s2.addAssumption(create(Expression.OR, b, create(Expression.GE, xs[2], create(1))));
+      Solution solution2 = s2.solve();
+      assertThat(solution2.isSat(), is(false));
+      assertThat(s2.getFailedAssumptions().size(), is(1));
+      Solution solution3 = s2.solve();
+      assertThat(solution3.isSat(), is(true));
+      assertThat(solution3.getInt(xs[0]), is(9));
+      assertThat(solution3.getInt(xs[1]), is(6));
+      assertThat(solution3.getInt(xs[2]), is(0));
+    }
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    Sugar4jMetrics metrics = new Sugar4jMetrics();
+    sugar4j.setMetricsListener(metrics);
+    sugar4j.addConstraint(create(Expression.ALLDIFFERENT, iv));
+    sugar4j.addConstraint(create(Expression.EQ, create(Expression.ADD, iv), create(9)));
+
+    assertThat(sugar4j.solve().isSat(), is(true));
+    assertThat(metrics.getPhaseCount(MetricsListener.Phase.CONVERSION), is(2L));
+    assertThat(metrics.getPhaseCount(MetricsListener.Phase.SOLVE), is(1L));
+    assertThat(metrics.getPhaseCount(MetricsListener.Phase.DECODE), is(1L));
+    assertThat(metrics.getPhaseCount(MetricsListener.Phase.ENCODING),
+        is(metrics.getUpdatesCount()));
+    assertThat(metrics.getElapsedNanos(MetricsListener.Phase.SOLVE) > 0, is(true));
+
+    // beforeで追加した変数の符号化も計測に含まれる
+    assertThat(metrics.getSatClausesCount(), is((long) sugar4j.getSatClausesCount()));
+    assertThat(metrics.getSatVariablesCount(), is((long) sugar4j.getSatVariablesCount()));
+    assertThat(metrics.getCspVariablesCount() >= 6, is(true));
+    assertThat(metrics.getElapsedNanos().size(), is(MetricsListener.Phase.values().length));
+
+    metrics.reset();
+    sugar4j.setMetricsListener(null);
+    sugar4j.addConstraint(create(Expression.GT, iv[0], iv[1]));
+    assertThat(sugar4j.solve().isSat(), is(true));
+    assertThat(metrics.getPhaseCounts().get("SOLVE"), is(0L));
+    assertThat(metrics.getUpdatesCount(), is(0L));
+  }
+
+  @Test
+  public void testEncodingProfile() throws Exception {
+    SugarConfig config = new SugarConfig();
+    config.profileEncoding = true;
+    try (Sugar4j s = Sugar4j.newInstance(CdclSolver.newInstance(), config)) {
+      List<Expression> xs = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        xs.add(s.addIntVariable("x" + i, 0, 9));
+      }
+      Expression alldiff = create(Expression.ALLDIFFERENT, xs);
+      Expression sum = create(Expression.EQ, create(Expression.ADD, xs), create(20));
+      s.addConstraint(alldiff);
+      s.addConstraint(sum);
+      s.addConstraint(create(Expression.LT, xs.get(0), xs.get(1)));
+
+      EncodingProfile profile = s.getEncodingProfile();
+      long clauses = 0;
+      long variables = 0;
+      Map<String, EncodingProfile.Entry> kinds = new HashMap<>();
+      for (EncodingProfile.Entry entry : profile.getKindEntries()) {
+        clauses += entry.getClausesCount();
+        variables += entry.getVariablesCount();
+        kinds.put(entry.getKind(), entry);
+      }
+      assertThat(clauses, is((long) s.getSatClausesCount()));
+      assertThat(variables, is((long) s.getSatVariablesCount()));
+      assertThat(kinds.containsKey(EncodingProfile.UNKNOWN_KIND), is(false));
+      assertThat(kinds.get("alldifferent").getClausesCount() > 0, is(true));
+      assertThat(kinds.get("int").getVariablesCount() > 0, is(true));
+
+      Set<Expression> origins = new HashSet<>();
+      for (EncodingProfile.Entry entry : profile.getOriginEntries()) {
+        origins.add(entry.getOrigin());
+      }
+      assertThat(origins.contains(alldiff), is(true));
+      assertThat(origins.contains(sum), is(true));
+      assertThat(profile.report(3).size(), is(kinds.size() + 5));
+    }
+  }
+
+  private void addPigeonHole(int pigeons, int holes) {
+    Expression[] p = new Expression[pigeons];
+    for (int i = 0; i < pigeons; i++) {
+      p[i] = sugar4j.addIntVariable("p" + i, holes);
+    }
+    for (int i = 0; i < pigeons; i++) {
+      for (int j = i + 1; j < pigeons; j++) {
+        sugar4j.addConstraint(create(Expression.NE, p[i], p[j]));
+      }
+    }
+  }
+
   // @Test
   public void testTimeout() throws Exception {
     Random rand = new Random();